@@ -0,0 +1,443 @@
+#!/usr/bin/env python3
+"""Load test for event ingest.
+
+Sends cloud events to POST / at a fixed rate (or as fast as possible) from a number of concurrent connections and
+reports throughput and latency percentiles. Only the Python standard library is used, so it runs anywhere Python 3.8+
+does, CI included.
+
+The application can be one that is already running (--url), or be started by this script from the packaged jar
+(--jar) with either the in-memory event store or a local Cloudant stand-in (--backend cloudant-stub) that answers the
+few Cloudant endpoints the event store uses, so no network access or Cloudant credentials are needed.
+
+With a target rate the load is open loop: request n is due at n / rate seconds, and its latency is measured from
+when it was due rather than when it was sent, so a stall shows up in the percentiles instead of silently lowering the
+rate. Service time, measured from when the request was sent, is reported alongside.
+
+Examples:
+    python3 load_test.py --url http://localhost:8080 --rate 500 --duration 30
+    python3 load_test.py --jar ../target/knative-eventing-1.0-SNAPSHOT.jar --backend cloudant-stub \\
+        --mode batch --batch-size 50 --payload-bytes 4096 --output load-test.json
+"""
+
+import argparse
+import gzip
+import http.client
+import json
+import os
+import socket
+import subprocess
+import sys
+import threading
+import time
+import urllib.parse
+import urllib.request
+import uuid
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+JSON = "application/json"
+CLOUDEVENTS_JSON = "application/cloudevents+json"
+CLOUDEVENTS_BATCH_JSON = "application/cloudevents-batch+json"
+
+EVENT_TYPE = "knative.eventing.loadtest"
+EVENT_SOURCE = "https://github.com/IBM/knative-eventing-java-app/scripts/load_test.py"
+
+PERCENTILES = (50, 90, 99, 99.9)
+
+
+# --- Cloudant stand-in ---------------------------------------------------------------------------------------------
+
+class CloudantStub:
+    """Keeps documents in memory and answers the Cloudant requests the event store sends."""
+
+    def __init__(self, latency_ms=0):
+        self.latency = latency_ms / 1000.0
+        self.lock = threading.Lock()
+        self.dbs = {}
+        self.seq = 0
+        self.requests = 0
+
+    def _db(self, name):
+        return self.dbs.setdefault(name, {})
+
+    def _next_id(self):
+        # Time ordered, like the ids Cloudant generates, so _all_docs returns events in insertion order
+        self.seq += 1
+        return "%016x%016x" % (time.time_ns(), self.seq)
+
+    def _put(self, db, doc):
+        doc_id = doc.get("_id") or self._next_id()
+        if doc.get("_deleted"):
+            db.pop(doc_id, None)
+        else:
+            self.seq += 1
+            doc = dict(doc, _id=doc_id, _rev="1-%032x" % self.seq)
+            db[doc_id] = doc
+        return {"ok": True, "id": doc_id, "rev": "1-%032x" % self.seq}
+
+    def handle(self, method, path, body):
+        """Returns the status and JSON response for a request."""
+        if self.latency:
+            time.sleep(self.latency)
+        parts = [urllib.parse.unquote(p) for p in path.split("?")[0].split("/") if p]
+        with self.lock:
+            self.requests += 1
+            if not parts:
+                return 200, {"couchdb": "Welcome", "vendor": {"name": "load_test.py stub"}}
+            if parts == ["_all_dbs"]:
+                return 200, sorted(self.dbs)
+            if parts == ["_up"]:
+                return 200, {"status": "ok"}
+            name, rest = parts[0], parts[1:]
+            if not rest:
+                if method == "PUT":
+                    self.dbs[name] = {}
+                    return 201, {"ok": True}
+                if method == "DELETE":
+                    self.dbs.pop(name, None)
+                    return 200, {"ok": True}
+                if method in ("GET", "HEAD"):
+                    db = self._db(name)
+                    return 200, {"db_name": name, "doc_count": len(db), "doc_del_count": 0,
+                                 "update_seq": str(self.seq), "sizes": {"active": 0, "external": 0, "file": 0}}
+                if method == "POST":
+                    return 201, self._put(self._db(name), body)
+            elif rest == ["_bulk_docs"] and method == "POST":
+                db = self._db(name)
+                return 201, [self._put(db, doc) for doc in body.get("docs", [])]
+            elif rest == ["_all_docs"] and method == "POST":
+                return 200, self._all_docs(self._db(name), body)
+            elif rest == ["_design_docs"] and method == "POST":
+                db = self._db(name)
+                return 200, self._all_docs({i: doc for i, doc in db.items() if i.startswith("_design/")}, body)
+            elif rest == ["_changes"] and method == "POST":
+                # No feed is kept; answer as if nothing changed
+                return 200, {"results": [], "last_seq": str(self.seq), "pending": 0}
+        return 404, {"error": "not_found", "reason": "missing"}
+
+    @staticmethod
+    def _all_docs(db, options):
+        ids = sorted(db, reverse=bool(options.get("descending")))
+        start = options.get("start_key", options.get("startkey"))
+        if start is not None:
+            ids = [i for i in ids if (i <= start if options.get("descending") else i >= start)]
+        limit = options.get("limit")
+        if limit is not None:
+            ids = ids[:limit]
+        rows = []
+        for doc_id in ids:
+            row = {"id": doc_id, "key": doc_id, "value": {"rev": db[doc_id]["_rev"]}}
+            if options.get("include_docs"):
+                row["doc"] = db[doc_id]
+            rows.append(row)
+        return {"total_rows": len(db), "offset": 0, "rows": rows}
+
+    def serve(self):
+        """Starts serving on a free local port in the background and returns the server."""
+        stub = self
+
+        class Handler(BaseHTTPRequestHandler):
+            protocol_version = "HTTP/1.1"
+
+            def _read_body(self):
+                if self.headers.get("Transfer-Encoding", "").lower() != "chunked":
+                    length = int(self.headers.get("Content-Length") or 0)
+                    return self.rfile.read(length) if length else b""
+                # The SDK streams gzipped bodies, whose length is not known up front
+                chunks = []
+                while True:
+                    size = int(self.rfile.readline().split(b";")[0], 16)
+                    if size == 0:
+                        while self.rfile.readline() not in (b"\r\n", b"\n", b""):
+                            pass
+                        return b"".join(chunks)
+                    chunks.append(self.rfile.read(size))
+                    self.rfile.readline()
+
+            def _handle(self):
+                raw = self._read_body()
+                if self.headers.get("Content-Encoding") == "gzip":
+                    raw = gzip.decompress(raw)
+                body = json.loads(raw) if raw else {}
+                status, response = stub.handle(self.command, self.path, body)
+                payload = json.dumps(response).encode("utf-8")
+                self.send_response(status)
+                self.send_header("Content-Type", JSON)
+                self.send_header("Content-Length", str(len(payload)))
+                self.end_headers()
+                if self.command != "HEAD":
+                    self.wfile.write(payload)
+
+            do_GET = do_HEAD = do_PUT = do_POST = do_DELETE = _handle
+
+            def log_message(self, format, *args):
+                pass
+
+        server = ThreadingHTTPServer(("127.0.0.1", 0), Handler)
+        server.daemon_threads = True
+        threading.Thread(target=server.serve_forever, name="cloudant-stub", daemon=True).start()
+        return server
+
+
+# --- Application under test ----------------------------------------------------------------------------------------
+
+def free_port():
+    with socket.socket() as s:
+        s.bind(("127.0.0.1", 0))
+        return s.getsockname()[1]
+
+
+def start_app(args, stub_url):
+    port = free_port()
+    command = ["java"] + args.java_opt + ["-jar", args.jar, "--server.port=%d" % port]
+    if args.backend == "cloudant-stub":
+        command += ["--eventstore.backend=cloudant", "--cloudant_url=" + stub_url,
+                    "--cloudant_username=loadtest", "--cloudant_password=loadtest"]
+    else:
+        command += ["--eventstore.backend=" + args.backend]
+    command += args.app_arg
+    log = open(args.app_log, "w")
+    print("Starting %s" % " ".join(command), flush=True)
+    process = subprocess.Popen(command, stdout=log, stderr=subprocess.STDOUT)
+    url = "http://127.0.0.1:%d" % port
+    deadline = time.monotonic() + args.startup_timeout
+    while time.monotonic() < deadline:
+        if process.poll() is not None:
+            raise SystemExit("The application exited with %d, see %s" % (process.returncode, args.app_log))
+        try:
+            with urllib.request.urlopen(url + "/health", timeout=1) as response:
+                if response.status == 200:
+                    return process, url
+        except OSError:
+            pass
+        time.sleep(0.5)
+    process.kill()
+    raise SystemExit("The application did not start within %ds, see %s" % (args.startup_timeout, args.app_log))
+
+
+def stop_app(process):
+    process.terminate()
+    try:
+        process.wait(timeout=30)
+    except subprocess.TimeoutExpired:
+        process.kill()
+
+
+# --- Load ----------------------------------------------------------------------------------------------------------
+
+def make_data(payload_bytes):
+    """JSON object data of roughly the given size."""
+    data, size, i = {}, 2, 0
+    while size < payload_bytes:
+        key, value = "field%d" % i, "value-%08x-abcdefghijklmnopqrstuvwxyz" % (i * 2654435761 % 2 ** 32)
+        data[key] = value
+        size += len(key) + len(value) + 6
+        i += 1
+    return data
+
+
+class RequestFactory:
+    """Builds the headers and body of each request in the configured content mode."""
+
+    def __init__(self, mode, batch_size, payload_bytes):
+        self.mode = mode
+        self.batch_size = batch_size if mode == "batch" else 1
+        self.data = make_data(payload_bytes)
+        self.data_json = json.dumps(self.data, separators=(",", ":"))
+        self.run = uuid.uuid4().hex[:8]
+
+    def _attributes(self, event_id):
+        return {"specversion": "1.0", "id": event_id, "type": EVENT_TYPE, "source": EVENT_SOURCE,
+                "time": time.strftime("%Y-%m-%dT%H:%M:%SZ", time.gmtime())}
+
+    def _structured(self, event_id):
+        attributes = json.dumps(dict(self._attributes(event_id), datacontenttype=JSON), separators=(",", ":"))
+        return attributes[:-1] + ',"data":' + self.data_json + "}"
+
+    def build(self, n):
+        event_id = "%s-%d" % (self.run, n)
+        if self.mode == "binary":
+            headers = {"ce-" + k: v for k, v in self._attributes(event_id).items()}
+            headers["Content-Type"] = JSON
+            return headers, self.data_json.encode("utf-8")
+        if self.mode == "structured":
+            return {"Content-Type": CLOUDEVENTS_JSON}, self._structured(event_id).encode("utf-8")
+        events = [self._structured("%s-%d" % (event_id, i)) for i in range(self.batch_size)]
+        return {"Content-Type": CLOUDEVENTS_BATCH_JSON}, ("[" + ",".join(events) + "]").encode("utf-8")
+
+
+class Results:
+
+    def __init__(self):
+        self.lock = threading.Lock()
+        self.latencies = []
+        self.service_times = []
+        self.statuses = {}
+        self.last = 0
+
+    def record(self, status, due, sent, done):
+        """The status is the HTTP status, or the name of the error if there was no response."""
+        with self.lock:
+            self.statuses[status] = self.statuses.get(status, 0) + 1
+            if isinstance(status, int) and 200 <= status < 300:
+                self.latencies.append(done - due)
+                self.service_times.append(done - sent)
+            self.last = max(self.last, done)
+
+
+def percentiles(values):
+    if not values:
+        return {}
+    values = sorted(values)
+    result = {}
+    for p in PERCENTILES:
+        result["p%g" % p] = round(values[min(len(values) - 1, int(len(values) * p / 100))] * 1000, 3)
+    result["max"] = round(values[-1] * 1000, 3)
+    result["mean"] = round(sum(values) / len(values) * 1000, 3)
+    return result
+
+
+def run_load(url, args):
+    target = urllib.parse.urlsplit(url)
+    factory = RequestFactory(args.mode, args.batch_size, args.payload_bytes)
+    results = Results()
+    counter_lock = threading.Lock()
+    counter = [0]
+    start = time.monotonic() + 0.5
+    warmup_end = start + args.warmup
+    end = warmup_end + args.duration
+
+    def next_request():
+        with counter_lock:
+            n = counter[0]
+            counter[0] += 1
+        if args.rate > 0:
+            return n, start + n / args.rate
+        return n, max(start, time.monotonic())
+
+    def worker():
+        connection = http.client.HTTPConnection(target.hostname, target.port or 80, timeout=args.timeout)
+        while True:
+            n, due = next_request()
+            if due >= end:
+                break
+            delay = due - time.monotonic()
+            if delay > 0:
+                time.sleep(delay)
+            headers, body = factory.build(n)
+            sent = time.monotonic()
+            try:
+                connection.request("POST", target.path or "/", body=body, headers=headers)
+                response = connection.getresponse()
+                response.read()
+                status = response.status
+                if response.getheader("Connection", "").lower() == "close":
+                    connection.close()
+            except (OSError, http.client.HTTPException) as e:
+                # The connection reopens on the next request
+                status = type(e).__name__
+                connection.close()
+            done = time.monotonic()
+            if due >= warmup_end:
+                results.record(status, due, sent, done)
+        connection.close()
+
+    threads = [threading.Thread(target=worker, name="load-%d" % i) for i in range(args.concurrency)]
+    for thread in threads:
+        thread.start()
+    for thread in threads:
+        thread.join()
+
+    ok = len(results.latencies)
+    total = sum(results.statuses.values())
+    elapsed = results.last - warmup_end if ok else 0
+    return {
+        "url": url,
+        "backend": args.backend if args.jar else None,
+        "mode": args.mode,
+        "batch_size": factory.batch_size,
+        "payload_bytes": args.payload_bytes,
+        "concurrency": args.concurrency,
+        "target_rate": args.rate,
+        "duration_s": args.duration,
+        "requests": total,
+        "succeeded": ok,
+        "events": ok * factory.batch_size,
+        "statuses": {str(k): v for k, v in sorted(results.statuses.items(), key=lambda s: str(s[0]))},
+        "throughput_rps": round(ok / elapsed, 1) if elapsed > 0 else 0,
+        "throughput_eps": round(ok * factory.batch_size / elapsed, 1) if elapsed > 0 else 0,
+        "latency_ms": percentiles(results.latencies),
+        "service_time_ms": percentiles(results.service_times),
+    }
+
+
+def print_report(report):
+    print()
+    print("%d requests (%d events) in %ss, %s requests/s, %s events/s" % (
+        report["requests"], report["events"], report["duration_s"], report["throughput_rps"],
+        report["throughput_eps"]))
+    print("Statuses: %s" % ", ".join("%s=%d" % s for s in report["statuses"].items()))
+    print("%-16s %s" % ("", " ".join("%10s" % k for k in report["latency_ms"])))
+    for name in ("latency_ms", "service_time_ms"):
+        print("%-16s %s" % (name, " ".join("%10.3f" % v for v in report[name].values())))
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    target = parser.add_argument_group("application")
+    target.add_argument("--url", default=os.environ.get("APP_URL", "http://localhost:8080"),
+                        help="URL of a running application (default: $APP_URL or http://localhost:8080)")
+    target.add_argument("--jar", help="start the application from this jar instead of using --url")
+    target.add_argument("--backend", default="memory", help="event store to start the application with: "
+                        "memory, log or cloudant-stub (default: memory)")
+    target.add_argument("--stub-latency-ms", type=float, default=0,
+                        help="delay added to every Cloudant stub response (default: 0)")
+    target.add_argument("--app-arg", action="append", default=[],
+                        help="extra application argument, e.g. --app-arg=--eventstore.write-behind.enabled=true")
+    target.add_argument("--java-opt", action="append", default=[], help="extra JVM option, e.g. --java-opt=-Xmx512m")
+    target.add_argument("--app-log", default="load-test-app.log", help="application output (default: %(default)s)")
+    target.add_argument("--startup-timeout", type=int, default=120)
+    load = parser.add_argument_group("load")
+    load.add_argument("--mode", choices=("binary", "structured", "batch"), default="binary")
+    load.add_argument("--batch-size", type=int, default=10, help="events per request in batch mode")
+    load.add_argument("--payload-bytes", type=int, default=1024, help="approximate size of each event's data")
+    load.add_argument("--rate", type=float, default=200,
+                      help="requests per second, or 0 to send as fast as the connections allow (default: 200)")
+    load.add_argument("--concurrency", type=int, default=16, help="concurrent connections (default: 16)")
+    load.add_argument("--duration", type=float, default=30, help="measured seconds (default: 30)")
+    load.add_argument("--warmup", type=float, default=5, help="seconds of load before measuring (default: 5)")
+    load.add_argument("--timeout", type=float, default=30, help="request timeout in seconds")
+    report = parser.add_argument_group("report")
+    report.add_argument("--output", help="also write the report to this JSON file")
+    report.add_argument("--max-error-rate", type=float, default=0.0,
+                        help="fail if more than this fraction of requests fail (default: 0)")
+    args = parser.parse_args()
+
+    stub, process = None, None
+    try:
+        url = args.url
+        if args.jar:
+            stub_url = None
+            if args.backend == "cloudant-stub":
+                stub = CloudantStub(args.stub_latency_ms).serve()
+                stub_url = "http://127.0.0.1:%d" % stub.server_address[1]
+            process, url = start_app(args, stub_url)
+        print("Sending %s requests to %s for %ss after %ss of warm-up" % (args.mode, url, args.duration, args.warmup),
+              flush=True)
+        result = run_load(url, args)
+    finally:
+        if process:
+            stop_app(process)
+        if stub:
+            stub.shutdown()
+
+    print_report(result)
+    if args.output:
+        with open(args.output, "w") as f:
+            json.dump(result, f, indent=2)
+    failed = result["requests"] - result["succeeded"]
+    if result["succeeded"] == 0 or failed > args.max_error_rate * result["requests"]:
+        sys.exit("Load test failed: %d of %d requests failed" % (failed, result["requests"]))
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,80 @@
+package application;
+
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+
+/**
+ * Configures OpenTelemetry tracing of events from ingest to the event store.
+ * <p>
+ * The exporter is selected with <code>eventstore.tracing.exporter</code>: <code>none</code> (the default) disables
+ * tracing, <code>logging</code> logs each span, which is enough to see per-event latency without a collector, and
+ * <code>otlp</code> sends spans over OTLP/HTTP to <code>eventstore.tracing.otlp.endpoint</code>, e.g. an OpenTelemetry
+ * collector or Jaeger. Events that carry a sampled trace are always traced; other events start a trace with the
+ * probability <code>eventstore.tracing.sampling-ratio</code>.
+ */
+@Configuration
+public class TracingConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(TracingConfig.class);
+
+    public static final String EXPORTER_NONE = "none";
+    public static final String EXPORTER_LOGGING = "logging";
+    public static final String EXPORTER_OTLP = "otlp";
+
+    private static final String SERVICE_NAME = "knative-eventing";
+
+    /**
+     * Closed by Spring on shutdown, which exports the spans still buffered.
+     */
+    @Bean
+    public OpenTelemetry openTelemetry(@Value("${eventstore.tracing.exporter:" + EXPORTER_NONE + "}") String exporter,
+            @Value("${eventstore.tracing.sampling-ratio:0.1}") double samplingRatio,
+            @Value("${eventstore.tracing.otlp.endpoint:http://localhost:4318/v1/traces}") String otlpEndpoint) {
+        SpanExporter spanExporter;
+        switch (exporter.trim().toLowerCase(Locale.ROOT)) {
+        case EXPORTER_NONE:
+            return OpenTelemetry.noop();
+        case EXPORTER_LOGGING:
+            spanExporter = LoggingSpanExporter.create();
+            break;
+        case EXPORTER_OTLP:
+            spanExporter = OtlpHttpSpanExporter.builder().setEndpoint(otlpEndpoint).build();
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown tracing exporter: " + exporter + " (available: "
+                    + EXPORTER_NONE + ", " + EXPORTER_LOGGING + ", " + EXPORTER_OTLP + ")");
+        }
+        if (samplingRatio < 0 || samplingRatio > 1) {
+            throw new IllegalArgumentException("Invalid tracing sampling ratio: " + samplingRatio);
+        }
+
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .setResource(Resource.getDefault()
+                        .merge(Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), SERVICE_NAME))))
+                .setSampler(Sampler.parentBased(Sampler.traceIdRatioBased(samplingRatio)))
+                .addSpanProcessor(BatchSpanProcessor.builder(spanExporter).build()).build();
+        logger.info("Tracing with the " + exporter + " exporter, sampling " + samplingRatio + " of new traces");
+        return OpenTelemetrySdk.builder().setTracerProvider(tracerProvider)
+                .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance())).build();
+    }
+
+}
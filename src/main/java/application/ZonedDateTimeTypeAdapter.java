@@ -0,0 +1,262 @@
+package application;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Gson codec for <code>ZonedDateTime</code>.
+ * <p>
+ * Values are written as ISO-8601 strings, e.g. <code>2019-10-09T21:23:08.288-05:00[America/New_York]</code>. Three
+ * shapes are read:
+ * <ul>
+ * <li>ISO-8601 strings, with a fast path for the RFC 3339 form used by cloud events</li>
+ * <li>numbers, taken as nanoseconds since the epoch in UTC</li>
+ * <li>the nested <code>dateTime</code>/<code>offset</code>/<code>zone</code> object that reflective serialization
+ * produced in earlier versions, see https://github.com/cloudant/java-cloudant/issues/357</li>
+ * </ul>
+ * All shapes are read straight off the token stream, without building an intermediate tree or string.
+ */
+public final class ZonedDateTimeTypeAdapter extends TypeAdapter<ZonedDateTime> {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private static final String[] DATE_FIELDS = { "year", "month", "day" };
+    private static final String[] TIME_FIELDS = { "hour", "minute", "second", "nano" };
+
+    @Override
+    public void write(JsonWriter out, ZonedDateTime value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(value.toString());
+        }
+    }
+
+    @Override
+    public ZonedDateTime read(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        try {
+            switch (token) {
+            case NULL:
+                in.nextNull();
+                return null;
+            case STRING:
+                return parse(in.nextString());
+            case NUMBER:
+                return fromEpochNanos(in.nextLong());
+            case BEGIN_OBJECT:
+                return readLegacy(in);
+            default:
+                throw new JsonSyntaxException("Expected a date-time but was " + token + " at " + in.getPath());
+            }
+        } catch (DateTimeException e) {
+            throw new JsonSyntaxException("Invalid date-time at " + in.getPath(), e);
+        }
+    }
+
+    /**
+     * Parses an ISO-8601 date-time, with or without a bracketed zone id.
+     */
+    public static ZonedDateTime parse(String text) {
+        ZonedDateTime result = parseRfc3339(text);
+        return result != null ? result : ZonedDateTime.parse(text);
+    }
+
+    private static ZonedDateTime fromEpochNanos(long epochNanos) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND),
+                Math.floorMod(epochNanos, NANOS_PER_SECOND));
+        return ZonedDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    /*
+     * Handles yyyy-MM-ddTHH:mm:ss[.fffffffff](Z|+HH:mm)[[zone]] and returns null for anything else, which is then left
+     * to the much more general, and allocation-heavy, DateTimeFormatter.
+     */
+    private static ZonedDateTime parseRfc3339(String text) {
+        int length = text.length();
+        if (length < 20 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(13) != ':'
+                || text.charAt(16) != ':' || (text.charAt(10) != 'T' && text.charAt(10) != 't')) {
+            return null;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        if ((year | month | day | hour | minute | second) < 0) {
+            return null;
+        }
+
+        int pos = 19;
+        int nano = 0;
+        if (text.charAt(pos) == '.') {
+            int start = ++pos;
+            while (pos < length && pos - start < 9 && isDigit(text.charAt(pos))) {
+                nano = nano * 10 + (text.charAt(pos++) - '0');
+            }
+            if (pos == start || (pos < length && isDigit(text.charAt(pos)))) {
+                return null;
+            }
+            for (int i = pos - start; i < 9; i++) {
+                nano *= 10;
+            }
+        }
+        if (pos >= length) {
+            return null;
+        }
+
+        ZoneOffset offset;
+        char sign = text.charAt(pos);
+        if (sign == 'Z' || sign == 'z') {
+            offset = ZoneOffset.UTC;
+            pos++;
+        } else if ((sign == '+' || sign == '-') && pos + 6 <= length && text.charAt(pos + 3) == ':') {
+            int offsetHours = digits(text, pos + 1, 2);
+            int offsetMinutes = digits(text, pos + 4, 2);
+            if ((offsetHours | offsetMinutes) < 0) {
+                return null;
+            }
+            int totalSeconds = offsetHours * 3600 + offsetMinutes * 60;
+            offset = ZoneOffset.ofTotalSeconds(sign == '-' ? -totalSeconds : totalSeconds);
+            pos += 6;
+        } else {
+            return null;
+        }
+
+        ZoneId zone = offset;
+        if (pos < length) {
+            if (text.charAt(pos) != '[' || text.charAt(length - 1) != ']') {
+                return null;
+            }
+            zone = ZoneId.of(text.substring(pos + 1, length - 1));
+        }
+        LocalDateTime dateTime = LocalDateTime.of(year, month, day, hour, minute, second, nano);
+        return ZonedDateTime.ofInstant(dateTime, offset, zone);
+    }
+
+    private static int digits(String text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /*
+     * example:
+     * {"dateTime":{"date":{"year":2019,"month":10,"day":9},"time":{"hour":21,"minute":23,"second":8,"nano":288000000}},"offset":{"totalSeconds":-18000},"zone":{"id":"America/New_York"}}
+     * The zone is {"totalSeconds":...} when it is a plain offset.
+     */
+    private static ZonedDateTime readLegacy(JsonReader in) throws IOException {
+        int[] date = { 0, 1, 1 };
+        int[] time = { 0, 0, 0, 0 };
+        ZoneOffset offset = null;
+        ZoneId zone = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "dateTime":
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if ("date".equals(name)) {
+                        readInts(in, DATE_FIELDS, date);
+                    } else if ("time".equals(name)) {
+                        readInts(in, TIME_FIELDS, time);
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+                break;
+            case "offset":
+                ZoneId offsetZone = readZone(in);
+                if (!(offsetZone instanceof ZoneOffset)) {
+                    throw new JsonSyntaxException("Invalid offset in date-time at " + in.getPath());
+                }
+                offset = (ZoneOffset) offsetZone;
+                break;
+            case "zone":
+                zone = readZone(in);
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (offset == null) {
+            throw new JsonSyntaxException("Missing offset in date-time at " + in.getPath());
+        }
+        LocalDateTime dateTime = LocalDateTime.of(date[0], date[1], date[2], time[0], time[1], time[2], time[3]);
+        return ZonedDateTime.ofInstant(dateTime, offset, zone != null ? zone : offset);
+    }
+
+    private static void readInts(JsonReader in, String[] names, int[] values) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            int index = indexOf(names, name);
+            if (index < 0) {
+                in.skipValue();
+            } else {
+                values[index] = in.nextInt();
+            }
+        }
+        in.endObject();
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * A ZoneOffset is stored as {"totalSeconds":...}, a ZoneRegion as {"id":"..."}.
+     */
+    private static ZoneId readZone(JsonReader in) throws IOException {
+        ZoneId zone = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("totalSeconds".equals(name)) {
+                zone = ZoneOffset.ofTotalSeconds(in.nextInt());
+            } else if ("id".equals(name)) {
+                zone = ZoneId.of(in.nextString());
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        if (zone == null) {
+            throw new JsonSyntaxException("Missing zone in date-time at " + in.getPath());
+        }
+        return zone;
+    }
+
+}
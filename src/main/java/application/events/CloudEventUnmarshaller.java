@@ -0,0 +1,115 @@
+package application.events;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import io.cloudevents.CloudEvent;
+import io.cloudevents.CloudEventData;
+import io.cloudevents.core.data.BytesCloudEventData;
+import io.cloudevents.http.HttpMessageFactory;
+import io.cloudevents.rw.CloudEventRWException;
+
+/**
+ * Turns received HTTP requests into cloud events. JSON data is kept as raw {@link JsonPayload}, any other data as
+ * bytes.
+ * <p>
+ * In binary mode the attributes come from the <code>ce-</code> headers and the body is the data. In structured and
+ * batch mode the body is read with a streaming parser into {@link JsonEventMembers}, which slices the bytes of each
+ * <code>data</code> member out of the body without building the value. Spec versions 0.3 and 1.0 are accepted. Every
+ * method throws <code>IllegalArgumentException</code> if the request does not hold valid cloud events.
+ */
+public final class CloudEventUnmarshaller {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private CloudEventUnmarshaller() {
+    }
+
+    /**
+     * @param headers The request headers, holding the event attributes.
+     * @param payload The request body, holding the data if there is any.
+     */
+    public static CloudEvent binary(Map<String, Object> headers, byte[] payload) {
+        Map<String, String> stringHeaders = new HashMap<>();
+        String contentType = null;
+        for (Map.Entry<String, Object> header : headers.entrySet()) {
+            String value = String.valueOf(header.getValue());
+            stringHeaders.put(header.getKey(), value);
+            if ("content-type".equalsIgnoreCase(header.getKey())) {
+                contentType = value;
+            }
+        }
+        String dataContentType = contentType;
+        try {
+            return HttpMessageFactory.createReader(stringHeaders, payload)
+                    .toEvent(data -> toData(dataContentType, data.toBytes()));
+        } catch (CloudEventRWException | IllegalStateException e) {
+            throw new IllegalArgumentException("Invalid cloud event: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param body A single event in the JSON event format.
+     */
+    public static CloudEvent structured(byte[] body) {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            parser.nextToken();
+            CloudEvent event = readEvent(parser, body);
+            if (parser.nextToken() != null) {
+                throw new IllegalArgumentException("Unexpected content after the cloud event");
+            }
+            return event;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid cloud event: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param body A JSON array of events in the JSON event format.
+     */
+    public static List<CloudEvent> batch(byte[] body) {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("A cloud event batch must be a JSON array");
+            }
+            List<CloudEvent> events = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                events.add(readEvent(parser, body));
+            }
+            if (parser.nextToken() != null) {
+                throw new IllegalArgumentException("Unexpected content after the cloud event batch");
+            }
+            return events;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid cloud event batch: " + e.getMessage(), e);
+        }
+    }
+
+    private static CloudEventData toData(String contentType, byte[] bytes) {
+        if (bytes.length == 0) {
+            return null;
+        }
+        return JsonPayload.isJson(contentType) ? JsonPayload.of(bytes) : BytesCloudEventData.wrap(bytes);
+    }
+
+    private static CloudEvent readEvent(JsonParser parser, byte[] body) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("A cloud event must be a JSON object");
+        }
+        JsonEventMembers members = new JsonEventMembers();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            members.read(name, parser, body);
+        }
+        return members.build();
+    }
+
+}
@@ -1,26 +1,60 @@
 package application.events;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import application.events.store.CloudEventStore;
+import application.events.store.EventPage;
+import application.events.store.EventQuery;
+import application.events.store.EventStoreFullException;
+import application.events.store.Futures;
+import application.events.store.PurgeMode;
 import io.cloudevents.CloudEvent;
-import io.cloudevents.json.Json;
-import io.cloudevents.v02.AttributesImpl;
-import io.cloudevents.v02.http.Unmarshallers;
+import io.cloudevents.jackson.JsonFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanBuilder;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
 
 /*
  * Best practice is to use a version identifier in the request mapping, e.g. /v1. however, Knative Eventing does not yet
@@ -35,12 +69,56 @@ import io.cloudevents.v02.http.Unmarshallers;
 public class EventController {
     
     private static final Logger logger = LoggerFactory.getLogger(EventController.class);
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    public static final String PURGE_PATH = "/v1/events/purge";
+    public static final String QUERY_PATH = "/v1/events/query";
+    public static final String STREAM_PATH = "/v1/events/stream";
+
+    public static final String CLOUDEVENTS_JSON_VALUE = "application/cloudevents+json";
+    public static final MediaType CLOUDEVENTS_JSON = MediaType.valueOf(CLOUDEVENTS_JSON_VALUE);
+    public static final String CLOUDEVENTS_BATCH_JSON_VALUE = "application/cloudevents-batch+json";
+    public static final MediaType CLOUDEVENTS_BATCH_JSON = MediaType.valueOf(CLOUDEVENTS_BATCH_JSON_VALUE);
+
+    private static final String MODE_BINARY = "binary";
+    private static final String MODE_STRUCTURED = "structured";
+    private static final String MODE_BATCH = "batch";
+    private static final String TAG_MODE = "mode";
+    private static final String TAG_STATUS = "status";
+
+    private static final String INGEST_SPAN = "ingest event";
+    private static final String INGEST_BATCH_SPAN = "ingest batch";
+    private static final String UNMARSHAL_SPAN = "unmarshal";
+    private static final int MAX_SPAN_LINKS = 128;
+
+    private static final String ORDER_ASC = "asc";
+    private static final String ORDER_DESC = "desc";
+
+    /* Writes events in the JSON event format */
+    private static final ObjectMapper EVENT_MAPPER = new ObjectMapper()
+            .registerModule(JsonFormat.getCloudEventJacksonModule());
+
+    /* Events are written one at a time to a shared response stream, which must stay open between them */
+    private static final ObjectWriter NDJSON_WRITER = EVENT_MAPPER.writer()
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
     
     private final EventService eventService;
     private final EventServiceFactory eventServiceFactory;
+    private final int maxEventBytes;
+    private final int maxBatchBytes;
+    private final MeterRegistry meterRegistry;
+    private final Tracer tracer;
 
-    public EventController(EventServiceFactory eventServiceFactory) {
+    public EventController(EventServiceFactory eventServiceFactory,
+            @Value("${eventstore.ingest.max-event-bytes:1048576}") int maxEventBytes,
+            @Value("${eventstore.ingest.max-batch-bytes:10485760}") int maxBatchBytes, MeterRegistry meterRegistry,
+            OpenTelemetry openTelemetry) {
         this.eventServiceFactory = eventServiceFactory;
+        this.maxEventBytes = maxEventBytes;
+        this.maxBatchBytes = maxBatchBytes;
+        this.meterRegistry = meterRegistry;
+        this.tracer = EventTracing.getTracer(openTelemetry);
         this.eventService = this.eventServiceFactory.getDefault();
     }
 
@@ -51,57 +129,209 @@ public class EventController {
     }
 
     /**
-     * Receives an event and stores it into the default cloud event store. When Knative supports routing to a custom URL path, the value here should change to something like /event.
+     * Receives events and stores them into the default cloud event store. When Knative supports routing to a custom URL path, the value here should change to something like /event.
+     * <p>
+     * The content type selects the HTTP content mode:
+     * <ul>
+     * <li><code>application/json</code>: binary mode, the attributes are in <code>ce-</code> headers and the body is
+     * the data</li>
+     * <li><code>application/cloudevents+json</code>: structured mode, the body is one event in the JSON format</li>
+     * <li><code>application/cloudevents-batch+json</code>: batch mode, the body is a JSON array of events, which are
+     * stored with a single bulk write</li>
+     * </ul>
+     * Event data is kept as the raw JSON it was received as. The request is parsed on the request thread, and the
+     * response is sent once the event store has stored the events, without holding the request thread while it waits.
+     * The time taken to unmarshal events, the size of request bodies and batches, and rejected requests are recorded in
+     * the <code>eventstore.ingest</code> meters.
+     * <p>
+     * Each request is traced in a span that continues the trace in the event's <code>traceparent</code> attribute, or
+     * in the request's <code>traceparent</code> header, with child spans for unmarshalling and storing the events.
      *
      * @param headers The request headers.
      * @param body    The request body.
      * 
-     * @return 202 if the event is successfully stored
+     * @return 202 if the events are successfully stored, 400 if the request does not hold valid events, 413 if the
+     *         body is larger than <code>eventstore.ingest.max-event-bytes</code> (or
+     *         <code>eventstore.ingest.max-batch-bytes</code> for a batch), or 503 if the event store is temporarily
+     *         unable to accept more events. Other content types are rejected with 415.
      * @throws Exception 
      */
-    @PostMapping(value = "/", consumes = {MediaType.APPLICATION_JSON_VALUE})
-    public ResponseEntity<Void> event(@RequestHeader Map<String, Object> headers, @RequestBody String body) throws Exception {
+    @PostMapping(value = "/", consumes = { MediaType.APPLICATION_JSON_VALUE, CLOUDEVENTS_JSON_VALUE,
+            CLOUDEVENTS_BATCH_JSON_VALUE })
+    public CompletableFuture<ResponseEntity<Void>> event(@RequestHeader Map<String, Object> headers, InputStream body)
+            throws Exception {
         logger.debug("Receved request headers: " + headers);
-        logger.debug("Received request body: " + body);
+        CompletableFuture<Void> stored;
         try {
-            Object contentTypeVal = headers.get("Content-Type");
-            if (contentTypeVal == null || MediaType.APPLICATION_JSON_VALUE.equalsIgnoreCase(contentTypeVal.toString())) {
-                @SuppressWarnings("rawtypes")
-                CloudEvent<AttributesImpl, Map> cloudEvent = Unmarshallers.binary(Map.class)
-                        .withHeaders(() -> headers)
-                        .withPayload(() -> body)
-                        .unmarshal();
-                logger.debug("Received CloudEvent: " + cloudEvent);
-                this.eventService.addEvent(cloudEvent);
+            Object contentTypeVal = getHeader(headers, HttpHeaders.CONTENT_TYPE);
+            MediaType contentType;
+            try {
+                contentType = contentTypeVal == null ? MediaType.APPLICATION_JSON
+                        : MediaType.parseMediaType(contentTypeVal.toString());
+            } catch (InvalidMediaTypeException e) {
+                throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "ERROR: " + e.getMessage(), e);
             }
-            return ResponseEntity.accepted().build();
-            
+            boolean batch = contentType.equalsTypeAndSubtype(CLOUDEVENTS_BATCH_JSON);
+            byte[] payload = readPayload(body, getHeader(headers, HttpHeaders.CONTENT_LENGTH),
+                    batch ? this.maxBatchBytes : this.maxEventBytes);
+            logger.debug("Received request body: " + payload.length + " bytes");
+            long start = System.nanoTime();
+            Instant received = Instant.now();
+            if (batch) {
+                List<CloudEvent> events = CloudEventUnmarshaller.batch(payload);
+                Instant unmarshalled = Instant.now();
+                logger.debug("Received " + events.size() + " CloudEvents");
+                recordIngest(MODE_BATCH, EventMetrics.eventTags(events), events.size(), payload.length, start);
+                DistributionSummary.builder(EventMetrics.INGEST_BATCH_SIZE).publishPercentileHistogram()
+                        .description("The number of events in each batch received").register(this.meterRegistry)
+                        .record(events.size());
+                for (CloudEvent cloudEvent : events) {
+                    if (cloudEvent.getData() != null && cloudEvent.getData().toBytes().length > this.maxEventBytes) {
+                        throw payloadTooLarge(this.maxEventBytes);
+                    }
+                }
+                if (events.isEmpty()) {
+                    stored = CompletableFuture.completedFuture(null);
+                } else {
+                    // Events in a batch can belong to different traces, so the span links to them instead
+                    SpanBuilder span = EventTracing.addLinks(this.tracer.spanBuilder(INGEST_BATCH_SPAN), events,
+                            MAX_SPAN_LINKS).setParent(EventTracing.extract(headers));
+                    stored = store(EventTracing.setAttributes(span, events), received, unmarshalled,
+                            () -> this.eventService.addEventsAsync(events));
+                }
+            } else {
+                CloudEvent cloudEvent;
+                String mode;
+                if (contentType.equalsTypeAndSubtype(CLOUDEVENTS_JSON)) {
+                    cloudEvent = CloudEventUnmarshaller.structured(payload);
+                    mode = MODE_STRUCTURED;
+                } else if (contentType.equalsTypeAndSubtype(MediaType.APPLICATION_JSON)) {
+                    cloudEvent = CloudEventUnmarshaller.binary(headers, payload);
+                    mode = MODE_BINARY;
+                } else {
+                    throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+                            "ERROR: Unsupported content type " + contentType);
+                }
+                Instant unmarshalled = Instant.now();
+                logger.debug("Received CloudEvent: " + cloudEvent.getId());
+                recordIngest(mode, EventMetrics.eventTags(cloudEvent), 1, payload.length, start);
+                SpanBuilder span = this.tracer.spanBuilder(INGEST_SPAN)
+                        .setParent(EventTracing.extract(cloudEvent, EventTracing.extract(headers)));
+                stored = store(EventTracing.setAttributes(span, cloudEvent), received, unmarshalled,
+                        () -> this.eventService.addEventAsync(cloudEvent));
+            }
+        } catch (IOException e) {
+            // Reading the body failed, most likely because the client went away
+            throw e;
         } catch (Exception e) {
+            return CompletableFuture.completedFuture(eventFailed(e));
+        }
+        return stored.handle((ignored, error) -> error == null ? ResponseEntity.accepted().build()
+                : eventFailed(Futures.unwrap(error)));
+    }
+
+    /*
+     * Starts the span for the request from the time it was received, records unmarshalling it as a child span, and
+     * stores the events within it. The span's parent can come from the events themselves, so it can only be started
+     * once they have been unmarshalled, and the unmarshal span is given the times unmarshalling started and ended.
+     */
+    @SuppressWarnings("try")
+    private CompletableFuture<Void> store(SpanBuilder spanBuilder, Instant received, Instant unmarshalled,
+            Supplier<CompletableFuture<Void>> store) {
+        Span span = spanBuilder.setSpanKind(SpanKind.CONSUMER).setStartTimestamp(received).startSpan();
+        this.tracer.spanBuilder(UNMARSHAL_SPAN).setParent(Context.current().with(span)).setStartTimestamp(received)
+                .startSpan().end(unmarshalled);
+        // The scope is not used directly: it makes the span the parent of the spans the store starts
+        try (Scope scope = span.makeCurrent()) {
+            return EventTracing.endOnCompletion(span, store.get());
+        }
+    }
+
+    /*
+     * Records the time taken to unmarshal the events, which started at the given time, the size of the payload they
+     * were unmarshalled from, and the number of events by type and source.
+     */
+    private void recordIngest(String mode, Tags eventTags, int events, int payloadBytes, long start) {
+        Timer.builder(EventMetrics.INGEST_UNMARSHAL).tag(TAG_MODE, mode).publishPercentileHistogram()
+                .description("The time taken to unmarshal the events received").register(this.meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder(EventMetrics.INGEST_PAYLOAD).tag(TAG_MODE, mode).baseUnit("bytes")
+                .publishPercentileHistogram().description("The size of the request bodies events are received in")
+                .register(this.meterRegistry).record(payloadBytes);
+        Counter.builder(EventMetrics.INGEST_EVENTS).tags(eventTags).tag(TAG_MODE, mode)
+                .description("The number of events received").register(this.meterRegistry).increment(events);
+    }
+
+    /*
+     * Maps an error parsing or storing events to the response, or to the exception that sets the response status, and
+     * counts it by status and exception.
+     */
+    private ResponseEntity<Void> eventFailed(Throwable e) {
+        if (e instanceof EventStoreFullException) {
+            countFailure(HttpStatus.SERVICE_UNAVAILABLE, e);
+            logger.warn("Rejecting events: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+        ResponseStatusException failure;
+        if (e instanceof IllegalArgumentException) {
+            failure = new ResponseStatusException(HttpStatus.BAD_REQUEST, "ERROR: " + e.getMessage(), e);
+        } else if (e instanceof ResponseStatusException) {
+            failure = (ResponseStatusException) e;
+        } else {
             String errMsg = "ERROR: Exception processing received event";
             logger.error(errMsg, e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, errMsg, e);
+            failure = new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, errMsg, e);
         }
+        countFailure(failure.getStatus(), e);
+        throw failure;
+    }
+
+    private void countFailure(HttpStatus status, Throwable e) {
+        Counter.builder(EventMetrics.INGEST_ERRORS).tag(TAG_STATUS, String.valueOf(status.value()))
+                .tag(EventMetrics.TAG_EXCEPTION, EventMetrics.exception(e))
+                .description("The number of requests with events that were rejected").register(this.meterRegistry)
+                .increment();
     }
 
     /**
-     * Returns up to MAX_NUM_EVENTS events in plain text.
+     * Returns a page of events in plain text.
      *
-     * @param deleteAll If true, all the events in the cloud event store will be deleted.
+     * @param deleteAll If true, all the events in the cloud event store will be deleted in the background.
+     * @param mode      How to delete the events when deleteAll is true, either <code>bulk_delete</code> or
+     *                  <code>truncate</code>.
+     * @param limit     The maximum number of events to return, up to {@value #MAX_PAGE_SIZE}.
+     * @param bookmark  The continuation token returned with the previous page, if any.
+     * @param order     The order to return events in, either <code>asc</code> or <code>desc</code>.
      * 
-     * @return A plain text rendering of up to MAX_NUM_EVENTS events, or a message indicating events have been deleted when
-     * deleteAll is true.
+     * @return A plain text rendering of up to <code>limit</code> events, or a message indicating the deletion of
+     *         events has started when deleteAll is true. When there are more events a <code>Link</code> header points to the
+     *         next page.
      * @throws Exception 
      */
     @GetMapping(value = "/v1/events", produces = MediaType.TEXT_PLAIN_VALUE)
     public @ResponseBody
-    ResponseEntity<String> events(@RequestParam(name = "deleteAll", defaultValue = "false") boolean deleteAll) throws Exception {
+    ResponseEntity<String> events(@RequestParam(name = "deleteAll", defaultValue = "false") boolean deleteAll,
+            @RequestParam(name = "mode", defaultValue = "bulk_delete") String mode,
+            @RequestParam(name = "limit", defaultValue = "" + CloudEventStore.DEFAULT_MAX_EVENTS) int limit,
+            @RequestParam(name = "bookmark", required = false) String bookmark,
+            @RequestParam(name = "order", defaultValue = ORDER_ASC) String order) throws Exception {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "ERROR: limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        boolean descending = isDescending(order);
+
         StringBuilder sb = new StringBuilder();
         HttpStatus responseCode = HttpStatus.OK;
+        HttpHeaders responseHeaders = new HttpHeaders();
         try {
             if (deleteAll) {
-                logger.info("Deleting all cloud events");
-                this.eventService.removeAllEvents();
-                sb.append("All cloud events deleted. Remove the deleteAll parameter and reload the page.");
+                PurgeJob job = this.eventService.startPurge(PurgeMode.valueOf(mode.toUpperCase()));
+                logger.info("Deleting all cloud events: " + job);
+                sb.append("Deletion of all cloud events started. See " + PURGE_PATH
+                        + " for progress, then remove the deleteAll parameter and reload the page.");
+                responseCode = HttpStatus.ACCEPTED;
+                responseHeaders.setLocation(URI.create(PURGE_PATH));
                 
             } else {
                 long numEvents = this.eventService.getNumEvents();
@@ -111,24 +341,28 @@ public class EventController {
                     sb.append("ERROR: Unable to retrieve number of events due to an unexpected error. See the application logs for details.");
                     responseCode = HttpStatus.INTERNAL_SERVER_ERROR;
                 } else {
-                    int maxEvents = 100;
-                    sb.append("NUMBER OF EVENTS (MAX " + maxEvents + " DISPLAYED): " + numEvents).append("\n\n");
-                    List<CloudEvent<?, ?>> events = this.eventService.getEvents();
-                    int count = 0;
-                    for (CloudEvent<?, ?> evt : events) {
-                        String evtStr = Json.encode(evt);
+                    sb.append("NUMBER OF EVENTS (MAX " + limit + " DISPLAYED): " + numEvents).append("\n\n");
+                    EventPage page = this.eventService.getEvents(limit, bookmark, descending);
+                    for (CloudEvent evt : page.getEvents()) {
+                        String evtStr = EVENT_MAPPER.writeValueAsString(evt);
                         sb.append(evtStr).append("\n\n");
-                        count++;
-                        if (count == maxEvents) {
-                            break;
-                        }
+                    }
+                    if (page.hasMore()) {
+                        String next = UriComponentsBuilder.fromPath("/v1/events").queryParam("limit", limit)
+                                .queryParam("bookmark", page.getBookmark()).queryParam("order", order.toLowerCase())
+                                .toUriString();
+                        sb.append("NEXT PAGE: ").append(next).append("\n");
+                        responseHeaders.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
                     }
                 }
             }
 
             String response = sb.toString();
-            return ResponseEntity.status(responseCode).body(response);
+            return ResponseEntity.status(responseCode).headers(responseHeaders).body(response);
             
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ERROR: " + e.getMessage(), e);
+
         } catch (Exception e) {
             String errMsg = "ERROR: Exception while retrieving events: " + e.getMessage();
             logger.error(errMsg, e);
@@ -136,6 +370,142 @@ public class EventController {
         }
     }
 
+    /**
+     * Returns the progress of the most recently started deletion of all events.
+     *
+     * @return A plain text description of the purge job, or 404 if no purge has been started.
+     */
+    @GetMapping(value = PURGE_PATH, produces = MediaType.TEXT_PLAIN_VALUE)
+    public @ResponseBody
+    ResponseEntity<String> purgeStatus() {
+        PurgeJob job = this.eventService.getPurgeJob();
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No purge job has been started.");
+        }
+        return ResponseEntity.ok(job.toString());
+    }
+
+    /**
+     * Streams events as newline-delimited JSON. Events are read from the store one page at a time and written to the
+     * response as they arrive, so memory use does not depend on how many events are requested. This has its own path
+     * so that <code>/v1/events</code> stays plain text whatever a client accepts.
+     *
+     * @param limit    The maximum number of events to return, or all events if not specified.
+     * @param pageSize The number of events to read from the store at a time, up to {@value #MAX_PAGE_SIZE}.
+     * @param bookmark The continuation token to start from, if any.
+     * @param order    The order to return events in, either <code>asc</code> or <code>desc</code>.
+     * 
+     * @return A streaming response with one JSON encoded event per line.
+     */
+    @GetMapping(value = STREAM_PATH, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamEvents(
+            @RequestParam(name = "limit", defaultValue = "" + Long.MAX_VALUE) long limit,
+            @RequestParam(name = "pageSize", defaultValue = "" + CloudEventStore.DEFAULT_MAX_EVENTS) int pageSize,
+            @RequestParam(name = "bookmark", required = false) String bookmark,
+            @RequestParam(name = "order", defaultValue = ORDER_ASC) String order) {
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ERROR: limit must be positive");
+        }
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "ERROR: pageSize must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        boolean descending = isDescending(order);
+
+        StreamingResponseBody body = out -> {
+            long remaining = limit;
+            String nextBookmark = bookmark;
+            try {
+                do {
+                    int size = (int) Math.min(pageSize, remaining);
+                    EventPage page = this.eventService.getEvents(size, nextBookmark, descending);
+                    for (CloudEvent evt : page.getEvents()) {
+                        NDJSON_WRITER.writeValue(out, evt);
+                        out.write('\n');
+                    }
+                    out.flush();
+                    remaining -= page.getEvents().size();
+                    nextBookmark = page.getBookmark();
+                } while (nextBookmark != null && remaining > 0);
+            } catch (IOException e) {
+                // Most likely the client went away; there is nobody left to report to
+                logger.debug("Event stream aborted: " + e.getMessage());
+            } catch (Exception e) {
+                logger.error("ERROR: Exception while streaming events", e);
+                throw new IOException("Exception while streaming events", e);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Returns a page of the events with the given attributes and time as newline-delimited JSON. Only the matching
+     * events are read from stores that index them, as Cloudant does.
+     *
+     * @param type     Only return events of this type.
+     * @param source   Only return events from this source.
+     * @param subject  Only return events about this subject.
+     * @param from     Only return events at or after this time, in ISO-8601 format, e.g.
+     *                 <code>2019-10-09T21:23:08Z</code>.
+     * @param to       Only return events before this time.
+     * @param limit    The maximum number of events to return, up to {@value #MAX_PAGE_SIZE}.
+     * @param bookmark The continuation token returned with the previous page, if any.
+     * @param order    The order to return events in by time, either <code>asc</code> or <code>desc</code>.
+     * 
+     * @return One JSON encoded event per line. When there may be more events a <code>Link</code> header points to the
+     *         next page.
+     */
+    @GetMapping(value = QUERY_PATH, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> queryEvents(
+            @RequestParam(name = "type", required = false) String type,
+            @RequestParam(name = "source", required = false) String source,
+            @RequestParam(name = "subject", required = false) String subject,
+            @RequestParam(name = "from", required = false) String from,
+            @RequestParam(name = "to", required = false) String to,
+            @RequestParam(name = "limit", defaultValue = "" + CloudEventStore.DEFAULT_MAX_EVENTS) int limit,
+            @RequestParam(name = "bookmark", required = false) String bookmark,
+            @RequestParam(name = "order", defaultValue = ORDER_ASC) String order) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "ERROR: limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        Optional<Instant> fromTime = parseTime("from", from);
+        Optional<Instant> toTime = parseTime("to", to);
+        boolean descending = isDescending(order);
+        EventPage page;
+        try {
+            EventQuery query = EventQuery.builder().type(type).source(source).subject(subject)
+                    .from(fromTime.orElse(null)).to(toTime.orElse(null)).limit(limit).bookmark(bookmark)
+                    .descending(descending).build();
+            page = this.eventService.queryEvents(query);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ERROR: " + e.getMessage(), e);
+        } catch (Exception e) {
+            String errMsg = "ERROR: Exception while querying events: " + e.getMessage();
+            logger.error(errMsg, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, errMsg, e);
+        }
+
+        HttpHeaders responseHeaders = new HttpHeaders();
+        if (page.hasMore()) {
+            String next = UriComponentsBuilder.fromPath(QUERY_PATH)
+                    .queryParamIfPresent("type", Optional.ofNullable(type))
+                    .queryParamIfPresent("source", Optional.ofNullable(source))
+                    .queryParamIfPresent("subject", Optional.ofNullable(subject))
+                    .queryParamIfPresent("from", fromTime).queryParamIfPresent("to", toTime).queryParam("limit", limit)
+                    .queryParam("bookmark", page.getBookmark()).queryParam("order", order.toLowerCase()).encode()
+                    .toUriString();
+            responseHeaders.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        StreamingResponseBody body = out -> {
+            for (CloudEvent evt : page.getEvents()) {
+                NDJSON_WRITER.writeValue(out, evt);
+                out.write('\n');
+            }
+        };
+        return ResponseEntity.ok().headers(responseHeaders).contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @GetMapping(value = "/v1/env", produces = MediaType.TEXT_PLAIN_VALUE)
     public @ResponseBody
     ResponseEntity<String> cloudant() {
@@ -150,4 +520,73 @@ public class EventController {
         }
     }
 
+    /*
+     * Reads the whole body into one array of the right size when the length is known up front, and never reads more
+     * than one byte past the limit when it is not.
+     */
+    private static byte[] readPayload(InputStream body, Object contentLengthVal, int maxBytes) throws IOException {
+        long contentLength = -1;
+        if (contentLengthVal != null) {
+            try {
+                contentLength = Long.parseLong(contentLengthVal.toString().trim());
+            } catch (NumberFormatException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ERROR: Invalid Content-Length");
+            }
+        }
+        if (contentLength > maxBytes) {
+            throw payloadTooLarge(maxBytes);
+        }
+
+        byte[] payload;
+        if (contentLength >= 0) {
+            payload = new byte[(int) contentLength];
+            if (body.readNBytes(payload, 0, payload.length) < payload.length) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ERROR: Request body is truncated");
+            }
+        } else {
+            payload = body.readNBytes(maxBytes + 1);
+            if (payload.length > maxBytes) {
+                throw payloadTooLarge(maxBytes);
+            }
+        }
+        return payload;
+    }
+
+    private static ResponseStatusException payloadTooLarge(int maxBytes) {
+        return new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                "ERROR: Request bodies are limited to " + maxBytes + " bytes");
+    }
+
+    /*
+     * Header names are matched case-insensitively, as HTTP requires.
+     */
+    private static Object getHeader(Map<String, Object> headers, String name) {
+        for (Map.Entry<String, Object> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Times are given back in UTC, as an offset's "+" would need encoding in a query string.
+     */
+    private static Optional<Instant> parseTime(String name, String time) {
+        try {
+            return Optional.ofNullable(time).map(t -> OffsetDateTime.parse(t).toInstant());
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "ERROR: " + name + " must be an ISO-8601 date and time with an offset", e);
+        }
+    }
+
+    private static boolean isDescending(String order) {
+        if (!ORDER_ASC.equalsIgnoreCase(order) && !ORDER_DESC.equalsIgnoreCase(order)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "ERROR: order must be " + ORDER_ASC + " or " + ORDER_DESC);
+        }
+        return ORDER_DESC.equalsIgnoreCase(order);
+    }
+
 }
@@ -0,0 +1,79 @@
+package application.events;
+
+import java.util.List;
+
+import application.events.store.Futures;
+import io.cloudevents.CloudEvent;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.config.MeterFilter;
+
+/**
+ * Names and tags of the ingest and event store meters.
+ * <p>
+ * The counts of events are tagged with the event <code>type</code> and <code>source</code>, or <code>mixed</code> for
+ * a batch of events that do not share one. Both are chosen by the clients sending events, so
+ * {@link #tagLimit(String, int)} caps the number of distinct values each can take. Timers and distribution summaries
+ * publish a histogram of dozens of buckets per series, so they are only tagged with the ingest mode or store
+ * operation and exception.
+ */
+public final class EventMetrics {
+
+    public static final String PREFIX = "eventstore";
+
+    public static final String INGEST_UNMARSHAL = PREFIX + ".ingest.unmarshal";
+    public static final String INGEST_PAYLOAD = PREFIX + ".ingest.payload";
+    public static final String INGEST_BATCH_SIZE = PREFIX + ".ingest.batch.size";
+    public static final String INGEST_ERRORS = PREFIX + ".ingest.errors";
+    public static final String INGEST_EVENTS = PREFIX + ".ingest.events";
+    public static final String STORE_WRITES = PREFIX + ".store.writes";
+    public static final String STORE_EVENTS = PREFIX + ".store.events";
+    public static final String STORE_READS = PREFIX + ".store.reads";
+    public static final String STORE_INVALID = PREFIX + ".store.invalid";
+    public static final String RETENTION_DELETED = PREFIX + ".retention.deleted";
+
+    public static final String TAG_TYPE = "type";
+    public static final String TAG_SOURCE = "source";
+    public static final String TAG_EXCEPTION = "exception";
+
+    static final String MIXED = "mixed";
+    static final String NONE = "none";
+
+    private EventMetrics() {
+    }
+
+    public static Tags eventTags(CloudEvent event) {
+        return Tags.of(TAG_TYPE, event.getType(), TAG_SOURCE, event.getSource().toString());
+    }
+
+    public static Tags eventTags(List<CloudEvent> events) {
+        if (events.isEmpty()) {
+            return Tags.of(TAG_TYPE, NONE, TAG_SOURCE, NONE);
+        }
+        CloudEvent first = events.get(0);
+        boolean sameType = true;
+        boolean sameSource = true;
+        for (CloudEvent event : events) {
+            sameType &= first.getType().equals(event.getType());
+            sameSource &= first.getSource().equals(event.getSource());
+        }
+        return Tags.of(TAG_TYPE, sameType ? first.getType() : MIXED, TAG_SOURCE,
+                sameSource ? first.getSource().toString() : MIXED);
+    }
+
+    /**
+     * @return the exception tag value for an operation that failed with the error, or <code>none</code> if it
+     *         succeeded
+     */
+    public static String exception(Throwable error) {
+        return error == null ? NONE : Futures.unwrap(error).getClass().getSimpleName();
+    }
+
+    /**
+     * Caps the number of distinct values of the tag on the event store meters. Meters for any further values are not
+     * registered.
+     */
+    public static MeterFilter tagLimit(String tag, int maxValues) {
+        return MeterFilter.maximumAllowableTags(PREFIX, tag, maxValues, MeterFilter.deny());
+    }
+
+}
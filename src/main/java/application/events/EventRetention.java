@@ -0,0 +1,119 @@
+package application.events;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import application.events.store.CloudEventStore;
+import application.events.store.CloudEventStoreFactory;
+import application.events.store.RetentionPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Removes the events the <code>eventstore.retention</code> policy does not keep from the event store in the
+ * background, so the store stays bounded without anyone purging it.
+ * <p>
+ * Each run removes the expired events a page at a time at no more than the policy's rate, and the next run starts
+ * <code>interval-ms</code> after it finishes. Runs have a thread of their own, as pacing them would hold up the other
+ * scheduled tasks, such as reconciling the event count, on Spring's single scheduler thread. The events removed are
+ * counted in the {@value EventMetrics#RETENTION_DELETED} counter. The application fails to start if the store
+ * does not support the policy.
+ */
+@Component
+@ConditionalOnProperty(name = "eventstore.retention.enabled", havingValue = "true")
+public class EventRetention {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventRetention.class);
+
+    private final CloudEventStore store;
+    private final RetentionPolicy policy;
+    private final long intervalMillis;
+    private final Counter deletedEvents;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "event-store-retention");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public EventRetention(CloudEventStoreFactory storeFactory,
+            @Value("${eventstore.retention.max-age-ms:0}") long maxAgeMillis,
+            @Value("${eventstore.retention.max-events:0}") long maxEvents,
+            @Value("${eventstore.retention.max-bytes:0}") long maxBytes,
+            @Value("${eventstore.retention.max-deletes-per-second:1000}") int maxDeletesPerSecond,
+            @Value("${eventstore.retention.interval-ms:300000}") long intervalMillis,
+            MeterRegistry meterRegistry) {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("Invalid retention interval: " + intervalMillis + "ms");
+        }
+        this.store = storeFactory.getDefault();
+        this.policy = new RetentionPolicy(Duration.ofMillis(maxAgeMillis), maxEvents, maxBytes, maxDeletesPerSecond);
+        this.intervalMillis = intervalMillis;
+        this.deletedEvents = Counter.builder(EventMetrics.RETENTION_DELETED)
+                .description("The number of events removed by the retention policy").register(meterRegistry);
+        if (!this.policy.isLimited()) {
+            logger.warn("Event retention is enabled without a limit: " + this.policy);
+        } else if (!this.store.supportsRetention(this.policy)) {
+            throw new IllegalArgumentException("The event store does not support the retention policy: " + this.policy);
+        }
+    }
+
+    public RetentionPolicy getPolicy() {
+        return this.policy;
+    }
+
+    @PostConstruct
+    public void start() {
+        this.executor.scheduleWithFixedDelay(this::removeExpiredEvents, this.intervalMillis, this.intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the run in progress, if any, between pages.
+     */
+    @PreDestroy
+    public void stop() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Removes the events the policy does not keep.
+     *
+     * @return The number of events removed, or -1 if they could not be removed.
+     */
+    public long removeExpiredEvents() {
+        if (!this.policy.isLimited()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        long[] deleted = new long[1];
+        try {
+            this.store.removeExpiredEvents(this.policy, count -> {
+                deleted[0] += count;
+                this.deletedEvents.increment(count);
+            });
+            if (deleted[0] > 0) {
+                logger.info("Removed " + deleted[0] + " expired events in " + (System.currentTimeMillis() - start)
+                        + "ms");
+            }
+            return deleted[0];
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (Exception e) {
+            logger.error("Unable to remove expired events after removing " + deleted[0], e);
+            return -1;
+        }
+    }
+
+}
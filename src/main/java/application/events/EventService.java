@@ -1,7 +1,12 @@
 package application.events;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import application.events.store.EventPage;
+import application.events.store.EventQuery;
+import application.events.store.Futures;
+import application.events.store.PurgeMode;
 import io.cloudevents.CloudEvent;
 
 /**
@@ -13,11 +18,47 @@ public interface EventService {
 
     String getStatus();
     
-    List<CloudEvent<?, ?>> getEvents() throws Exception;
+    EventPage getEvents(int limit, String bookmark, boolean descending) throws Exception;
+
+    /**
+     * Reads a window of the events with the attributes and time the query selects.
+     */
+    EventPage queryEvents(EventQuery query) throws Exception;
     
-    void addEvent(CloudEvent<?, ?> event) throws Exception;
+    void addEvent(CloudEvent event) throws Exception;
+
+    /**
+     * Stores a batch of events with as few writes as the event store allows.
+     */
+    void addEvents(List<CloudEvent> events) throws Exception;
+
+    /**
+     * Stores an event without waiting for the event store, if the event store allows it.
+     */
+    default CompletableFuture<Void> addEventAsync(CloudEvent event) {
+        return Futures.call(() -> {
+            addEvent(event);
+            return null;
+        });
+    }
+
+    default CompletableFuture<Void> addEventsAsync(List<CloudEvent> events) {
+        return Futures.call(() -> {
+            addEvents(events);
+            return null;
+        });
+    }
     
-    void removeAllEvents() throws Exception;
+    /**
+     * Starts removing all events in the background. If a purge is already running, that purge is returned instead of
+     * starting another one.
+     */
+    PurgeJob startPurge(PurgeMode mode);
+
+    /**
+     * @return the most recently started purge job, or null if no purge has been started
+     */
+    PurgeJob getPurgeJob();
 
     long getNumEvents() throws Exception;
     
@@ -0,0 +1,134 @@
+package application.events;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import application.events.store.Futures;
+import io.cloudevents.CloudEvent;
+import io.cloudevents.core.extensions.DistributedTracingExtension;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanBuilder;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapGetter;
+
+/**
+ * Traces events with OpenTelemetry.
+ * <p>
+ * A producer's trace is continued from the <code>traceparent</code> and <code>tracestate</code> attributes of the
+ * {@link DistributedTracingExtension}, in the W3C trace context format. Spans are tagged with the CloudEvents semantic
+ * convention attributes.
+ */
+public final class EventTracing {
+
+    public static final String INSTRUMENTATION_NAME = "application.events";
+
+    public static final AttributeKey<String> EVENT_ID = AttributeKey.stringKey("cloudevents.event_id");
+    public static final AttributeKey<String> EVENT_TYPE = AttributeKey.stringKey("cloudevents.event_type");
+    public static final AttributeKey<String> EVENT_SOURCE = AttributeKey.stringKey("cloudevents.event_source");
+    public static final AttributeKey<Long> EVENT_COUNT = AttributeKey.longKey("cloudevents.event_count");
+
+    private static final W3CTraceContextPropagator PROPAGATOR = W3CTraceContextPropagator.getInstance();
+
+    private static final TextMapGetter<CloudEvent> EXTENSION_GETTER = new TextMapGetter<CloudEvent>() {
+
+        @Override
+        public Iterable<String> keys(CloudEvent event) {
+            return event.getExtensionNames();
+        }
+
+        @Override
+        public String get(CloudEvent event, String key) {
+            Object value = event == null ? null : event.getExtension(key);
+            return value == null ? null : value.toString();
+        }
+
+    };
+
+    private static final TextMapGetter<Map<String, Object>> HEADER_GETTER = new TextMapGetter<Map<String, Object>>() {
+
+        @Override
+        public Iterable<String> keys(Map<String, Object> headers) {
+            return headers.keySet();
+        }
+
+        @Override
+        public String get(Map<String, Object> headers, String key) {
+            if (headers == null) {
+                return null;
+            }
+            for (Map.Entry<String, Object> header : headers.entrySet()) {
+                if (key.equalsIgnoreCase(header.getKey())) {
+                    return header.getValue() == null ? null : header.getValue().toString();
+                }
+            }
+            return null;
+        }
+
+    };
+
+    private EventTracing() {
+    }
+
+    public static Tracer getTracer(OpenTelemetry openTelemetry) {
+        return openTelemetry.getTracer(INSTRUMENTATION_NAME);
+    }
+
+    /**
+     * @return the trace context the event was sent with, or the given context if it has none
+     */
+    public static Context extract(CloudEvent event, Context context) {
+        return PROPAGATOR.extract(context, event, EXTENSION_GETTER);
+    }
+
+    /**
+     * @return the trace context of the HTTP request the headers belong to, or the root context if it has none
+     */
+    public static Context extract(Map<String, Object> headers) {
+        return PROPAGATOR.extract(Context.root(), headers, HEADER_GETTER);
+    }
+
+    /**
+     * Links the span to the traces of up to <code>maxLinks</code> events of a batch, which need not share one.
+     */
+    public static SpanBuilder addLinks(SpanBuilder span, List<CloudEvent> events, int maxLinks) {
+        for (CloudEvent event : events.subList(0, Math.min(events.size(), maxLinks))) {
+            Span producer = Span.fromContext(extract(event, Context.root()));
+            if (producer.getSpanContext().isValid()) {
+                span.addLink(producer.getSpanContext());
+            }
+        }
+        return span;
+    }
+
+    public static SpanBuilder setAttributes(SpanBuilder span, CloudEvent event) {
+        return span.setAttribute(EVENT_ID, event.getId()).setAttribute(EVENT_TYPE, event.getType())
+                .setAttribute(EVENT_SOURCE, event.getSource().toString());
+    }
+
+    public static SpanBuilder setAttributes(SpanBuilder span, List<CloudEvent> events) {
+        return span.setAttribute(EVENT_COUNT, (long) events.size());
+    }
+
+    /**
+     * Ends the span when the future completes, recording the error it failed with, if any.
+     */
+    public static <T> CompletableFuture<T> endOnCompletion(Span span, CompletableFuture<T> future) {
+        return future.whenComplete((result, error) -> end(span, error));
+    }
+
+    public static void end(Span span, Throwable error) {
+        if (error != null) {
+            Throwable cause = Futures.unwrap(error);
+            span.recordException(cause);
+            span.setStatus(StatusCode.ERROR, String.valueOf(cause.getMessage()));
+        }
+        span.end();
+    }
+
+}
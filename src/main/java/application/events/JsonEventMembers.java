@@ -0,0 +1,144 @@
+package application.events;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import io.cloudevents.CloudEvent;
+import io.cloudevents.SpecVersion;
+import io.cloudevents.core.builder.CloudEventBuilder;
+import io.cloudevents.core.data.BytesCloudEventData;
+import io.cloudevents.rw.CloudEventRWException;
+
+/**
+ * Collects the members of an event in the JSON event format while it is read with a streaming parser, and builds the
+ * event once the whole object has been read. Attributes are kept as scalars and the bytes of <code>data</code> are
+ * sliced out of the body as {@link JsonPayload}. Used for received events by {@link CloudEventUnmarshaller} and for
+ * stored ones by the Cloudant document reader.
+ * <p>
+ * Reading a member never fails on its value, so a reader that skips invalid events is left at the end of the object
+ * when {@link #build()} rejects one.
+ */
+public final class JsonEventMembers {
+
+    public static final String SPECVERSION = "specversion";
+    public static final String DATACONTENTTYPE = "datacontenttype";
+    public static final String DATA = "data";
+    public static final String DATA_BASE64 = "data_base64";
+
+    private final Map<String, Object> attributes = new HashMap<>();
+    private byte[] data;
+    private String dataString;
+    private String dataBase64;
+
+    /**
+     * Reads the member whose value is at the parser's current token, and leaves the parser at the end of the value.
+     * Structured values other than <code>data</code> are skipped, as no attribute or extension is structured.
+     *
+     * @param body The bytes the parser reads.
+     */
+    public void read(String name, JsonParser parser, byte[] body) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (DATA.equals(name)) {
+            if (token == JsonToken.VALUE_STRING) {
+                this.dataString = parser.getText();
+            }
+            this.data = token == JsonToken.VALUE_NULL ? null : readRawValue(parser, body);
+        } else if (DATA_BASE64.equals(name)) {
+            this.dataBase64 = token == JsonToken.VALUE_NULL ? null : parser.getText();
+        } else if (token.isStructStart()) {
+            parser.skipChildren();
+        } else {
+            putScalar(parser, name, this.attributes);
+        }
+    }
+
+    /**
+     * @return the attributes and extensions read so far, which may be changed before the event is built
+     */
+    public Map<String, Object> getAttributes() {
+        return this.attributes;
+    }
+
+    /**
+     * Builds the event in the spec version of its <code>specversion</code> attribute. The <code>time</code> may also
+     * be given as a <code>ZonedDateTime</code>.
+     *
+     * @throws IllegalArgumentException if the members are not a valid cloud event
+     */
+    public CloudEvent build() {
+        Object specversion = this.attributes.remove(SPECVERSION);
+        if (specversion == null) {
+            throw new IllegalArgumentException("Missing cloud event attribute: " + SPECVERSION);
+        }
+        try {
+            CloudEventBuilder builder = CloudEventBuilder.fromSpecVersion(SpecVersion.parse(specversion.toString()));
+            for (Map.Entry<String, Object> attribute : this.attributes.entrySet()) {
+                Object value = attribute.getValue();
+                if (value instanceof ZonedDateTime) {
+                    builder.withTime(((ZonedDateTime) value).toOffsetDateTime());
+                } else if (value instanceof Number) {
+                    // No context attribute is a number, so this can only be an extension
+                    builder.withExtension(attribute.getKey(), (Number) value);
+                } else if (value instanceof Boolean) {
+                    builder.withExtension(attribute.getKey(), (Boolean) value);
+                } else {
+                    builder.withContextAttribute(attribute.getKey(), value.toString());
+                }
+            }
+            Object contentType = this.attributes.get(DATACONTENTTYPE);
+            if (this.dataBase64 != null) {
+                builder.withData(BytesCloudEventData.wrap(Base64.getDecoder().decode(this.dataBase64)));
+            } else if (this.dataString != null && contentType != null && !JsonPayload.isJson(contentType.toString())) {
+                // Textual data of other content types is carried as a JSON string
+                builder.withData(BytesCloudEventData.wrap(this.dataString.getBytes(StandardCharsets.UTF_8)));
+            } else if (this.data != null) {
+                builder.withData(JsonPayload.of(this.data));
+            }
+            return builder.build();
+        } catch (CloudEventRWException | IllegalStateException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cloud event: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Puts the scalar at the parser's current token into the map, as a number, boolean or string. Nulls are left out.
+     */
+    public static void putScalar(JsonParser parser, String name, Map<String, Object> values) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token.isNumeric()) {
+            values.put(name, parser.getNumberValue());
+        } else if (token.isBoolean()) {
+            values.put(name, parser.getBooleanValue());
+        } else if (token != JsonToken.VALUE_NULL) {
+            values.put(name, parser.getText());
+        }
+    }
+
+    /**
+     * Copies the JSON value at the parser's current token out of the bytes the parser reads, and leaves the parser at
+     * the end of the value.
+     * <p>
+     * Byte offsets are exact for a parser reading a byte array. Slicing out the value, rather than reading it into a
+     * tree and writing it again, also leaves its formatting and number representation untouched.
+     */
+    public static byte[] readRawValue(JsonParser parser, byte[] body) throws IOException {
+        int start = (int) parser.getTokenLocation().getByteOffset();
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+        } else {
+            parser.finishToken();
+        }
+        int end = (int) parser.getCurrentLocation().getByteOffset();
+        byte[] json = new byte[end - start];
+        System.arraycopy(body, start, json, 0, json.length);
+        return json;
+    }
+
+}
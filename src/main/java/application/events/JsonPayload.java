@@ -0,0 +1,74 @@
+package application.events;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import io.cloudevents.CloudEventData;
+
+/**
+ * Event data kept as the UTF-8 encoded JSON it was received as. The data of an ingested event is only stored, never
+ * inspected, so it is checked to be well-formed and then passed through to the event store as is, instead of being
+ * parsed into a tree and serialized again.
+ */
+public final class JsonPayload implements CloudEventData {
+
+    private final byte[] json;
+
+    private JsonPayload(byte[] json) {
+        this.json = json;
+    }
+
+    /**
+     * @param json UTF-8 encoded JSON, which is not copied and must not be modified afterwards
+     * @throws IllegalArgumentException if the bytes are not a single well-formed JSON value
+     */
+    public static JsonPayload of(byte[] json) {
+        // Scans the tokens without building any of the values
+        try (JsonReader reader = new JsonReader(
+                new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8))) {
+            reader.skipValue();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IllegalArgumentException("Event data contains more than one JSON value");
+            }
+        } catch (IOException | IllegalStateException e) {
+            throw new IllegalArgumentException("Event data is not valid JSON: " + e.getMessage(), e);
+        }
+        return new JsonPayload(json);
+    }
+
+    /**
+     * Whether data of the given content type is JSON, and so is held in the <code>data</code> member of the JSON event
+     * format rather than in <code>data_base64</code>. Events without a content type are JSON.
+     */
+    public static boolean isJson(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        int end = contentType.indexOf(';');
+        String mediaType = (end < 0 ? contentType : contentType.substring(0, end)).trim().toLowerCase();
+        return mediaType.equals("application/json") || mediaType.equals("text/json") || mediaType.endsWith("+json");
+    }
+
+    /**
+     * @return the JSON bytes themselves, not a copy
+     */
+    @Override
+    public byte[] toBytes() {
+        return this.json;
+    }
+
+    public int size() {
+        return this.json.length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.json, StandardCharsets.UTF_8);
+    }
+
+}
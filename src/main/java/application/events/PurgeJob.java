@@ -0,0 +1,84 @@
+package application.events;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import application.events.store.PurgeMode;
+
+/**
+ * Tracks the progress of a background job removing all events from a cloud event store.
+ */
+public class PurgeJob {
+
+    public enum State {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    private final PurgeMode mode;
+    private final Instant startTime = Instant.now();
+    private final AtomicLong deletedEvents = new AtomicLong();
+
+    private volatile State state = State.RUNNING;
+    private volatile Instant endTime;
+    private volatile String error;
+
+    public PurgeJob(PurgeMode mode) {
+        this.mode = mode;
+    }
+
+    public PurgeMode getMode() {
+        return this.mode;
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    public long getDeletedEvents() {
+        return this.deletedEvents.get();
+    }
+
+    public Instant getStartTime() {
+        return this.startTime;
+    }
+
+    public Instant getEndTime() {
+        return this.endTime;
+    }
+
+    public String getError() {
+        return this.error;
+    }
+
+    public boolean isRunning() {
+        return this.state == State.RUNNING;
+    }
+
+    public void addDeletedEvents(long count) {
+        this.deletedEvents.addAndGet(count);
+    }
+
+    public void complete() {
+        this.endTime = Instant.now();
+        this.state = State.COMPLETED;
+    }
+
+    public void fail(Exception e) {
+        this.error = e.getMessage();
+        this.endTime = Instant.now();
+        this.state = State.FAILED;
+    }
+
+    @Override
+    public String toString() {
+        Instant end = this.endTime == null ? Instant.now() : this.endTime;
+        String str = "Purge job (" + this.mode + ") " + this.state + ": " + getDeletedEvents()
+                + " events deleted in " + Duration.between(this.startTime, end).getSeconds() + "s";
+        if (this.error != null) {
+            str += ". Error: " + this.error;
+        }
+        return str;
+    }
+
+}
@@ -0,0 +1,300 @@
+package application.events.store;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+import org.apache.commons.collections4.map.LRUMap;
+
+import io.cloudevents.CloudEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * A cloud event store that caches the pages, query results and event count read from a delegate store, so repeated
+ * reads of a store that has not changed do not reach it.
+ * <p>
+ * The cache holds up to a maximum number of entries, evicting the least recently used, and each entry expires after
+ * the time to live. Adding or removing events through this store clears the cache. A read that was already in flight
+ * when the cache was cleared does not store its result, as it may not include the change. Changes made by other
+ * instances of the application are only seen once the entries expire, or once {@link #invalidate()} is called.
+ * <p>
+ * Hits, misses and evictions are published with the Micrometer cache meter names, tagged with
+ * <code>cache=eventstore</code>, along with the hit ratio.
+ */
+public class CachingCloudEventStore implements CloudEventStore {
+
+    private static final String COUNT_KEY = "count";
+
+    private final CloudEventStore delegate;
+    private final long ttlNanos;
+    private final LRUMap<String, CachedValue> cache;
+
+    /* Guarded by the cache; incremented each time the cache is cleared */
+    private long generation;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public CachingCloudEventStore(CloudEventStore delegate, int maxEntries, long ttlMillis, MeterRegistry registry) {
+        if (maxEntries < 1 || ttlMillis < 1) {
+            throw new IllegalArgumentException("Invalid event store cache configuration: maxEntries=" + maxEntries
+                    + ", ttlMillis=" + ttlMillis);
+        }
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+
+        Tags tags = Tags.of("cache", "eventstore");
+        this.hits = Counter.builder("cache.gets").tags(tags).tag("result", "hit")
+                .description("The number of times cached event store reads returned a cached value")
+                .register(registry);
+        this.misses = Counter.builder("cache.gets").tags(tags).tag("result", "miss")
+                .description("The number of times cached event store reads went to the event store")
+                .register(registry);
+        this.evictions = Counter.builder("cache.evictions").tags(tags)
+                .description("The number of cached event store reads evicted to make room for others")
+                .register(registry);
+        this.cache = new LRUMap<String, CachedValue>(maxEntries) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeLRU(LinkEntry<String, CachedValue> entry) {
+                CachingCloudEventStore.this.evictions.increment();
+                return true;
+            }
+
+        };
+        Gauge.builder("cache.size", this, CachingCloudEventStore::size).tags(tags)
+                .description("The number of cached event store reads").register(registry);
+        Gauge.builder("cache.hit.ratio", this, CachingCloudEventStore::getHitRatio).tags(tags)
+                .description("The fraction of event store reads returned from the cache").register(registry);
+    }
+
+    @Override
+    public EventPage getEvents(int limit, String bookmark, boolean descending) throws Exception {
+        String key = pageKey(limit, bookmark, descending);
+        CachedValue cached = get(key);
+        if (cached != null) {
+            return (EventPage) cached.value;
+        }
+        long generation = currentGeneration();
+        EventPage page = this.delegate.getEvents(limit, bookmark, descending);
+        put(key, page, generation);
+        return page;
+    }
+
+    @Override
+    public EventPage queryEvents(EventQuery query) throws Exception {
+        String key = queryKey(query);
+        CachedValue cached = get(key);
+        if (cached != null) {
+            return (EventPage) cached.value;
+        }
+        long generation = currentGeneration();
+        EventPage page = this.delegate.queryEvents(query);
+        put(key, page, generation);
+        return page;
+    }
+
+    @Override
+    public long getNumEvents() throws Exception {
+        CachedValue cached = get(COUNT_KEY);
+        if (cached != null) {
+            return (Long) cached.value;
+        }
+        long generation = currentGeneration();
+        long count = this.delegate.getNumEvents();
+        if (count >= 0) {
+            put(COUNT_KEY, count, generation);
+        }
+        return count;
+    }
+
+    @Override
+    public CompletableFuture<EventPage> getEventsAsync(int limit, String bookmark, boolean descending) {
+        String key = pageKey(limit, bookmark, descending);
+        CachedValue cached = get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture((EventPage) cached.value);
+        }
+        long generation = currentGeneration();
+        return this.delegate.getEventsAsync(limit, bookmark, descending).thenApply(page -> {
+            put(key, page, generation);
+            return page;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> getNumEventsAsync() {
+        CachedValue cached = get(COUNT_KEY);
+        if (cached != null) {
+            return CompletableFuture.completedFuture((Long) cached.value);
+        }
+        long generation = currentGeneration();
+        return this.delegate.getNumEventsAsync().thenApply(count -> {
+            if (count >= 0) {
+                put(COUNT_KEY, count, generation);
+            }
+            return count;
+        });
+    }
+
+    @Override
+    public void addEvent(CloudEvent event) throws Exception {
+        try {
+            this.delegate.addEvent(event);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void addEvents(List<CloudEvent> events) throws Exception {
+        try {
+            this.delegate.addEvents(events);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> addEventAsync(CloudEvent event) {
+        return this.delegate.addEventAsync(event).whenComplete((ignored, error) -> invalidate());
+    }
+
+    @Override
+    public CompletableFuture<Void> addEventsAsync(List<CloudEvent> events) {
+        return this.delegate.addEventsAsync(events).whenComplete((ignored, error) -> invalidate());
+    }
+
+    /**
+     * Clears the cache as each part of the store is purged, so readers see the events disappear.
+     */
+    @Override
+    public void removeAllEvents(PurgeMode mode, LongConsumer progress) throws Exception {
+        try {
+            this.delegate.removeAllEvents(mode, deleted -> {
+                invalidate();
+                progress.accept(deleted);
+            });
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void removeExpiredEvents(RetentionPolicy policy, LongConsumer progress) throws Exception {
+        try {
+            this.delegate.removeExpiredEvents(policy, deleted -> {
+                invalidate();
+                progress.accept(deleted);
+            });
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public boolean supportsRetention(RetentionPolicy policy) {
+        return this.delegate.supportsRetention(policy);
+    }
+
+    @Override
+    public void ping() {
+        this.delegate.ping();
+    }
+
+    @Override
+    public void shutdown() {
+        this.delegate.shutdown();
+    }
+
+    /**
+     * Clears the cache, e.g. because the store was changed by another instance of the application.
+     */
+    public void invalidate() {
+        synchronized (this.cache) {
+            this.cache.clear();
+            this.generation++;
+        }
+    }
+
+    /**
+     * @return the fraction of reads returned from the cache, or 0 before the first read
+     */
+    public double getHitRatio() {
+        double hits = this.hits.count();
+        double total = hits + this.misses.count();
+        return total > 0 ? hits / total : 0;
+    }
+
+    private static String pageKey(int limit, String bookmark, boolean descending) {
+        return (descending ? "desc:" : "asc:") + limit + ":" + (bookmark != null ? bookmark : "");
+    }
+
+    /*
+     * Attribute values can hold any character, so each value is length-prefixed rather than delimited.
+     */
+    private static String queryKey(EventQuery query) {
+        StringBuilder key = new StringBuilder("query:");
+        for (Object value : new Object[] { query.getType(), query.getSource(), query.getSubject(), query.getFrom(),
+                query.getTo(), query.getBookmark() }) {
+            String string = value != null ? value.toString() : "";
+            key.append(value != null ? string.length() : -1).append(':').append(string);
+        }
+        return key.append(pageKey(query.getLimit(), null, query.isDescending())).toString();
+    }
+
+    private int size() {
+        synchronized (this.cache) {
+            return this.cache.size();
+        }
+    }
+
+    private CachedValue get(String key) {
+        synchronized (this.cache) {
+            CachedValue entry = this.cache.get(key);
+            if (entry != null && System.nanoTime() - entry.expires < 0) {
+                this.hits.increment();
+                return entry;
+            }
+            if (entry != null) {
+                this.cache.remove(key);
+            }
+        }
+        this.misses.increment();
+        return null;
+    }
+
+    private long currentGeneration() {
+        synchronized (this.cache) {
+            return this.generation;
+        }
+    }
+
+    private void put(String key, Object value, long generation) {
+        synchronized (this.cache) {
+            if (this.generation == generation) {
+                this.cache.put(key, new CachedValue(value, System.nanoTime() + this.ttlNanos));
+            }
+        }
+    }
+
+    private static final class CachedValue {
+
+        private final Object value;
+        private final long expires;
+
+        private CachedValue(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+    }
+
+}
@@ -1,6 +1,8 @@
 package application.events.store;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
 
 import io.cloudevents.CloudEvent;
 
@@ -11,13 +13,101 @@ public interface CloudEventStore {
 
     public static final int DEFAULT_MAX_EVENTS = 100;
 
-    List<CloudEvent<?, ?>> getEvents() throws Exception;
+    /**
+     * Reads a window of events.
+     *
+     * @param limit      The maximum number of events to return.
+     * @param bookmark   The bookmark of a previously returned page to continue from, or null to start from the
+     *                   beginning.
+     * @param descending True to read the events in descending order.
+     */
+    EventPage getEvents(int limit, String bookmark, boolean descending) throws Exception;
+
+    /**
+     * Reads a window of the events a query selects.
+     * <p>
+     * By default every event is read with {@link #getEvents(int, String, boolean)} and filtered in-process, and events
+     * are returned in the order the store holds them. Backends that can index the event attributes override this so
+     * that only matching events are read.
+     */
+    default EventPage queryEvents(EventQuery query) throws Exception {
+        return EventScan.scan(this, query);
+    }
 
     long getNumEvents() throws Exception;
 
-    void addEvent(CloudEvent<?, ?> event) throws Exception;
+    void addEvent(CloudEvent event) throws Exception;
+
+    /**
+     * Stores a batch of events. Backends that support bulk writes should override this to store the whole batch in a
+     * single round-trip.
+     */
+    default void addEvents(List<CloudEvent> events) throws Exception {
+        for (CloudEvent event : events) {
+            addEvent(event);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #getEvents(int, String, boolean)}. Backends with non-blocking I/O override the
+     * asynchronous methods so that no thread waits for the store; by default they call the blocking method on the
+     * calling thread.
+     */
+    default CompletableFuture<EventPage> getEventsAsync(int limit, String bookmark, boolean descending) {
+        return Futures.call(() -> getEvents(limit, bookmark, descending));
+    }
+
+    default CompletableFuture<Long> getNumEventsAsync() {
+        return Futures.call(this::getNumEvents);
+    }
+
+    default CompletableFuture<Void> addEventAsync(CloudEvent event) {
+        return Futures.call(() -> {
+            addEvent(event);
+            return null;
+        });
+    }
+
+    default CompletableFuture<Void> addEventsAsync(List<CloudEvent> events) {
+        return Futures.call(() -> {
+            addEvents(events);
+            return null;
+        });
+    }
+
+    /**
+     * Removes all events using {@link PurgeMode#BULK_DELETE}.
+     */
+    default void removeAllEvents() throws Exception {
+        removeAllEvents(PurgeMode.BULK_DELETE, deleted -> {
+        });
+    }
+
+    /**
+     * Removes all events.
+     *
+     * @param mode     How to remove the events.
+     * @param progress Called with the number of events removed each time a part of the store has been purged.
+     */
+    void removeAllEvents(PurgeMode mode, LongConsumer progress) throws Exception;
+
+    /**
+     * Removes the events the retention policy does not keep, oldest first, in pages at no more than the policy's rate.
+     * By default retention is not supported.
+     *
+     * @param progress Called with the number of events removed each time a page has been removed.
+     * @throws UnsupportedOperationException if the store does not support the policy
+     */
+    default void removeExpiredEvents(RetentionPolicy policy, LongConsumer progress) throws Exception {
+        throw new UnsupportedOperationException("Retention is not supported by " + getClass().getSimpleName());
+    }
 
-    void removeAllEvents() throws Exception;
+    /**
+     * @return true if {@link #removeExpiredEvents(RetentionPolicy, LongConsumer)} applies every limit of the policy
+     */
+    default boolean supportsRetention(RetentionPolicy policy) {
+        return false;
+    }
 
     void ping();
 
@@ -1,21 +1,111 @@
 package application.events.store;
 
-import application.events.store.cloudant.CloudEventStoreCloudant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.PropertyResolver;
 import org.springframework.stereotype.Component;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Creates the event store selected by the <code>eventstore.backend</code> property from the registered
+ * {@link CloudEventStoreProvider} beans. The <code>tiered</code> backend combines two of the other backends into a
+ * {@link TieredCloudEventStore}. Reads can be cached by putting a {@link CachingCloudEventStore} in front of the store.
+ */
 @Component
 public class CloudEventStoreFactory {
 
-    private final CloudEventStoreCloudant cloudantStore;
+    /**
+     * The property that selects the event store backend.
+     */
+    public static final String BACKEND_PROPERTY = "eventstore.backend";
+    public static final String TIERED_HOT_PROPERTY = "eventstore.tiered.hot";
+    public static final String TIERED_COLD_PROPERTY = "eventstore.tiered.cold";
+
+    public static final String BACKEND_CLOUDANT = "cloudant";
+    public static final String BACKEND_MEMORY = "memory";
+    public static final String BACKEND_LOG = "log";
+    public static final String BACKEND_TIERED = "tiered";
+
+    private final CloudEventStore defaultStore;
 
-    public CloudEventStoreFactory(CloudEventStoreCloudant cloudantStore) {
-        this.cloudantStore = cloudantStore;
+    public CloudEventStoreFactory(List<CloudEventStoreProvider> providers,
+            @Value("${" + BACKEND_PROPERTY + ":" + BACKEND_CLOUDANT + "}") String backend,
+            @Value("${" + TIERED_HOT_PROPERTY + ":" + BACKEND_MEMORY + "}") String hotBackend,
+            @Value("${" + TIERED_COLD_PROPERTY + ":" + BACKEND_CLOUDANT + "}") String coldBackend,
+            @Value("${eventstore.tiered.migration.max-batch-size:100}") int migrationBatchSize,
+            @Value("${eventstore.tiered.migration.linger-ms:100}") long migrationLingerMillis,
+            @Value("${eventstore.tiered.migration.queue-capacity:10000}") int migrationQueueCapacity,
+            @Value("${eventstore.cache.enabled:false}") boolean cacheEnabled,
+            @Value("${eventstore.cache.max-entries:256}") int cacheMaxEntries,
+            @Value("${eventstore.cache.ttl-ms:5000}") long cacheTtlMillis, MeterRegistry meterRegistry)
+            throws Exception {
+        Map<String, CloudEventStoreProvider> registry = new TreeMap<>();
+        for (CloudEventStoreProvider provider : providers) {
+            registry.put(normalize(provider.getName()), provider);
+        }
+
+        CloudEventStore store;
+        if (BACKEND_TIERED.equals(normalize(backend))) {
+            if (normalize(hotBackend).equals(normalize(coldBackend))) {
+                throw new IllegalArgumentException("The hot and cold event store tiers must be different backends: "
+                        + hotBackend);
+            }
+            CloudEventStore hot = create(registry, hotBackend);
+            CloudEventStore cold = create(registry, coldBackend);
+            store = new TieredCloudEventStore(hot, cold, migrationBatchSize, migrationLingerMillis,
+                    migrationQueueCapacity);
+        } else {
+            store = create(registry, backend);
+        }
+        this.defaultStore = cacheEnabled
+                ? new CachingCloudEventStore(store, cacheMaxEntries, cacheTtlMillis, meterRegistry)
+                : store;
     }
 
     public CloudEventStore getDefault() {
-        // additional methods/configuration can be implemented to support more database backends
-        return this.cloudantStore;
+        return this.defaultStore;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.defaultStore.shutdown();
+    }
+
+    /**
+     * Returns the backends the properties select: the backend itself, or both tiers of the tiered backend.
+     */
+    public static Set<String> getSelectedBackends(PropertyResolver properties) {
+        String backend = normalize(properties.getProperty(BACKEND_PROPERTY, BACKEND_CLOUDANT));
+        if (!BACKEND_TIERED.equals(backend)) {
+            return Collections.singleton(backend);
+        }
+        return new HashSet<>(Arrays.asList(normalize(properties.getProperty(TIERED_HOT_PROPERTY, BACKEND_MEMORY)),
+                normalize(properties.getProperty(TIERED_COLD_PROPERTY, BACKEND_CLOUDANT))));
+    }
+
+    private static CloudEventStore create(Map<String, CloudEventStoreProvider> registry, String backend)
+            throws Exception {
+        CloudEventStoreProvider provider = registry.get(normalize(backend));
+        if (provider == null) {
+            throw new IllegalArgumentException("Unknown event store backend: " + backend + " (available: "
+                    + registry.keySet() + ")");
+        }
+        return provider.create();
+    }
+
+    private static String normalize(String backend) {
+        return backend.trim().toLowerCase(Locale.ROOT);
     }
 
 }
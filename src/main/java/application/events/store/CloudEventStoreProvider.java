@@ -0,0 +1,20 @@
+package application.events.store;
+
+/**
+ * Creates the cloud event store of one backend. Every provider bean is registered with
+ * {@link CloudEventStoreFactory}, which asks the provider named by the <code>eventstore.backend</code> property, or
+ * the providers of the two tiers of a tiered store, for their store.
+ */
+public interface CloudEventStoreProvider {
+
+    /**
+     * @return The backend name that selects this provider.
+     */
+    String getName();
+
+    /**
+     * Creates the store. Only called for the selected backends, once each; the factory shuts the store down.
+     */
+    CloudEventStore create() throws Exception;
+
+}
@@ -0,0 +1,27 @@
+package application.events.store;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.context.annotation.Conditional;
+
+/**
+ * Only registers the annotated bean when the named event store backend is selected, either as the backend or as a
+ * tier of the tiered backend. Used for beans that cannot be created without the backend's configuration, such as
+ * credentials.
+ */
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Conditional(OnBackendCondition.class)
+public @interface ConditionalOnBackend {
+
+    /**
+     * @return The backend name.
+     */
+    String value();
+
+}
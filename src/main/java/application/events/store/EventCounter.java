@@ -0,0 +1,48 @@
+package application.events.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process count of the events in a store. The count is adjusted as events are added and removed, and
+ * periodically replaced with the authoritative count from the store to correct any drift, e.g. from writes made by
+ * other instances of the application.
+ */
+public class EventCounter {
+
+    /**
+     * The value returned by {@link #get()} until the counter has been set from the store.
+     */
+    public static final long UNKNOWN = -1;
+
+    private final AtomicLong count = new AtomicLong(UNKNOWN);
+
+    /**
+     * @return the current count, or {@value #UNKNOWN} if it has not been set from the store yet
+     */
+    public long get() {
+        return this.count.get();
+    }
+
+    /**
+     * Adjusts the count by the given number of added (positive) or removed (negative) events. Has no effect until the
+     * counter has been set from the store.
+     */
+    public void add(long delta) {
+        this.count.getAndUpdate(current -> current == UNKNOWN ? UNKNOWN : Math.max(0, current + delta));
+    }
+
+    /**
+     * Replaces the count with the authoritative count from the store.
+     */
+    public void set(long count) {
+        this.count.set(count);
+    }
+
+    /**
+     * Forgets the count, so the next read goes back to the store.
+     */
+    public void invalidate() {
+        this.count.set(UNKNOWN);
+    }
+
+}
@@ -0,0 +1,44 @@
+package application.events.store;
+
+import java.util.Collections;
+import java.util.List;
+
+import io.cloudevents.CloudEvent;
+
+/**
+ * A window of events read from a cloud event store, along with the bookmark to pass back to the store to read the
+ * next window.
+ */
+public class EventPage {
+
+    private static final EventPage EMPTY = new EventPage(Collections.emptyList(), null);
+
+    private final List<CloudEvent> events;
+    private final String bookmark;
+
+    /**
+     * @param events   The events in this page.
+     * @param bookmark The opaque continuation token for the next page, or null if this is the last page.
+     */
+    public EventPage(List<CloudEvent> events, String bookmark) {
+        this.events = events;
+        this.bookmark = bookmark;
+    }
+
+    public static EventPage empty() {
+        return EMPTY;
+    }
+
+    public List<CloudEvent> getEvents() {
+        return this.events;
+    }
+
+    public String getBookmark() {
+        return this.bookmark;
+    }
+
+    public boolean hasMore() {
+        return this.bookmark != null;
+    }
+
+}
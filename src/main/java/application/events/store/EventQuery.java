@@ -0,0 +1,174 @@
+package application.events.store;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+
+import io.cloudevents.CloudEvent;
+
+/**
+ * Selects the events with the given <code>type</code>, <code>source</code> and <code>subject</code> attributes whose
+ * <code>time</code> is within a window. Attributes that are not set match any value, and the window is from
+ * <code>from</code>, inclusive, to <code>to</code>, exclusive, either of which can be open.
+ */
+public class EventQuery {
+
+    private final String type;
+    private final String source;
+    private final String subject;
+    private final Instant from;
+    private final Instant to;
+    private final int limit;
+    private final String bookmark;
+    private final boolean descending;
+
+    private EventQuery(Builder builder) {
+        this.type = builder.type;
+        this.source = builder.source;
+        this.subject = builder.subject;
+        this.from = builder.from;
+        this.to = builder.to;
+        this.limit = builder.limit;
+        this.bookmark = builder.bookmark;
+        this.descending = builder.descending;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String getType() {
+        return this.type;
+    }
+
+    public String getSource() {
+        return this.source;
+    }
+
+    public String getSubject() {
+        return this.subject;
+    }
+
+    public Instant getFrom() {
+        return this.from;
+    }
+
+    public Instant getTo() {
+        return this.to;
+    }
+
+    /**
+     * @return the maximum number of events to return
+     */
+    public int getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * @return the bookmark of a previously returned page of this query to continue from, or null to start from the
+     *         beginning
+     */
+    public String getBookmark() {
+        return this.bookmark;
+    }
+
+    public boolean isDescending() {
+        return this.descending;
+    }
+
+    /**
+     * @return true if the event has the attributes and time the query selects. Events without a time only match a
+     *         query with an open window.
+     */
+    public boolean matches(CloudEvent event) {
+        if ((this.type != null && !this.type.equals(event.getType()))
+                || (this.source != null && !this.source.equals(event.getSource().toString()))
+                || (this.subject != null && !this.subject.equals(event.getSubject()))) {
+            return false;
+        }
+        if (this.from == null && this.to == null) {
+            return true;
+        }
+        OffsetDateTime time = event.getTime();
+        if (time == null) {
+            return false;
+        }
+        Instant instant = time.toInstant();
+        return (this.from == null || !instant.isBefore(this.from)) && (this.to == null || instant.isBefore(this.to));
+    }
+
+    @Override
+    public String toString() {
+        return "EventQuery [type=" + this.type + ", source=" + this.source + ", subject=" + this.subject + ", from="
+                + this.from + ", to=" + this.to + ", limit=" + this.limit + ", descending=" + this.descending + "]";
+    }
+
+    public static class Builder {
+
+        private String type;
+        private String source;
+        private String subject;
+        private Instant from;
+        private Instant to;
+        private int limit = CloudEventStore.DEFAULT_MAX_EVENTS;
+        private String bookmark;
+        private boolean descending;
+
+        private Builder() {
+        }
+
+        public Builder type(String type) {
+            this.type = type;
+            return this;
+        }
+
+        public Builder source(String source) {
+            this.source = source;
+            return this;
+        }
+
+        public Builder subject(String subject) {
+            this.subject = subject;
+            return this;
+        }
+
+        public Builder from(Instant from) {
+            this.from = from;
+            return this;
+        }
+
+        public Builder to(Instant to) {
+            this.to = to;
+            return this;
+        }
+
+        public Builder limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        public Builder bookmark(String bookmark) {
+            this.bookmark = bookmark;
+            return this;
+        }
+
+        public Builder descending(boolean descending) {
+            this.descending = descending;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the limit is not positive or the window ends before it starts
+         */
+        public EventQuery build() {
+            if (this.limit < 1) {
+                throw new IllegalArgumentException("Invalid query limit: " + this.limit);
+            }
+            if (this.from != null && this.to != null && this.to.isBefore(this.from)) {
+                throw new IllegalArgumentException("Invalid query window: " + this.from + " to " + this.to);
+            }
+            return new EventQuery(this);
+        }
+
+    }
+
+}
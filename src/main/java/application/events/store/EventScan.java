@@ -0,0 +1,73 @@
+package application.events.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import io.cloudevents.CloudEvent;
+
+/**
+ * Answers queries by reading every event in pages and filtering them in-process, for backends that cannot filter
+ * events while reading them.
+ * <p>
+ * The bookmark of a page is the bookmark of the store page its next event is in, plus the position of that event in
+ * the store page, so it relies on a store bookmark reading the same page again.
+ */
+final class EventScan {
+
+    static final int SCAN_PAGE_SIZE = 1000;
+
+    private static final char SEPARATOR = ':';
+
+    private EventScan() {
+    }
+
+    static EventPage scan(CloudEventStore store, EventQuery query) throws Exception {
+        String pageBookmark = null;
+        int skip = 0;
+        if (query.getBookmark() != null) {
+            String bookmark = decode(query.getBookmark());
+            int separator = bookmark.indexOf(SEPARATOR);
+            try {
+                skip = Integer.parseInt(bookmark.substring(0, Math.max(separator, 0)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid bookmark: " + query.getBookmark(), e);
+            }
+            pageBookmark = separator + 1 < bookmark.length() ? bookmark.substring(separator + 1) : null;
+        }
+
+        List<CloudEvent> matches = new ArrayList<>(Math.min(query.getLimit(), SCAN_PAGE_SIZE));
+        while (true) {
+            EventPage page = store.getEvents(SCAN_PAGE_SIZE, pageBookmark, query.isDescending());
+            List<CloudEvent> events = page.getEvents();
+            for (int i = skip; i < events.size(); i++) {
+                if (query.matches(events.get(i))) {
+                    if (matches.size() == query.getLimit()) {
+                        return new EventPage(matches, encode(i, pageBookmark));
+                    }
+                    matches.add(events.get(i));
+                }
+            }
+            if (!page.hasMore()) {
+                return new EventPage(matches, null);
+            }
+            pageBookmark = page.getBookmark();
+            skip = 0;
+        }
+    }
+
+    private static String encode(int skip, String pageBookmark) {
+        String bookmark = skip + String.valueOf(SEPARATOR) + (pageBookmark != null ? pageBookmark : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bookmark.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String bookmark) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(bookmark), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid bookmark: " + bookmark, e);
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+package application.events.store;
+
+/**
+ * Thrown when an event store cannot accept more events until buffered writes have drained.
+ */
+public class EventStoreFullException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public EventStoreFullException(String message) {
+        super(message);
+    }
+
+}
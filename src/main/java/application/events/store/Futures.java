@@ -0,0 +1,40 @@
+package application.events.store;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Helpers for the asynchronous event store methods.
+ */
+public final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Calls the callable on the calling thread.
+     *
+     * @return a future completed with the result, or with the exception the callable threw
+     */
+    public static <T> CompletableFuture<T> call(Callable<T> callable) {
+        try {
+            return CompletableFuture.completedFuture(callable.call());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * @return the exception a future failed with, without the wrappers added by composing futures
+     */
+    public static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+}
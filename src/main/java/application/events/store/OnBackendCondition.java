@@ -0,0 +1,26 @@
+package application.events.store;
+
+import java.util.Map;
+
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+/**
+ * Matches when the backend named by {@link ConditionalOnBackend} is one of
+ * {@link CloudEventStoreFactory#getSelectedBackends(org.springframework.core.env.PropertyResolver)}.
+ */
+class OnBackendCondition extends SpringBootCondition {
+
+    @Override
+    public ConditionOutcome getMatchOutcome(ConditionContext context, AnnotatedTypeMetadata metadata) {
+        Map<String, Object> attributes = metadata.getAnnotationAttributes(ConditionalOnBackend.class.getName());
+        String backend = (String) attributes.get("value");
+        if (CloudEventStoreFactory.getSelectedBackends(context.getEnvironment()).contains(backend)) {
+            return ConditionOutcome.match("Event store backend " + backend + " is selected");
+        }
+        return ConditionOutcome.noMatch("Event store backend " + backend + " is not selected");
+    }
+
+}
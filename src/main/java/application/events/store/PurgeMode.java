@@ -0,0 +1,18 @@
+package application.events.store;
+
+/**
+ * How a cloud event store removes all of its events.
+ */
+public enum PurgeMode {
+
+    /**
+     * Delete the events in pages of bulk requests. Slower, but leaves the database and its indexes in place.
+     */
+    BULK_DELETE,
+
+    /**
+     * Drop and recreate the database. Takes constant time regardless of the number of events.
+     */
+    TRUNCATE
+
+}
@@ -0,0 +1,80 @@
+package application.events.store;
+
+import java.time.Duration;
+
+/**
+ * Limits how many events a store keeps: events older than the maximum age are removed, and then the oldest events
+ * until there are at most the maximum number of events taking at most the maximum number of bytes. A limit of zero is
+ * no limit.
+ */
+public class RetentionPolicy {
+
+    private final Duration maxAge;
+    private final long maxEvents;
+    private final long maxBytes;
+    private final int maxDeletesPerSecond;
+
+    /**
+     * @param maxAge              The age of the oldest events to keep, or zero to keep events of any age.
+     * @param maxEvents           The number of events to keep, or zero for any number.
+     * @param maxBytes            The size of the events to keep, as the store measures it, or zero for any size.
+     * @param maxDeletesPerSecond The rate events are removed at, or zero to remove them as fast as the store allows.
+     * @throws IllegalArgumentException if a limit is negative
+     */
+    public RetentionPolicy(Duration maxAge, long maxEvents, long maxBytes, int maxDeletesPerSecond) {
+        if (maxAge.isNegative() || maxEvents < 0 || maxBytes < 0 || maxDeletesPerSecond < 0) {
+            throw new IllegalArgumentException("Invalid retention policy: " + maxAge + ", " + maxEvents + " events, "
+                    + maxBytes + " bytes, " + maxDeletesPerSecond + " deletes/s");
+        }
+        this.maxAge = maxAge;
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+        this.maxDeletesPerSecond = maxDeletesPerSecond;
+    }
+
+    public Duration getMaxAge() {
+        return this.maxAge;
+    }
+
+    public long getMaxEvents() {
+        return this.maxEvents;
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    public int getMaxDeletesPerSecond() {
+        return this.maxDeletesPerSecond;
+    }
+
+    /**
+     * @return true if the policy limits the events kept at all
+     */
+    public boolean isLimited() {
+        return !this.maxAge.isZero() || this.maxEvents > 0 || this.maxBytes > 0;
+    }
+
+    /**
+     * Waits as long as it takes for the events deleted since the start to be deleted at the maximum rate.
+     *
+     * @param startNanos The {@link System#nanoTime()} deletion started at.
+     * @param deleted    The number of events deleted since the start.
+     */
+    public void pace(long startNanos, long deleted) throws InterruptedException {
+        if (this.maxDeletesPerSecond > 0) {
+            long dueNanos = startNanos + deleted * 1_000_000_000L / this.maxDeletesPerSecond;
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RetentionPolicy [maxAge=" + this.maxAge + ", maxEvents=" + this.maxEvents + ", maxBytes="
+                + this.maxBytes + ", maxDeletesPerSecond=" + this.maxDeletesPerSecond + "]";
+    }
+
+}
@@ -0,0 +1,232 @@
+package application.events.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import application.events.store.WriteBehindCloudEventStore.Durability;
+import io.cloudevents.CloudEvent;
+
+/**
+ * A cloud event store that keeps recent events in a fast local hot tier and migrates every event asynchronously to a
+ * cold tier, usually Cloudant, which keeps them after the hot tier has evicted them.
+ * <p>
+ * Room in the migration queue is reserved for a whole batch first, then the events are written to the hot tier, and
+ * only then queued for migration, so a request is acknowledged without waiting for the cold tier and an event the
+ * client was told failed is in neither tier. The migration queue is a {@link WriteBehindCloudEventStore}; when it has
+ * no room for a batch the batch is rejected with {@link EventStoreFullException}, and events still queued when the
+ * process dies are only in the hot tier.
+ * <p>
+ * While the hot tier holds every event, pages are read from the hot tier alone. Otherwise descending pages, which
+ * start with the most recent events, are read from the hot tier and then continue in the cold tier, and ascending
+ * pages are read from the cold tier and then continue in the hot tier. The cold tier is assumed to page events in the
+ * order they were migrated, as the memory store does and Cloudant with time-ordered ids does for events whose times
+ * increase. Events are migrated in the order they are added, so the newest cold events are the ones the hot tier also
+ * holds that have been migrated: cold pages are cut off by counting rather than by comparing events, ascending pages
+ * after the events the hot tier no longer holds and descending pages before them. Bookmarks of cold pages carry the
+ * number of cold events read so far. An event evicted from the hot tier while a client is paging can be returned
+ * twice or not at all. Queries are answered by the cold tier alone.
+ */
+public class TieredCloudEventStore implements CloudEventStore {
+
+    private static final char HOT = 'h';
+    private static final char HOT_ONLY = 'o';
+    private static final char COLD = 'c';
+
+    private static final char POSITION_SEPARATOR = ':';
+
+    private static final int SKIP_PAGE_SIZE = 1000;
+
+    private final CloudEventStore hot;
+    private final CloudEventStore cold;
+    private final WriteBehindCloudEventStore migration;
+
+    /**
+     * @param migrationBatchSize     The maximum number of events written to the cold tier at once.
+     * @param migrationLingerMillis  How long the oldest queued event waits for a batch to fill.
+     * @param migrationQueueCapacity The number of events that can wait for migration.
+     */
+    public TieredCloudEventStore(CloudEventStore hot, CloudEventStore cold, int migrationBatchSize,
+            long migrationLingerMillis, int migrationQueueCapacity) {
+        this.hot = hot;
+        this.cold = cold;
+        this.migration = new WriteBehindCloudEventStore(cold, migrationBatchSize, migrationLingerMillis,
+                migrationQueueCapacity, Durability.ENQUEUED);
+    }
+
+    @Override
+    public EventPage getEvents(int limit, String bookmark, boolean descending) throws Exception {
+        char tier;
+        String tierBookmark = null;
+        /* The number of cold events read, including those skipped */
+        long position = 0;
+        if (bookmark == null) {
+            tier = this.hot.getNumEvents() >= getNumEvents() ? HOT_ONLY : descending ? HOT : COLD;
+        } else if (!bookmark.isEmpty() && (bookmark.charAt(0) == HOT || bookmark.charAt(0) == HOT_ONLY)) {
+            tier = bookmark.charAt(0);
+            tierBookmark = bookmark.length() > 1 ? bookmark.substring(1) : null;
+        } else if (!bookmark.isEmpty() && bookmark.charAt(0) == COLD) {
+            tier = COLD;
+            int separator = bookmark.indexOf(POSITION_SEPARATOR);
+            try {
+                position = Long.parseLong(bookmark.substring(1, Math.max(separator, 1)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid bookmark: " + bookmark, e);
+            }
+            if (position < 0) {
+                throw new IllegalArgumentException("Invalid bookmark: " + bookmark);
+            }
+            tierBookmark = separator + 1 < bookmark.length() ? bookmark.substring(separator + 1) : null;
+        } else {
+            throw new IllegalArgumentException("Invalid bookmark: " + bookmark);
+        }
+
+        List<CloudEvent> events = new ArrayList<>(limit);
+        long overlap = -1;
+        long end = Long.MAX_VALUE;
+        boolean more = true;
+        while (more && events.size() < limit) {
+            if (tier == COLD) {
+                if (overlap < 0) {
+                    // The migrated events the hot tier still holds are the newest in the cold tier
+                    overlap = Math.max(this.hot.getNumEvents() - this.migration.getPendingEvents(), 0);
+                    long cold = this.cold.getNumEvents();
+                    end = descending || cold < 0 ? Long.MAX_VALUE : cold - overlap;
+                }
+                long skip = descending ? Math.max(overlap - position, 0) : 0;
+                EventPage page = null;
+                if (position < end) {
+                    int size = skip > 0 ? (int) Math.min(skip, SKIP_PAGE_SIZE)
+                            : (int) Math.min(limit - events.size(), end - position);
+                    page = this.cold.getEvents(size, tierBookmark, descending);
+                    if (skip == 0) {
+                        events.addAll(page.getEvents());
+                    }
+                    position += page.getEvents().size();
+                    tierBookmark = page.getBookmark();
+                }
+                if (page == null || !page.hasMore() || position >= end) {
+                    // Ascending pages continue with the recent events
+                    tier = HOT;
+                    tierBookmark = null;
+                    more = !descending;
+                }
+            } else {
+                EventPage page = this.hot.getEvents(limit - events.size(), tierBookmark, descending);
+                events.addAll(page.getEvents());
+                tierBookmark = page.getBookmark();
+                if (!page.hasMore()) {
+                    // Descending pages continue with the events evicted from the hot tier
+                    more = tier == HOT && descending;
+                    tier = COLD;
+                }
+            }
+        }
+        if (!more) {
+            return new EventPage(events, null);
+        }
+        String next = tierBookmark != null ? tierBookmark : "";
+        return new EventPage(events, tier == COLD ? COLD + Long.toString(position) + POSITION_SEPARATOR + next
+                : tier + next);
+    }
+
+    /**
+     * Queries the cold tier, which holds every event once it has been migrated, so events still waiting for migration
+     * are not returned yet.
+     */
+    @Override
+    public EventPage queryEvents(EventQuery query) throws Exception {
+        return this.cold.queryEvents(query);
+    }
+
+    /**
+     * @return the number of events in the cold tier and waiting to be migrated to it, or the number of events in the
+     *         hot tier if the cold tier cannot be counted
+     */
+    @Override
+    public long getNumEvents() throws Exception {
+        long cold = this.cold.getNumEvents();
+        return Math.max(this.hot.getNumEvents(), cold < 0 ? cold : cold + this.migration.getPendingEvents());
+    }
+
+    @Override
+    public void addEvent(CloudEvent event) throws Exception {
+        addEvents(Collections.singletonList(event));
+    }
+
+    /**
+     * Reserves room for the whole batch in the migration queue, writes it to the hot tier and then queues it, so a
+     * batch the hot tier or the queue rejects is not migrated at all.
+     */
+    @Override
+    public void addEvents(List<CloudEvent> events) throws Exception {
+        this.migration.reserve(events.size());
+        boolean written = false;
+        try {
+            this.hot.addEvents(events);
+            written = true;
+        } finally {
+            if (!written) {
+                this.migration.release(events.size());
+            }
+        }
+        this.migration.addReserved(events);
+    }
+
+    /**
+     * Purges both tiers. Progress is reported for the cold tier, which holds every migrated event. Events still
+     * waiting for migration are written to the cold tier after the purge.
+     */
+    @Override
+    public void removeAllEvents(PurgeMode mode, LongConsumer progress) throws Exception {
+        this.hot.removeAllEvents(mode, deleted -> {
+        });
+        this.migration.removeAllEvents(mode, progress);
+    }
+
+    /**
+     * Applies the retention policy to the cold tier, and then to the hot tier if it supports the policy, so a hot tier
+     * that is not bounded by itself, such as the log, does not keep events the cold tier has removed. Only the events
+     * removed from the cold tier are reported, as those removed from the hot tier alone are still in the cold tier.
+     */
+    @Override
+    public void removeExpiredEvents(RetentionPolicy policy, LongConsumer progress) throws Exception {
+        this.migration.removeExpiredEvents(policy, progress);
+        if (this.hot.supportsRetention(policy)) {
+            this.hot.removeExpiredEvents(policy, deleted -> {
+            });
+        }
+    }
+
+    /**
+     * @return true if the cold tier supports the policy
+     */
+    @Override
+    public boolean supportsRetention(RetentionPolicy policy) {
+        return this.migration.supportsRetention(policy);
+    }
+
+    @Override
+    public void ping() {
+        this.hot.ping();
+        this.cold.ping();
+    }
+
+    /**
+     * Migrates the queued events before shutting down both tiers.
+     */
+    @Override
+    public void shutdown() {
+        this.migration.shutdown();
+        this.hot.shutdown();
+    }
+
+    /**
+     * @return the number of events waiting to be migrated to the cold tier
+     */
+    public int getPendingMigrations() {
+        return this.migration.getPendingEvents();
+    }
+
+}
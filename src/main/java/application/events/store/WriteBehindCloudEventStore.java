@@ -0,0 +1,322 @@
+package application.events.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.cloudevents.CloudEvent;
+
+/**
+ * A cloud event store that buffers incoming events and writes them to a delegate store in batches. A batch is flushed
+ * when it reaches the maximum batch size or when the oldest buffered event has waited for the linger time, whichever
+ * comes first.
+ * <p>
+ * Room in the buffer is taken before an event is buffered, and can be reserved for a whole batch with
+ * {@link #reserve(int)} before the caller commits to it.
+ */
+public class WriteBehindCloudEventStore implements CloudEventStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindCloudEventStore.class);
+
+    /**
+     * Controls when {@link #addEvent(CloudEvent)} returns to the caller.
+     */
+    public enum Durability {
+        /** Return as soon as the event is buffered. Buffered events are lost if the process dies. */
+        ENQUEUED,
+        /** Return once the batch containing the event has been written to the delegate store. */
+        FLUSHED
+    }
+
+    private final CloudEventStore delegate;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Durability durability;
+    private final BlockingQueue<PendingEvent> queue;
+    /* Room in the queue not yet taken or reserved, so offers to the queue always succeed */
+    private final Semaphore capacity;
+    private final Thread flusher;
+
+    private volatile boolean running = true;
+
+    public WriteBehindCloudEventStore(CloudEventStore delegate, int maxBatchSize, long lingerMillis,
+            int queueCapacity, Durability durability) {
+        if (maxBatchSize < 1 || queueCapacity < 1 || lingerMillis < 0) {
+            throw new IllegalArgumentException("Invalid write-behind configuration: maxBatchSize=" + maxBatchSize
+                    + ", lingerMillis=" + lingerMillis + ", queueCapacity=" + queueCapacity);
+        }
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.durability = durability;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.capacity = new Semaphore(queueCapacity);
+        this.flusher = new Thread(this::flushLoop, "event-store-write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public EventPage getEvents(int limit, String bookmark, boolean descending) throws Exception {
+        return this.delegate.getEvents(limit, bookmark, descending);
+    }
+
+    @Override
+    public EventPage queryEvents(EventQuery query) throws Exception {
+        return this.delegate.queryEvents(query);
+    }
+
+    @Override
+    public long getNumEvents() throws Exception {
+        return this.delegate.getNumEvents();
+    }
+
+    /**
+     * Buffers the event for the next batch.
+     *
+     * @throws EventStoreFullException if the buffer is full, so callers can shed load instead of queueing unbounded
+     */
+    @Override
+    public void addEvent(CloudEvent event) throws Exception {
+        await(addEventAsync(event));
+    }
+
+    /**
+     * Buffers the event for the next batch. The result completes once the event is buffered or, with
+     * {@link Durability#FLUSHED}, once its batch has been written.
+     */
+    @Override
+    public CompletableFuture<Void> addEventAsync(CloudEvent event) {
+        if (!this.running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Event store is shut down"));
+        }
+        if (!this.capacity.tryAcquire()) {
+            return CompletableFuture.failedFuture(full());
+        }
+        PendingEvent pending = new PendingEvent(event);
+        this.queue.add(pending);
+        // Shut down while buffering: take the event back, or the shutdown has already taken it and failed it
+        if (!this.running && this.queue.remove(pending)) {
+            this.capacity.release();
+            return CompletableFuture.failedFuture(new IllegalStateException("Event store is shut down"));
+        }
+        return this.durability == Durability.FLUSHED ? pending.result : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Reserves room in the buffer for the given number of events, which must then either be buffered with
+     * {@link #addReserved(List)} or given back with {@link #release(int)}.
+     *
+     * @throws EventStoreFullException if there is not room for all of them, in which case nothing is reserved
+     */
+    public void reserve(int events) throws EventStoreFullException {
+        if (!this.running) {
+            throw new IllegalStateException("Event store is shut down");
+        }
+        if (!this.capacity.tryAcquire(events)) {
+            throw full();
+        }
+    }
+
+    /**
+     * Gives back room reserved with {@link #reserve(int)} that will not be used.
+     */
+    public void release(int events) {
+        this.capacity.release(events);
+    }
+
+    /**
+     * Buffers events for which room was reserved with {@link #reserve(int)}, without waiting for them to be written
+     * whatever the durability. Events that arrive after shutdown has taken the buffer are dropped.
+     */
+    public void addReserved(List<CloudEvent> events) {
+        List<PendingEvent> pending = new ArrayList<>(events.size());
+        for (CloudEvent event : events) {
+            PendingEvent next = new PendingEvent(event);
+            this.queue.add(next);
+            pending.add(next);
+        }
+        if (!this.running) {
+            // Shut down while buffering: take back the events shutdown has not already taken and failed
+            int dropped = 0;
+            for (PendingEvent next : pending) {
+                dropped += this.queue.remove(next) ? 1 : 0;
+            }
+            if (dropped > 0) {
+                logger.error("Dropping " + dropped + " events buffered during shutdown");
+                this.capacity.release(dropped);
+            }
+        }
+    }
+
+    @Override
+    public void addEvents(List<CloudEvent> events) throws Exception {
+        // A caller that already has a batch gains nothing from buffering
+        this.delegate.addEvents(events);
+    }
+
+    @Override
+    public CompletableFuture<EventPage> getEventsAsync(int limit, String bookmark, boolean descending) {
+        return this.delegate.getEventsAsync(limit, bookmark, descending);
+    }
+
+    @Override
+    public CompletableFuture<Long> getNumEventsAsync() {
+        return this.delegate.getNumEventsAsync();
+    }
+
+    @Override
+    public CompletableFuture<Void> addEventsAsync(List<CloudEvent> events) {
+        return this.delegate.addEventsAsync(events);
+    }
+
+    @Override
+    public void removeAllEvents(PurgeMode mode, LongConsumer progress) throws Exception {
+        this.delegate.removeAllEvents(mode, progress);
+    }
+
+    @Override
+    public void removeExpiredEvents(RetentionPolicy policy, LongConsumer progress) throws Exception {
+        this.delegate.removeExpiredEvents(policy, progress);
+    }
+
+    @Override
+    public boolean supportsRetention(RetentionPolicy policy) {
+        return this.delegate.supportsRetention(policy);
+    }
+
+    @Override
+    public void ping() {
+        this.delegate.ping();
+    }
+
+    /**
+     * Stops accepting events, flushes whatever is buffered and shuts down the delegate store. The flusher is not
+     * interrupted, so a batch being written is not abandoned; events still buffered when it does not finish in time
+     * are failed.
+     */
+    @Override
+    public void shutdown() {
+        this.running = false;
+        try {
+            this.flusher.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingEvent> unflushed = new ArrayList<>();
+        this.queue.drainTo(unflushed);
+        this.capacity.release(unflushed.size());
+        if (!unflushed.isEmpty()) {
+            logger.error("Dropping " + unflushed.size() + " buffered events at shutdown");
+            IllegalStateException e = new IllegalStateException("Event store is shut down");
+            for (PendingEvent pending : unflushed) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+        this.delegate.shutdown();
+    }
+
+    /**
+     * @return the number of events buffered and not yet written to the delegate store
+     */
+    public int getPendingEvents() {
+        return this.queue.size();
+    }
+
+    private void flushLoop() {
+        List<PendingEvent> batch = new ArrayList<>(this.maxBatchSize);
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                PendingEvent first = this.running ? this.queue.poll(100, TimeUnit.MILLISECONDS) : this.queue.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch);
+            } catch (InterruptedException e) {
+                // Shutdown does not interrupt; write what was taken and leave the rest for shutdown to fail
+                Thread.currentThread().interrupt();
+            }
+            if (!batch.isEmpty()) {
+                this.capacity.release(batch.size());
+                flush(batch);
+                batch.clear();
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private void fillBatch(List<PendingEvent> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + this.lingerNanos;
+        while (batch.size() < this.maxBatchSize) {
+            this.queue.drainTo(batch, this.maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= this.maxBatchSize || remaining <= 0 || !this.running) {
+                return;
+            }
+            PendingEvent next = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingEvent> batch) {
+        List<CloudEvent> events = new ArrayList<>(batch.size());
+        for (PendingEvent pending : batch) {
+            events.add(pending.event);
+        }
+        try {
+            this.delegate.addEvents(events);
+            for (PendingEvent pending : batch) {
+                pending.result.complete(null);
+            }
+            logger.debug("Flushed " + batch.size() + " events");
+        } catch (Exception e) {
+            logger.error("Unable to flush " + batch.size() + " buffered events", e);
+            for (PendingEvent pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private EventStoreFullException full() {
+        return new EventStoreFullException("Write-behind buffer is full (" + this.queue.size() + " events pending)");
+    }
+
+    private static void await(CompletableFuture<Void> result) throws Exception {
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class PendingEvent {
+
+        private final CloudEvent event;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private PendingEvent(CloudEvent event) {
+            this.event = event;
+        }
+
+    }
+
+}
@@ -0,0 +1,309 @@
+package application.events.store.cloudant;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+
+import application.events.EventMetrics;
+import application.events.JsonEventMembers;
+import application.events.store.EventPage;
+import io.cloudevents.CloudEvent;
+import io.cloudevents.SpecVersion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Reads cloud events back from the documents in an <code>_all_docs</code> or <code>_find</code> response.
+ * <p>
+ * The response is read with a streaming parser, and each document is collected into {@link JsonEventMembers}, which
+ * slices its <code>data</code> out of the response rather than building it into a tree. Documents written by
+ * {@link CloudEventDocumentWriter} are events in the JSON event format. Documents stored by earlier versions, with
+ * spec version 0.2 attributes nested in <code>attributes</code> and extensions nested in <code>extensions</code>, are
+ * converted to spec version 1.0 events: <code>schemaurl</code> becomes <code>dataschema</code>,
+ * <code>contenttype</code> becomes <code>datacontenttype</code>, and the members of each extension, e.g.
+ * <code>traceparent</code> and <code>tracestate</code>, become extensions of their own.
+ * <p>
+ * A document that is not a valid event, e.g. one another application stored in the database, is logged, counted and
+ * skipped, so it does not keep the events around it from being read.
+ */
+public class CloudEventDocumentReader {
+
+    /**
+     * A row of the response. The event is null for design documents and documents that are not valid events.
+     */
+    public static final class Row {
+
+        private final String id;
+        private final CloudEvent event;
+
+        private Row(String id, CloudEvent event) {
+            this.id = id;
+            this.event = event;
+        }
+
+        public String getId() {
+            return this.id;
+        }
+
+        public CloudEvent getEvent() {
+            return this.event;
+        }
+
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(CloudEventDocumentReader.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final String DESIGN_DOC_PREFIX = "_design/";
+    private static final Pattern EXTENSION_NAME = Pattern.compile("[a-z0-9]{1,20}");
+
+    private final TypeAdapter<ZonedDateTime> timeAdapter;
+    private final Counter invalidDocuments;
+
+    /**
+     * @param gson          Reads the <code>time</code> of stored spec version 0.2 documents, in any of the shapes its
+     *                      <code>ZonedDateTime</code> adapter accepts.
+     * @param meterRegistry Counts the documents skipped because they are not valid events.
+     */
+    public CloudEventDocumentReader(Gson gson, MeterRegistry meterRegistry) {
+        this.timeAdapter = gson.getAdapter(ZonedDateTime.class);
+        this.invalidDocuments = Counter.builder(EventMetrics.STORE_INVALID)
+                .description("The number of stored documents skipped because they are not valid events")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param body An <code>_all_docs</code> response, requested with <code>include_docs</code>.
+     * @return every row, including those of documents that are not valid events, which are logged and skipped
+     * @throws IllegalStateException if the response is not valid
+     */
+    public List<Row> readAllDocs(byte[] body) {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("Expected an _all_docs response object");
+            }
+            List<Row> rows = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                if ("rows".equals(parser.getCurrentName()) && parser.nextToken() == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        Row row = readRow(parser, body);
+                        if (row != null) {
+                            rows.add(row);
+                        }
+                    }
+                } else {
+                    parser.nextToken();
+                    parser.skipChildren();
+                }
+            }
+            return rows;
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid _all_docs response: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param body  A <code>_find</code> response.
+     * @param limit The limit the documents were found with.
+     * @return the valid events found, with the bookmark Cloudant returned to continue after them if there were as
+     *         many documents as the limit. Cloudant returns a bookmark with every page, so a full page can be followed
+     *         by an empty one.
+     * @throws IllegalStateException if the response is not valid
+     */
+    public EventPage readFind(byte[] body, int limit) {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("Expected a _find response object");
+            }
+            List<CloudEvent> events = new ArrayList<>();
+            int documents = 0;
+            String bookmark = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("docs".equals(name) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        documents++;
+                        CloudEvent event = readDocument(parser, body, null);
+                        if (event != null) {
+                            events.add(event);
+                        }
+                    }
+                } else if ("bookmark".equals(name) && token == JsonToken.VALUE_STRING) {
+                    bookmark = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new EventPage(events, documents < limit ? null : bookmark);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid _find response: " + e.getMessage(), e);
+        }
+    }
+
+    /*
+     * Returns null for a row with neither an id nor a key, which cannot even be paged past
+     */
+    private Row readRow(JsonParser parser, byte[] body) throws IOException {
+        String id = null;
+        String key = null;
+        boolean hasDocument = false;
+        CloudEvent event = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("id".equals(name) && token == JsonToken.VALUE_STRING) {
+                id = parser.getText();
+            } else if ("key".equals(name) && token == JsonToken.VALUE_STRING) {
+                key = parser.getText();
+            } else if ("doc".equals(name) && token == JsonToken.START_OBJECT
+                    && (id == null || !id.startsWith(DESIGN_DOC_PREFIX))) {
+                hasDocument = true;
+                event = readDocument(parser, body, id);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (id == null) {
+            // The key of an _all_docs row is the document id
+            id = key;
+        }
+        if (id == null) {
+            logger.warn("Skipping _all_docs row without an id");
+            if (!hasDocument || event != null) {
+                // An invalid document has been counted already
+                this.invalidDocuments.increment();
+            }
+            return null;
+        }
+        return new Row(id, id.startsWith(DESIGN_DOC_PREFIX) ? null : event);
+    }
+
+    /*
+     * Returns null for a document that is not a valid event. Reading its members never fails on their values, so the
+     * parser is at the end of the document by the time it is found to be invalid.
+     */
+    private CloudEvent readDocument(JsonParser parser, byte[] body, String rowId) throws IOException {
+        JsonEventMembers members = new JsonEventMembers();
+        Map<String, Object> extensions = new HashMap<>();
+        String id = rowId;
+        boolean legacy = false;
+        String legacyTime = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("_id".equals(name) && token == JsonToken.VALUE_STRING) {
+                id = parser.getText();
+            } else if (name.startsWith("_") || CloudEventDocumentWriter.TIME_MILLIS.equals(name)) {
+                // _id, _rev and the other members Cloudant adds, and the members only stored for indexing
+                parser.skipChildren();
+            } else if ("attributes".equals(name) && token == JsonToken.START_OBJECT) {
+                legacy = true;
+                legacyTime = readLegacyAttributes(parser, body, members.getAttributes());
+            } else if ("extensions".equals(name) && token == JsonToken.START_OBJECT) {
+                readLegacyExtensions(parser, extensions);
+            } else {
+                // extensionsFormats, and nothing else that is stored, is structured
+                members.read(name, parser, body);
+            }
+        }
+
+        Map<String, Object> attributes = members.getAttributes();
+        try {
+            if (legacy) {
+                attributes.put(JsonEventMembers.SPECVERSION, SpecVersion.V1.toString());
+                if (legacyTime != null) {
+                    attributes.put("time", readLegacyTime(legacyTime));
+                }
+                renameAttribute(attributes, "schemaurl", "dataschema");
+                renameAttribute(attributes, "contenttype", "datacontenttype");
+                extensions.keySet().removeIf(extension -> !EXTENSION_NAME.matcher(extension).matches());
+            }
+            attributes.putAll(extensions);
+            return members.build();
+        } catch (IllegalArgumentException e) {
+            logger.warn("Skipping stored document " + id + ", which is not a valid cloud event: " + e.getMessage());
+            this.invalidDocuments.increment();
+            return null;
+        }
+    }
+
+    /*
+     * Returns the raw JSON of the time, which is read once the whole document has been
+     */
+    private String readLegacyAttributes(JsonParser parser, byte[] body, Map<String, Object> attributes)
+            throws IOException {
+        String time = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("time".equals(name) && token != JsonToken.VALUE_NULL) {
+                // Either an ISO-8601 string or the nested object older versions stored
+                time = new String(JsonEventMembers.readRawValue(parser, body), StandardCharsets.UTF_8);
+            } else if (token.isStructStart()) {
+                parser.skipChildren();
+            } else {
+                JsonEventMembers.putScalar(parser, name, attributes);
+            }
+        }
+        return time;
+    }
+
+    private ZonedDateTime readLegacyTime(String time) {
+        try {
+            ZonedDateTime value = this.timeAdapter.fromJson(time);
+            if (value == null) {
+                throw new IllegalArgumentException("Invalid stored cloud event time: " + time);
+            }
+            return value;
+        } catch (JsonParseException | IOException | DateTimeException e) {
+            throw new IllegalArgumentException("Invalid stored cloud event time: " + time, e);
+        }
+    }
+
+    private static void readLegacyExtensions(JsonParser parser, Map<String, Object> extensions) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                // e.g. "distributedTracing":{"traceparent":"...","tracestate":"..."}
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String member = parser.getCurrentName();
+                    if (parser.nextToken().isStructStart()) {
+                        parser.skipChildren();
+                    } else {
+                        JsonEventMembers.putScalar(parser, member, extensions);
+                    }
+                }
+            } else if (parser.currentToken().isStructStart()) {
+                parser.skipChildren();
+            } else {
+                JsonEventMembers.putScalar(parser, name, extensions);
+            }
+        }
+    }
+
+    private static void renameAttribute(Map<String, Object> attributes, String from, String to) {
+        Object value = attributes.remove(from);
+        if (value != null) {
+            attributes.put(to, value);
+        }
+    }
+
+}
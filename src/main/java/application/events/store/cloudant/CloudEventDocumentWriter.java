@@ -0,0 +1,261 @@
+package application.events.store.cloudant;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URI;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import application.events.JsonPayload;
+import io.cloudevents.CloudEvent;
+import io.cloudevents.CloudEventData;
+import io.cloudevents.types.Time;
+
+/**
+ * Serializes cloud events straight into the JSON body of a Cloudant request.
+ * <p>
+ * Documents are events in the JSON event format: attributes and extensions are top-level members, JSON data is held
+ * in <code>data</code> and any other data base64 encoded in <code>data_base64</code>. {@link JsonPayload} data is
+ * copied into the document verbatim. Each event is written in a single pass, without the intermediate JSON string and
+ * <code>Map</code> that converting it to a <code>Document</code> would need. {@link CloudEventDocumentReader} reads
+ * the documents back.
+ * <p>
+ * Writers created to index the time also add {@value #TIME_MILLIS}, the event time in milliseconds since the epoch,
+ * or the time it was written for events without a time, which the Cloudant query indexes sort on. It replaces an
+ * extension of the same name, and is not a valid extension value, so readers other than
+ * {@link CloudEventDocumentReader} have to drop it.
+ * <p>
+ * Writers given {@link EventDocumentIds} set the <code>_id</code> of each document from the same time, rather than
+ * leave Cloudant to pick a random one.
+ */
+public class CloudEventDocumentWriter {
+
+    public static final String CONTENT_TYPE = "application/json";
+
+    public static final String TIME_MILLIS = "timeepochms";
+
+    private static final String SPECVERSION = "specversion";
+
+    private final Gson gson;
+    private final boolean indexTime;
+    private final EventDocumentIds documentIds;
+
+    public CloudEventDocumentWriter(Gson gson) {
+        this(gson, false, null);
+    }
+
+    /**
+     * @param indexTime   whether to add {@value #TIME_MILLIS} to each document
+     * @param documentIds the ids to give documents, or null to leave them to Cloudant
+     */
+    public CloudEventDocumentWriter(Gson gson, boolean indexTime, EventDocumentIds documentIds) {
+        this.gson = gson;
+        this.indexTime = indexTime;
+        this.documentIds = documentIds;
+    }
+
+    /**
+     * @return a request body containing the event as a single document
+     */
+    public InputStream toDocument(CloudEvent event) {
+        DocumentBuffer buffer = new DocumentBuffer(512);
+        try (JsonWriter writer = this.gson.newJsonWriter(buffer)) {
+            writeEvent(writer, buffer, event);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toInputStream();
+    }
+
+    /**
+     * @return a <code>_bulk_docs</code> request body containing each event as a document
+     */
+    public InputStream toBulkDocs(List<CloudEvent> events) {
+        DocumentBuffer buffer = new DocumentBuffer(512 * events.size());
+        try (JsonWriter writer = this.gson.newJsonWriter(buffer)) {
+            writer.beginObject().name("docs").beginArray();
+            for (CloudEvent event : events) {
+                writeEvent(writer, buffer, event);
+            }
+            writer.endArray().endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toInputStream();
+    }
+
+    private void writeEvent(JsonWriter writer, DocumentBuffer buffer, CloudEvent event) throws IOException {
+        writer.beginObject();
+
+        OffsetDateTime time = event.getTime();
+        long timeMillis = time != null ? time.toInstant().toEpochMilli() : System.currentTimeMillis();
+        if (this.documentIds != null) {
+            writer.name("_id").value(this.documentIds.next(timeMillis));
+        }
+        writer.name(SPECVERSION).value(event.getSpecVersion().toString());
+        for (String name : event.getAttributeNames()) {
+            if (!SPECVERSION.equals(name)) {
+                writeValue(writer, name, event.getAttribute(name));
+            }
+        }
+        for (String name : event.getExtensionNames()) {
+            if (!this.indexTime || !TIME_MILLIS.equals(name)) {
+                writeValue(writer, name, event.getExtension(name));
+            }
+        }
+        if (this.indexTime) {
+            writer.name(TIME_MILLIS).value(timeMillis);
+        }
+
+        CloudEventData data = event.getData();
+        if (data instanceof JsonPayload) {
+            writer.name("data");
+            // JsonWriter writes through unbuffered, so an empty raw value leaves the buffer right after "data":
+            writer.jsonValue("");
+            buffer.writeRaw(data.toBytes());
+        } else if (data != null && JsonPayload.isJson(event.getDataContentType())) {
+            writer.name("data");
+            writer.jsonValue("");
+            buffer.writeRaw(JsonPayload.of(data.toBytes()).toBytes());
+        } else if (data != null) {
+            writer.name("data_base64").value(Base64.getEncoder().encodeToString(data.toBytes()));
+        }
+
+        writer.endObject();
+    }
+
+    private static void writeValue(JsonWriter writer, String name, Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        writer.name(name);
+        if (value instanceof Number) {
+            writer.value((Number) value);
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+        } else if (value instanceof OffsetDateTime) {
+            writer.value(Time.writeTime((OffsetDateTime) value));
+        } else if (value instanceof URI) {
+            writer.value(((URI) value).toASCIIString());
+        } else if (value instanceof byte[]) {
+            writer.value(Base64.getEncoder().encodeToString((byte[]) value));
+        } else {
+            writer.value(value.toString());
+        }
+    }
+
+    /*
+     * Encodes UTF-8 straight into a growable byte array and hands that array to the request body as is. An
+     * OutputStreamWriter over a ByteArrayOutputStream would copy every string JsonWriter emits into a fresh char[],
+     * keep its own 8 KB encoding buffer and copy the result once more in toByteArray().
+     */
+    private static final class DocumentBuffer extends Writer {
+
+        private byte[] buf;
+        private int count;
+        private char highSurrogate;
+
+        private DocumentBuffer(int initialCapacity) {
+            this.buf = new byte[Math.max(initialCapacity, 64)];
+        }
+
+        @Override
+        public void write(int c) {
+            ensureCapacity(4);
+            writeChar((char) c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            ensureCapacity(len);
+            for (int i = off; i < off + len; i++) {
+                writeChar(cbuf[i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            ensureCapacity(len);
+            for (int i = off; i < off + len; i++) {
+                writeChar(str.charAt(i));
+            }
+        }
+
+        private void writeChar(char c) {
+            if (c < 0x80 && this.highSurrogate == 0 && this.count < this.buf.length) {
+                this.buf[this.count++] = (byte) c;
+                return;
+            }
+            ensureCapacity(4);
+            if (this.highSurrogate != 0) {
+                char high = this.highSurrogate;
+                this.highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(high, c);
+                    this.buf[this.count++] = (byte) (0xF0 | (codePoint >> 18));
+                    this.buf[this.count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    this.buf[this.count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    this.buf[this.count++] = (byte) (0x80 | (codePoint & 0x3F));
+                    return;
+                }
+                this.buf[this.count++] = '?';
+                ensureCapacity(3);
+            }
+            if (c < 0x80) {
+                this.buf[this.count++] = (byte) c;
+            } else if (c < 0x800) {
+                this.buf[this.count++] = (byte) (0xC0 | (c >> 6));
+                this.buf[this.count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                this.highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                // Unpaired, same replacement the JDK encoder uses
+                this.buf[this.count++] = '?';
+            } else {
+                this.buf[this.count++] = (byte) (0xE0 | (c >> 12));
+                this.buf[this.count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                this.buf[this.count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        private void writeRaw(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, this.buf, this.count, bytes.length);
+            this.count += bytes.length;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (this.count + additional > this.buf.length) {
+                this.buf = Arrays.copyOf(this.buf, Math.max(this.buf.length * 2, this.count + additional));
+            }
+        }
+
+        @Override
+        public void flush() {
+            // Nothing is buffered outside buf
+        }
+
+        @Override
+        public void close() {
+            if (this.highSurrogate != 0) {
+                this.highSurrogate = 0;
+                ensureCapacity(1);
+                this.buf[this.count++] = '?';
+            }
+        }
+
+        private InputStream toInputStream() {
+            return new ByteArrayInputStream(this.buf, 0, this.count);
+        }
+
+    }
+
+}
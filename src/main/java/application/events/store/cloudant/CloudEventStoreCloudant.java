@@ -3,130 +3,868 @@
  */
 package application.events.store.cloudant;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 import com.ibm.cloud.cloudant.v1.Cloudant;
-import com.ibm.cloud.cloudant.v1.model.AllDocsResult;
-import com.ibm.cloud.cloudant.v1.model.DeleteDocumentOptions;
+import com.ibm.cloud.cloudant.v1.model.BulkDocs;
+import com.ibm.cloud.cloudant.v1.model.DatabaseInformation;
+import com.ibm.cloud.cloudant.v1.model.DeleteDatabaseOptions;
 import com.ibm.cloud.cloudant.v1.model.DocsResultRow;
+import com.ibm.cloud.cloudant.v1.model.GetDatabaseInformationOptions;
+import com.ibm.cloud.cloudant.v1.model.IndexDefinition;
+import com.ibm.cloud.cloudant.v1.model.IndexField;
 import com.ibm.cloud.cloudant.v1.model.PostAllDocsOptions;
+import com.ibm.cloud.cloudant.v1.model.PostBulkDocsOptions;
+import com.ibm.cloud.cloudant.v1.model.PostDesignDocsOptions;
 import com.ibm.cloud.cloudant.v1.model.PostDocumentOptions;
+import com.ibm.cloud.cloudant.v1.model.PostFindOptions;
+import com.ibm.cloud.cloudant.v1.model.PostIndexOptions;
+import com.ibm.cloud.cloudant.v1.model.PostPartitionAllDocsOptions;
+import com.ibm.cloud.cloudant.v1.model.PutDatabaseOptions;
+import com.ibm.cloud.sdk.core.http.Response;
+import com.ibm.cloud.sdk.core.http.ServiceCall;
+import com.ibm.cloud.sdk.core.http.ServiceCallback;
+import com.ibm.cloud.sdk.core.service.exception.BadRequestException;
 import com.ibm.cloud.sdk.core.service.exception.NotFoundException;
 import com.ibm.cloud.cloudant.v1.model.Document;
 import com.ibm.cloud.cloudant.v1.model.DocumentResult;
 
 import application.SBApplicationConfig;
+import application.events.EventTracing;
 import application.events.store.CloudEventStore;
+import application.events.store.CloudEventStoreFactory;
+import application.events.store.ConditionalOnBackend;
+import application.events.store.EventCounter;
+import application.events.store.EventPage;
+import application.events.store.EventQuery;
+import application.events.store.Futures;
+import application.events.store.PurgeMode;
+import application.events.store.RetentionPolicy;
 import io.cloudevents.CloudEvent;
-import io.cloudevents.v02.CloudEventImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
 
 /**
  * Cloudant Spring implementation
+ * <p>
+ * The blocking methods wait for Cloudant on the calling thread. The asynchronous methods send their requests with the
+ * SDK's <code>enqueue</code> and complete on the HTTP client's threads, with at most
+ * <code>eventstore.cloudant.max-in-flight</code> requests in flight and the rest queued without holding a thread.
+ * <p>
+ * Converting events to documents and writing them to Cloudant are traced in spans of the current trace.
+ * <p>
+ * Queries are answered with <code>_find</code> from Mango JSON indexes on the event time, and on each of
+ * <code>subject</code>, <code>source</code> and <code>type</code> followed by the time, so only matching documents are
+ * read. Filters on more than one of those attributes use the index of the first. The indexes are created in the
+ * <code>event-query</code> design document the first time events are queried, which may take a while for a large
+ * database. Documents stored before the event time was indexed are not returned by queries.
+ * <p>
+ * Unless <code>eventstore.cloudant.time-ordered-ids</code> is false, documents are given ids that sort by event time
+ * (see {@link EventDocumentIds}), so pages of <code>_all_docs</code> are in time order, the newest events are the first
+ * page in descending order, and queries on the time alone read a range of <code>_all_docs</code> rather than an index.
+ * With <code>eventstore.cloudant.partition-by-day</code> the ids start with the day of the event, and a database the
+ * store recreates is partitioned on it, so windows within a day are read from a single partition.
+ * <p>
+ * Retention deletes the events older than the maximum age as a range of time-ordered ids, so events stored with ids
+ * Cloudant picked are never too old, and then the first events in id order beyond the maximum number and size. The
+ * size is the uncompressed size of the documents Cloudant reports, assumed to be shared equally by the events.
  */
 @Component
+@ConditionalOnBackend(CloudEventStoreFactory.BACKEND_CLOUDANT)
 public class CloudEventStoreCloudant implements CloudEventStore {
 
     private static final Logger logger = LoggerFactory.getLogger(CloudEventStoreCloudant.class);
 
+    private static final String DESIGN_DOC_PREFIX = "_design/";
+
+    private static final String QUERY_DDOC = "event-query";
+    private static final String TIME_INDEX = "time";
+    /* The attributes queries filter on, each indexed along with the time, the most selective first */
+    private static final List<String> QUERY_ATTRIBUTES = Arrays.asList("subject", "source", "type");
+    /* The error Cloudant responds to _find with when no index can answer the query */
+    private static final String NO_USABLE_INDEX = "no_usable_index";
+    private static final String ERROR_FIELD = "error";
+
+    private static final String CONVERT_SPAN = "cloudant convert";
+    private static final String WRITE_SPAN = "cloudant write";
+    private static final String OPERATION_POST_DOCUMENT = "postDocument";
+    private static final String OPERATION_POST_BULK_DOCS = "postBulkDocs";
+    private static final AttributeKey<String> DB_SYSTEM = AttributeKey.stringKey("db.system");
+    private static final AttributeKey<String> DB_NAME = AttributeKey.stringKey("db.name");
+    private static final AttributeKey<String> DB_OPERATION = AttributeKey.stringKey("db.operation");
+
     private final Cloudant client;
     private final String dbName;
     private final Gson gson;
+    private final CloudEventDocumentWriter documentWriter;
+    private final CloudEventDocumentReader documentReader;
+    /* null when Cloudant picks the document ids */
+    private final EventDocumentIds documentIds;
+    private final boolean partitionByDay;
+    private final EventCounter eventCounter = new EventCounter();
+    private final int purgePageSize;
+    private final int purgeParallelism;
+    private final InFlightLimiter inFlight;
+    private final Tracer tracer;
 
-    public CloudEventStoreCloudant(Cloudant client, GsonBuilder gsonBuilder) {
+    /* Set once the changes feed counts every write, including this instance's */
+    private volatile boolean countingChanges;
+
+    private volatile boolean indexesCreated;
+
+    public CloudEventStoreCloudant(Cloudant client, GsonBuilder gsonBuilder,
+            @Value("${eventstore.purge.page-size:1000}") int purgePageSize,
+            @Value("${eventstore.purge.parallelism:4}") int purgeParallelism,
+            @Value("${eventstore.cloudant.max-in-flight:64}") int maxInFlight,
+            @Value("${eventstore.cloudant.max-queued:1024}") int maxQueued,
+            @Value("${eventstore.cloudant.time-ordered-ids:true}") boolean timeOrderedIds,
+            @Value("${eventstore.cloudant.partition-by-day:false}") boolean partitionByDay,
+            OpenTelemetry openTelemetry, MeterRegistry meterRegistry) {
         this.client = client;
+        this.tracer = EventTracing.getTracer(openTelemetry);
+        this.inFlight = new InFlightLimiter(maxInFlight, maxQueued);
+        this.purgePageSize = purgePageSize;
+        this.purgeParallelism = purgeParallelism;
         this.gson = SBApplicationConfig.getCustomGsonBuilder().create();
+        this.partitionByDay = partitionByDay;
+        this.documentIds = timeOrderedIds ? new EventDocumentIds(partitionByDay) : null;
+        this.documentWriter = new CloudEventDocumentWriter(this.gson, true, this.documentIds);
+        this.documentReader = new CloudEventDocumentReader(this.gson, meterRegistry);
         this.dbName = DatabaseUtils.getDatabaseName();
     }
 
     @Override
-    public List<CloudEvent<?, ?>> getEvents() {
+    public EventPage getEvents(int limit, String bookmark, boolean descending) {
         try {
-            List<CloudEvent<?, ?>> events = new ArrayList<>();
+            return toPage(this.client.postAllDocsAsStream(allDocsOptions(limit, bookmark, descending)).execute()
+                    .getResult(), limit);
+        } catch (NotFoundException e) {
+            logger.warn("Unable to retrieve documents from Cloudant", e);
+            return EventPage.empty();
+        }
+    }
 
-            PostAllDocsOptions docsOptions = new PostAllDocsOptions.Builder().db(this.dbName).includeDocs(true).build();
-            AllDocsResult allDocResults = this.client.postAllDocs(docsOptions).execute().getResult();
+    @Override
+    public CompletableFuture<EventPage> getEventsAsync(int limit, String bookmark, boolean descending) {
+        PostAllDocsOptions options;
+        try {
+            options = allDocsOptions(limit, bookmark, descending);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return send(() -> this.client.postAllDocsAsStream(options)).thenApply(in -> toPage(in, limit))
+                .exceptionally(error -> {
+                    if (Futures.unwrap(error) instanceof NotFoundException) {
+                        logger.warn("Unable to retrieve documents from Cloudant", error);
+                        return EventPage.empty();
+                    }
+                    throw new CompletionException(Futures.unwrap(error));
+                });
+    }
 
-            for (DocsResultRow docResult : allDocResults.getRows()) {
-                Document document = docResult.getDoc();
+    /*
+     * Reads one row past the window so we know where the next page starts
+     */
+    private PostAllDocsOptions allDocsOptions(int limit, String bookmark, boolean descending) {
+        PostAllDocsOptions.Builder docsOptions = new PostAllDocsOptions.Builder().db(this.dbName).includeDocs(true)
+                .descending(descending).limit(limit + 1);
+        if (bookmark != null) {
+            docsOptions.startKey(decodeBookmark(bookmark));
+        }
+        return docsOptions.build();
+    }
 
-                @SuppressWarnings("rawtypes")
-                CloudEventImpl evt = this.gson.fromJson(document.toString(), CloudEventImpl.class);
+    private EventPage toPage(InputStream allDocs, int limit) {
+        return toPage(allDocs, limit, event -> true);
+    }
 
-                events.add(evt);
+    /*
+     * Rows that are not events, or not selected, leave the page short. When every row read was needed the next page
+     * starts at the last one.
+     */
+    private EventPage toPage(InputStream allDocs, int limit, Predicate<CloudEvent> filter) {
+        List<CloudEvent> events = new ArrayList<>(limit);
+        String nextBookmark = null;
+        List<CloudEventDocumentReader.Row> rows = this.documentReader.readAllDocs(readBody(allDocs));
+        for (int i = 0; i < rows.size(); i++) {
+            CloudEventDocumentReader.Row row = rows.get(i);
+            if (events.size() == limit || (i == limit && i == rows.size() - 1)) {
+                nextBookmark = encodeBookmark(row.getId());
+                break;
             }
+            if (row.getEvent() != null && filter.test(row.getEvent())) {
+                events.add(row.getEvent());
+            }
+        }
+        return new EventPage(events, nextBookmark);
+    }
 
-            return events;
+    @Override
+    public EventPage queryEvents(EventQuery query) throws Exception {
+        if (this.documentIds != null && query.getType() == null && query.getSource() == null
+                && query.getSubject() == null) {
+            return scanTimeRange(query);
+        }
+        try {
+            createIndexes();
+            try {
+                return find(query);
+            } catch (BadRequestException e) {
+                if (!isMissingIndex(e)) {
+                    throw e;
+                }
+                // The indexes went with the database, e.g. when another instance truncated it
+                logger.warn("Query indexes of database " + this.dbName + " are missing, creating them again");
+                this.indexesCreated = false;
+                createIndexes();
+                return find(query);
+            }
         } catch (NotFoundException e) {
-            logger.warn("Unable to retrieve all documents from Cloudant", e);
-            return Collections.emptyList();
+            logger.warn("Unable to query documents from Cloudant", e);
+            return EventPage.empty();
+        } catch (BadRequestException e) {
+            if (query.getBookmark() != null) {
+                throw new IllegalArgumentException("Invalid bookmark: " + query.getBookmark(), e);
+            }
+            throw e;
+        }
+    }
+
+    private EventPage find(EventQuery query) {
+        return this.documentReader.readFind(readBody(this.client.postFindAsStream(findOptions(query)).execute()
+                .getResult()), query.getLimit());
+    }
+
+    /*
+     * Checks the error code in the response body, which the SDK keeps as debugging info, rather than the message, as
+     * other bad requests can mention indexes too.
+     */
+    private static boolean isMissingIndex(BadRequestException e) {
+        Map<String, Object> body = e.getDebuggingInfo();
+        return body != null && NO_USABLE_INDEX.equals(body.get(ERROR_FIELD));
+    }
+
+    /*
+     * Reads the ids within the window, from a single partition when it is within a day. Documents with ids Cloudant
+     * picked may sort within the window too, so events are still checked against it.
+     */
+    private EventPage scanTimeRange(EventQuery query) {
+        String lower = query.getFrom() != null ? this.documentIds.lowerBound(query.getFrom()) : null;
+        String upper = query.getTo() != null ? this.documentIds.lowerBound(query.getTo()) : null;
+        String startKey = query.getBookmark() != null ? decodeBookmark(query.getBookmark())
+                : query.isDescending() ? upper : lower;
+        String endKey = query.isDescending() ? lower : upper;
+        String partition = null;
+        if (this.partitionByDay && query.getFrom() != null && query.getTo() != null) {
+            String first = this.documentIds.partition(query.getFrom());
+            partition = first.equals(this.documentIds.partition(query.getTo().minusMillis(1))) ? first : null;
+        }
+        try {
+            InputStream allDocs;
+            if (partition != null) {
+                allDocs = this.client.postPartitionAllDocsAsStream(new PostPartitionAllDocsOptions.Builder()
+                        .db(this.dbName).partitionKey(partition).includeDocs(true).descending(query.isDescending())
+                        .limit(query.getLimit() + 1).startKey(startKey).endKey(endKey)
+                        .inclusiveEnd(query.isDescending()).build()).execute().getResult();
+            } else {
+                allDocs = this.client.postAllDocsAsStream(new PostAllDocsOptions.Builder().db(this.dbName)
+                        .includeDocs(true).descending(query.isDescending()).limit(query.getLimit() + 1)
+                        .startKey(startKey).endKey(endKey).inclusiveEnd(query.isDescending()).build()).execute()
+                        .getResult();
+            }
+            return toPage(allDocs, query.getLimit(), query::matches);
+        } catch (NotFoundException e) {
+            logger.warn("Unable to query documents from Cloudant", e);
+            return EventPage.empty();
+        }
+    }
+
+    /*
+     * Selects the documents with the index that leads with the first attribute filtered on, sorted by it and then the
+     * time, as Mango requires the sort to follow the index.
+     */
+    private PostFindOptions findOptions(EventQuery query) {
+        String direction = query.isDescending() ? "desc" : "asc";
+        Map<String, Object> selector = new LinkedHashMap<>();
+        String leading = null;
+        for (String attribute : QUERY_ATTRIBUTES) {
+            String value = "subject".equals(attribute) ? query.getSubject()
+                    : "source".equals(attribute) ? query.getSource() : query.getType();
+            if (value != null) {
+                selector.put(attribute, value);
+                leading = leading == null ? attribute : leading;
+            }
+        }
+        // An open start still needs a condition on the time for the index to be used
+        Map<String, Object> window = new LinkedHashMap<>();
+        window.put("$gte", query.getFrom() != null ? query.getFrom().toEpochMilli() : Long.MIN_VALUE);
+        if (query.getTo() != null) {
+            window.put("$lt", query.getTo().toEpochMilli());
+        }
+        selector.put(CloudEventDocumentWriter.TIME_MILLIS, window);
+
+        PostFindOptions.Builder options = new PostFindOptions.Builder().db(this.dbName).selector(selector)
+                .limit(query.getLimit()).useIndex(Arrays.asList(QUERY_DDOC, indexName(leading)));
+        if (leading != null) {
+            options.addSort(Collections.singletonMap(leading, direction));
+        }
+        options.addSort(Collections.singletonMap(CloudEventDocumentWriter.TIME_MILLIS, direction));
+        if (query.getBookmark() != null) {
+            options.bookmark(query.getBookmark());
+        }
+        return options.build();
+    }
+
+    /*
+     * Creating an index that already exists leaves it as it is, so every instance creates them once.
+     */
+    private synchronized void createIndexes() {
+        if (this.indexesCreated) {
+            return;
+        }
+        createIndex(null);
+        for (String attribute : QUERY_ATTRIBUTES) {
+            createIndex(attribute);
+        }
+        this.indexesCreated = true;
+        logger.info("Created the query indexes of database " + this.dbName);
+    }
+
+    private void createIndex(String attribute) {
+        IndexDefinition.Builder index = new IndexDefinition.Builder();
+        if (attribute != null) {
+            index.addFields(new IndexField.Builder().add(attribute, "asc").build());
         }
+        index.addFields(new IndexField.Builder().add(CloudEventDocumentWriter.TIME_MILLIS, "asc").build());
+        PostIndexOptions.Builder options = new PostIndexOptions.Builder().db(this.dbName).ddoc(QUERY_DDOC)
+                .name(indexName(attribute)).type("json").index(index.build());
+        if (this.partitionByDay) {
+            // Queries are not limited to a partition, so neither are the indexes
+            options.partitioned(false);
+        }
+        this.client.postIndex(options.build()).execute();
+    }
+
+    private static String indexName(String attribute) {
+        return attribute != null ? attribute + "-" + TIME_INDEX : TIME_INDEX;
     }
 
+    /*
+     * Design documents are included in the database document count, but are not events. They are counted every time
+     * as another instance, or a restart, may have created them.
+     */
+    private PostDesignDocsOptions designDocsOptions() {
+        return new PostDesignDocsOptions.Builder().db(this.dbName).build();
+    }
+
+    private long countDesignDocuments() {
+        return this.client.postDesignDocs(designDocsOptions()).execute().getResult().getRows().size();
+    }
+
+    /**
+     * Returns the number of events from the in-process counter. Cloudant is only queried when the count is not known
+     * yet, e.g. right after startup.
+     */
     @Override
     public long getNumEvents() {
+        long count = this.eventCounter.get();
+        if (count != EventCounter.UNKNOWN) {
+            return count;
+        }
+        return reconcileEventCount();
+    }
+
+    @Override
+    public CompletableFuture<Long> getNumEventsAsync() {
+        long count = this.eventCounter.get();
+        if (count != EventCounter.UNKNOWN) {
+            return CompletableFuture.completedFuture(count);
+        }
+        GetDatabaseInformationOptions dbInfoOptions = new GetDatabaseInformationOptions.Builder().db(this.dbName)
+                .build();
+        return send(() -> this.client.getDatabaseInformation(dbInfoOptions))
+                .thenCombine(send(() -> this.client.postDesignDocs(designDocsOptions())), (dbInfo, designDocs) -> {
+                    long events = countEvents(dbInfo, designDocs.getRows().size());
+                    this.eventCounter.set(events);
+                    return events;
+                });
+    }
+
+    /**
+     * Replaces the in-process event count with the document count reported by Cloudant. This corrects any drift from
+     * failed writes or from events written by other instances of the application. While the changes feed counts
+     * every write the count is left to it, as the feed would count the changes since its last sequence again.
+     *
+     * @return The number of events, or -1 if the count could not be retrieved.
+     */
+    @Scheduled(initialDelayString = "${eventstore.count.reconcile-interval-ms:60000}",
+            fixedDelayString = "${eventstore.count.reconcile-interval-ms:60000}")
+    public long reconcileEventCount() {
+        if (this.countingChanges) {
+            return this.eventCounter.get();
+        }
         try {
-            PostAllDocsOptions docsOptions = new PostAllDocsOptions.Builder().db(this.dbName).build();
-            AllDocsResult allDocResults = this.client.postAllDocs(docsOptions).execute().getResult();
+            GetDatabaseInformationOptions dbInfoOptions = new GetDatabaseInformationOptions.Builder().db(this.dbName)
+                    .build();
+            DatabaseInformation dbInfo = this.client.getDatabaseInformation(dbInfoOptions).execute().getResult();
 
-            return allDocResults.getTotalRows();
+            long count = countEvents(dbInfo, countDesignDocuments());
+            this.eventCounter.set(count);
+            return count;
         } catch (Exception e) {
-            logger.warn("Unable to retrieve all documents from Cloudant", e);
+            logger.warn("Unable to retrieve database information from Cloudant", e);
             return -1;
         }
     }
 
+    /**
+     * Sets the event count from Cloudant and stops counting this instance's writes, as the changes feed counts every
+     * write from then on.
+     *
+     * @return The database update sequence the count was read at, for the changes feed to start from.
+     */
+    public String startCountingChanges() {
+        GetDatabaseInformationOptions dbInfoOptions = new GetDatabaseInformationOptions.Builder().db(this.dbName)
+                .build();
+        DatabaseInformation dbInfo = this.client.getDatabaseInformation(dbInfoOptions).execute().getResult();
+        this.eventCounter.set(countEvents(dbInfo, countDesignDocuments()));
+        this.countingChanges = true;
+        return dbInfo.getUpdateSeq();
+    }
+
+    /**
+     * @return true while the changes feed counts every write, until it reads the count again after a truncate
+     */
+    public boolean isCountingChanges() {
+        return this.countingChanges;
+    }
+
+    private static long countEvents(DatabaseInformation dbInfo, long designDocuments) {
+        return Math.max(0, dbInfo.getDocCount() - designDocuments);
+    }
+
+    /**
+     * Adds the documents created, as reported by the changes feed, to the event count.
+     */
+    public void countCreated(long created) {
+        this.eventCounter.add(created);
+    }
+
+    @Override
+    public void addEvent(CloudEvent event) throws Exception {
+        PostDocumentOptions options = postDocumentOptions(event);
+        Span span = startWrite(OPERATION_POST_DOCUMENT);
+        try {
+            // Post document and get response
+            DocumentResult response = this.client.postDocument(options).execute().getResult();
+            added(response);
+            span.end();
+        } catch (Exception e) {
+            EventTracing.end(span, e);
+            throw e;
+        }
+    }
+
     @Override
-    public void addEvent(CloudEvent<?, ?> event) throws Exception {
-        // Convert event into document object
-        Document document = new Document();
-        document.setProperties(this.gson.fromJson(this.gson.toJson(event), Map.class)); // https://github.com/cloudant/java-cloudant/blob/master/MIGRATION.md
+    public CompletableFuture<Void> addEventAsync(CloudEvent event) {
+        PostDocumentOptions options = postDocumentOptions(event);
+        Span span = startWrite(OPERATION_POST_DOCUMENT);
+        return EventTracing.endOnCompletion(span, send(() -> this.client.postDocument(options))
+                .thenCompose(response -> Futures.call(() -> {
+                    added(response);
+                    return null;
+                })));
+    }
 
-        // Post document and get response
-        PostDocumentOptions postDocumentOptions = new PostDocumentOptions.Builder().db(this.dbName).document(document)
-                .build();
-        DocumentResult response = this.client.postDocument(postDocumentOptions).execute().getResult();
+    private PostDocumentOptions postDocumentOptions(CloudEvent event) {
+        return convert(() -> new PostDocumentOptions.Builder().db(this.dbName)
+                .body(this.documentWriter.toDocument(event)).contentType(CloudEventDocumentWriter.CONTENT_TYPE)
+                .build());
+    }
 
+    private void added(DocumentResult response) throws Exception {
         // Check for errors
         String error = response.getError();
         if (error != null) {
             logger.error("Error adding event to Cloudant: " + error);
             throw new Exception(error);
         }
+        if (!this.countingChanges) {
+            this.eventCounter.add(1);
+        }
     }
 
     @Override
-    public void removeAllEvents() throws Exception {
+    public void addEvents(List<CloudEvent> events) throws Exception {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        PostBulkDocsOptions options = bulkDocsOptions(events);
+        Span span = startWrite(OPERATION_POST_BULK_DOCS);
         try {
-            PostAllDocsOptions docsOptions = new PostAllDocsOptions.Builder().db(this.dbName).includeDocs(true).build();
-            AllDocsResult allDocResults = this.client.postAllDocs(docsOptions).execute().getResult();
+            // Post the whole batch with a single _bulk_docs request
+            List<DocumentResult> results = this.client.postBulkDocs(options).execute().getResult();
+            added(events, results);
+            span.end();
+        } catch (Exception e) {
+            EventTracing.end(span, e);
+            throw e;
+        }
+    }
 
-            for (DocsResultRow docResult : allDocResults.getRows()) {
-                Document document = docResult.getDoc();
+    @Override
+    public CompletableFuture<Void> addEventsAsync(List<CloudEvent> events) {
+        if (events.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        PostBulkDocsOptions options = bulkDocsOptions(events);
+        Span span = startWrite(OPERATION_POST_BULK_DOCS);
+        return EventTracing.endOnCompletion(span, send(() -> this.client.postBulkDocs(options))
+                .thenCompose(results -> Futures.call(() -> {
+                    added(events, results);
+                    return null;
+                })));
+    }
 
-                DeleteDocumentOptions deleteDocumentOptions = new DeleteDocumentOptions.Builder().db(this.dbName)
-                        .docId(document.getId()).rev(document.getRev()).build();
+    private PostBulkDocsOptions bulkDocsOptions(List<CloudEvent> events) {
+        return convert(() -> new PostBulkDocsOptions.Builder().db(this.dbName)
+                .body(this.documentWriter.toBulkDocs(events)).build());
+    }
 
-                DocumentResult deleteDocumentResponse = client.deleteDocument(deleteDocumentOptions).execute()
-                        .getResult();
+    /*
+     * Traces the conversion of events to the documents written to Cloudant.
+     */
+    private <T> T convert(Supplier<T> conversion) {
+        Span span = this.tracer.spanBuilder(CONVERT_SPAN).startSpan();
+        try {
+            T documents = conversion.get();
+            span.end();
+            return documents;
+        } catch (RuntimeException e) {
+            EventTracing.end(span, e);
+            throw e;
+        }
+    }
 
-                if (!deleteDocumentResponse.isOk()) {
-                    logger.info("Could not delete a document.");
+    private Span startWrite(String operation) {
+        return this.tracer.spanBuilder(WRITE_SPAN).setSpanKind(SpanKind.CLIENT).setAttribute(DB_SYSTEM, "couchdb")
+                .setAttribute(DB_NAME, this.dbName).setAttribute(DB_OPERATION, operation).startSpan();
+    }
+
+    private void added(List<CloudEvent> events, List<DocumentResult> results) throws Exception {
+        // _bulk_docs reports errors per document rather than failing the request
+        int failures = 0;
+        String firstError = null;
+        for (DocumentResult result : results) {
+            if (result.getError() != null) {
+                if (firstError == null) {
+                    firstError = result.getError() + ": " + result.getReason();
                 }
+                failures++;
+            }
+        }
+        if (!this.countingChanges) {
+            this.eventCounter.add(results.size() - failures);
+        }
+        if (failures > 0) {
+            String errMsg = "Unable to add " + failures + " of " + events.size() + " events to Cloudant: " + firstError;
+            logger.error(errMsg);
+            throw new Exception(errMsg);
+        }
+    }
+
+    @Override
+    public void removeAllEvents(PurgeMode mode, LongConsumer progress) throws Exception {
+        try {
+            if (mode == PurgeMode.TRUNCATE) {
+                truncateDatabase(progress);
+            } else {
+                bulkDeleteDocuments(progress);
             }
         } catch (NotFoundException e) {
             String errMsg = "Unable to retrieve all documents from Cloudant";
             logger.error(errMsg, e);
             throw new Exception(errMsg, e);
+        } finally {
+            reconcileEventCount();
+        }
+    }
+
+    private void truncateDatabase(LongConsumer progress) {
+        long count = getNumEvents();
+
+        this.client.deleteDatabase(new DeleteDatabaseOptions.Builder().db(this.dbName).build()).execute();
+        PutDatabaseOptions.Builder dbOptions = new PutDatabaseOptions.Builder().db(this.dbName);
+        if (this.partitionByDay) {
+            dbOptions.partitioned(true);
+        }
+        this.client.putDatabase(dbOptions.build()).execute();
+        this.indexesCreated = false;
+        // The changes feed of the old database no longer applies; count here until the feed starts over
+        this.countingChanges = false;
+        logger.info("Recreated database " + this.dbName);
+
+        if (count > 0) {
+            progress.accept(count);
+        }
+    }
+
+    /*
+     * Pages through _all_docs fetching only ids and revisions, and deletes each page with a single _bulk_docs request.
+     * Up to purgeParallelism deletions are in flight while the next page is read. Each page starts after the last id
+     * of the previous one, so documents whose deletion is still in flight are not read again.
+     */
+    private void bulkDeleteDocuments(LongConsumer progress) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(this.purgeParallelism);
+        Semaphore inFlight = new Semaphore(this.purgeParallelism);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        try {
+            String startKey = null;
+            List<DocsResultRow> rows;
+            do {
+                PostAllDocsOptions.Builder docsOptions = new PostAllDocsOptions.Builder().db(this.dbName)
+                        .limit(this.purgePageSize);
+                if (startKey != null) {
+                    docsOptions.startKey(startKey);
+                }
+                rows = this.client.postAllDocs(docsOptions.build()).execute().getResult().getRows();
+
+                List<Document> tombstones = new ArrayList<>(rows.size());
+                for (DocsResultRow row : rows) {
+                    if (!row.getId().startsWith(DESIGN_DOC_PREFIX)) {
+                        tombstones.add(new Document.Builder().id(row.getId()).rev(row.getValue().getRev())
+                                .deleted(true).build());
+                    }
+                }
+                if (!rows.isEmpty()) {
+                    startKey = rows.get(rows.size() - 1).getId() + "\u0000";
+                }
+
+                if (!tombstones.isEmpty()) {
+                    inFlight.acquire();
+                    executor.execute(() -> {
+                        try {
+                            progress.accept(deleteDocuments(tombstones));
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+            } while (rows.size() == this.purgePageSize && failure.get() == null);
+
+            // Wait for the deletions still in flight
+            inFlight.acquire(this.purgeParallelism);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    @Override
+    public void removeExpiredEvents(RetentionPolicy policy, LongConsumer progress) throws Exception {
+        long start = System.nanoTime();
+        try {
+            long deleted = 0;
+            if (!policy.getMaxAge().isZero()) {
+                if (this.documentIds != null) {
+                    String cutoff = this.documentIds.lowerBound(Instant.now().minus(policy.getMaxAge()));
+                    deleted = deleteFirst(Long.MAX_VALUE, cutoff, policy, start, deleted, progress);
+                } else {
+                    logger.warn("Events are only removed by age when eventstore.cloudant.time-ordered-ids is true");
+                }
+            }
+            long excess = countExcessEvents(policy);
+            if (excess > 0) {
+                deleteFirst(excess, null, policy, start, deleted, progress);
+            }
+        } finally {
+            reconcileEventCount();
+        }
+    }
+
+    /**
+     * @return false if the policy limits the age of events that are not stored with time-ordered ids
+     */
+    @Override
+    public boolean supportsRetention(RetentionPolicy policy) {
+        return policy.getMaxAge().isZero() || this.documentIds != null;
+    }
+
+    private long countExcessEvents(RetentionPolicy policy) {
+        if (policy.getMaxEvents() == 0 && policy.getMaxBytes() == 0) {
+            return 0;
+        }
+        GetDatabaseInformationOptions dbInfoOptions = new GetDatabaseInformationOptions.Builder().db(this.dbName)
+                .build();
+        DatabaseInformation dbInfo = this.client.getDatabaseInformation(dbInfoOptions).execute().getResult();
+        long count = countEvents(dbInfo, countDesignDocuments());
+        long excess = policy.getMaxEvents() > 0 ? count - policy.getMaxEvents() : 0;
+        Long bytes = dbInfo.getSizes() != null ? dbInfo.getSizes().getExternal() : null;
+        if (policy.getMaxBytes() > 0 && bytes != null && bytes > policy.getMaxBytes() && count > 0) {
+            long eventBytes = Math.max(1, bytes / count);
+            excess = Math.max(excess, (bytes - policy.getMaxBytes() + eventBytes - 1) / eventBytes);
+        }
+        return excess;
+    }
+
+    /*
+     * Deletes up to max events in id order, only those with time-ordered ids before endKey if there is one, one
+     * _bulk_docs request per page. Each page starts after the last id of the previous one.
+     *
+     * @return the number of events deleted since the start, including deletedBefore
+     */
+    private long deleteFirst(long max, String endKey, RetentionPolicy policy, long startNanos, long deletedBefore,
+            LongConsumer progress) throws InterruptedException {
+        long deleted = 0;
+        String startKey = null;
+        long limit;
+        List<DocsResultRow> rows;
+        do {
+            limit = Math.min(this.purgePageSize, max - deleted);
+            PostAllDocsOptions.Builder docsOptions = new PostAllDocsOptions.Builder().db(this.dbName).limit(limit);
+            if (startKey != null) {
+                docsOptions.startKey(startKey);
+            }
+            if (endKey != null) {
+                docsOptions.endKey(endKey).inclusiveEnd(false);
+            }
+            rows = this.client.postAllDocs(docsOptions.build()).execute().getResult().getRows();
+
+            List<Document> tombstones = new ArrayList<>(rows.size());
+            for (DocsResultRow row : rows) {
+                if (!row.getId().startsWith(DESIGN_DOC_PREFIX)
+                        && (endKey == null || EventDocumentIds.timeOf(row.getId()) != null)) {
+                    tombstones.add(new Document.Builder().id(row.getId()).rev(row.getValue().getRev()).deleted(true)
+                            .build());
+                }
+            }
+            if (!rows.isEmpty()) {
+                startKey = rows.get(rows.size() - 1).getId() + "\u0000";
+            }
+
+            if (!tombstones.isEmpty()) {
+                long count = deleteDocuments(tombstones);
+                deleted += count;
+                progress.accept(count);
+                policy.pace(startNanos, deletedBefore + deleted);
+            }
+        } while (rows.size() == limit && deleted < max);
+        return deletedBefore + deleted;
+    }
+
+    private long deleteDocuments(List<Document> tombstones) {
+        BulkDocs bulkDocs = new BulkDocs.Builder().docs(tombstones).build();
+        PostBulkDocsOptions bulkDocsOptions = new PostBulkDocsOptions.Builder().db(this.dbName).bulkDocs(bulkDocs)
+                .build();
+        List<DocumentResult> results = this.client.postBulkDocs(bulkDocsOptions).execute().getResult();
+
+        long deleted = 0;
+        for (DocumentResult result : results) {
+            if (result.getError() == null) {
+                deleted++;
+            } else {
+                logger.info("Could not delete document " + result.getId() + ": " + result.getError());
+            }
+        }
+        return deleted;
+    }
+
+    /*
+     * Sends the request without waiting for it, once there is room for it in flight.
+     */
+    private <T> CompletableFuture<T> send(Supplier<ServiceCall<T>> request) {
+        return this.inFlight.submit(() -> {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            request.get().enqueue(new ServiceCallback<T>() {
+
+                @Override
+                public void onResponse(Response<T> response) {
+                    result.complete(response.getResult());
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    result.completeExceptionally(e);
+                }
+
+            });
+            return result;
+        });
+    }
+
+    /**
+     * @return the number of asynchronous requests in flight
+     */
+    public int getRequestsInFlight() {
+        return this.inFlight.getInFlight();
+    }
+
+    /**
+     * @return the number of asynchronous requests waiting for room in flight
+     */
+    public int getRequestsQueued() {
+        return this.inFlight.getQueued();
+    }
+
+    private static byte[] readBody(InputStream response) {
+        try (InputStream in = response) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * The bookmark is the _id of the first document of the next page. It is encoded so clients treat it as opaque.
+     */
+    private static String encodeBookmark(String docId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(docId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeBookmark(String bookmark) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(bookmark), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid bookmark: " + bookmark, e);
         }
     }
 
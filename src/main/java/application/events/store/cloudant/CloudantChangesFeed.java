@@ -0,0 +1,174 @@
+package application.events.store.cloudant;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.ibm.cloud.cloudant.v1.Cloudant;
+import com.ibm.cloud.cloudant.v1.model.Change;
+import com.ibm.cloud.cloudant.v1.model.ChangesResult;
+import com.ibm.cloud.cloudant.v1.model.ChangesResultItem;
+import com.ibm.cloud.cloudant.v1.model.PostChangesOptions;
+
+import application.events.store.CachingCloudEventStore;
+import application.events.store.CloudEventStore;
+import application.events.store.CloudEventStoreFactory;
+import application.events.store.ConditionalOnBackend;
+
+/**
+ * Follows the Cloudant <code>_changes</code> feed in the background, so the in-process event count and read cache
+ * see the writes of every instance of the application sharing the database, not just this one's.
+ * <p>
+ * The feed starts at the update sequence the event count was read at and is long-polled from the last sequence it
+ * returned. Documents created, which the feed reports at their first revision, add to the count, and any change
+ * clears the read cache. The feed only reports the latest revision of each document, so a deletion may be of a
+ * document created since the last poll, and a later revision may be of a document whose creation was never seen.
+ * When a poll has either, the count is read from Cloudant again and the feed starts over from there instead, as it
+ * does when the feed fails or the database was recreated by a purge.
+ */
+@Component
+@ConditionalOnBackend(CloudEventStoreFactory.BACKEND_CLOUDANT)
+@ConditionalOnProperty(name = "eventstore.changes.enabled", havingValue = "true")
+public class CloudantChangesFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(CloudantChangesFeed.class);
+
+    private static final String DESIGN_DOC_PREFIX = "_design/";
+
+    private final Cloudant client;
+    private final String dbName;
+    private final CloudEventStoreCloudant store;
+    private final CloudEventStoreFactory storeFactory;
+    private final long timeoutMillis;
+    private final long batchSize;
+    private final long retryDelayMillis;
+    private final Thread follower;
+
+    private volatile boolean running;
+    private volatile String lastSeq;
+
+    public CloudantChangesFeed(Cloudant client, CloudEventStoreCloudant store, CloudEventStoreFactory storeFactory,
+            @Value("${eventstore.changes.timeout-ms:30000}") long timeoutMillis,
+            @Value("${eventstore.changes.batch-size:1000}") long batchSize,
+            @Value("${eventstore.changes.retry-delay-ms:5000}") long retryDelayMillis) {
+        this.client = client;
+        this.dbName = DatabaseUtils.getDatabaseName();
+        this.store = store;
+        this.storeFactory = storeFactory;
+        this.timeoutMillis = timeoutMillis;
+        this.batchSize = batchSize;
+        this.retryDelayMillis = retryDelayMillis;
+        this.follower = new Thread(this::follow, "event-store-changes");
+        this.follower.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        this.running = true;
+        this.follower.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        this.running = false;
+        this.follower.interrupt();
+        try {
+            this.follower.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the last sequence read from the feed, or null if the feed has not been read yet
+     */
+    public String getLastSeq() {
+        return this.lastSeq;
+    }
+
+    /**
+     * Reads the event count from Cloudant and makes the feed start at the update sequence it was read at.
+     */
+    public void resync() {
+        this.lastSeq = this.store.startCountingChanges();
+        invalidateCache();
+    }
+
+    /**
+     * Waits for the changes after the last sequence, up to the long-poll timeout, and applies them. If any change is
+     * a deletion or a later revision the count is read from Cloudant again.
+     *
+     * @return the number of changes applied
+     */
+    public int poll() {
+        PostChangesOptions options = new PostChangesOptions.Builder().db(this.dbName).feed("longpoll")
+                .since(this.lastSeq).timeout(this.timeoutMillis).limit(this.batchSize).build();
+        ChangesResult result = this.client.postChanges(options).execute().getResult();
+        List<ChangesResultItem> items = result.getResults();
+
+        long created = 0;
+        for (ChangesResultItem item : items) {
+            if (item.getId().startsWith(DESIGN_DOC_PREFIX)) {
+                continue;
+            }
+            if (Boolean.TRUE.equals(item.isDeleted()) || !isFirstRevision(item.getChanges())) {
+                resync();
+                return items.size();
+            }
+            created++;
+        }
+        if (created > 0) {
+            this.store.countCreated(created);
+        }
+        if (!items.isEmpty()) {
+            invalidateCache();
+        }
+        this.lastSeq = result.getLastSeq();
+        return items.size();
+    }
+
+    private void follow() {
+        boolean synced = false;
+        while (this.running) {
+            try {
+                if (!synced || !this.store.isCountingChanges()) {
+                    resync();
+                    synced = true;
+                }
+                poll();
+            } catch (Exception e) {
+                if (!this.running) {
+                    return;
+                }
+                logger.warn("Unable to follow the Cloudant changes feed, retrying in " + this.retryDelayMillis
+                        + " ms", e);
+                synced = false;
+                try {
+                    Thread.sleep(this.retryDelayMillis);
+                } catch (InterruptedException ie) {
+                    // Interrupted by stop
+                }
+            }
+        }
+    }
+
+    private void invalidateCache() {
+        CloudEventStore defaultStore = this.storeFactory.getDefault();
+        if (defaultStore instanceof CachingCloudEventStore) {
+            ((CachingCloudEventStore) defaultStore).invalidate();
+        }
+    }
+
+    private static boolean isFirstRevision(List<Change> changes) {
+        return changes != null && !changes.isEmpty() && changes.get(0).getRev().startsWith("1-");
+    }
+
+}
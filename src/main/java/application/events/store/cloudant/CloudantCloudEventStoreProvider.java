@@ -0,0 +1,55 @@
+package application.events.store.cloudant;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import application.events.store.CloudEventStore;
+import application.events.store.CloudEventStoreFactory;
+import application.events.store.CloudEventStoreProvider;
+import application.events.store.ConditionalOnBackend;
+import application.events.store.WriteBehindCloudEventStore;
+import application.events.store.WriteBehindCloudEventStore.Durability;
+
+/**
+ * Provides the <code>cloudant</code> backend, optionally behind a {@link WriteBehindCloudEventStore}.
+ */
+@Component
+@ConditionalOnBackend(CloudEventStoreFactory.BACKEND_CLOUDANT)
+public class CloudantCloudEventStoreProvider implements CloudEventStoreProvider {
+
+    private final CloudEventStoreCloudant store;
+    private final boolean writeBehindEnabled;
+    private final int maxBatchSize;
+    private final long lingerMillis;
+    private final int queueCapacity;
+    private final Durability durability;
+
+    public CloudantCloudEventStoreProvider(CloudEventStoreCloudant store,
+            @Value("${eventstore.write-behind.enabled:false}") boolean writeBehindEnabled,
+            @Value("${eventstore.write-behind.max-batch-size:100}") int maxBatchSize,
+            @Value("${eventstore.write-behind.linger-ms:20}") long lingerMillis,
+            @Value("${eventstore.write-behind.queue-capacity:10000}") int queueCapacity,
+            @Value("${eventstore.write-behind.durability:FLUSHED}") Durability durability) {
+        this.store = store;
+        this.writeBehindEnabled = writeBehindEnabled;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        this.queueCapacity = queueCapacity;
+        this.durability = durability;
+    }
+
+    @Override
+    public String getName() {
+        return CloudEventStoreFactory.BACKEND_CLOUDANT;
+    }
+
+    @Override
+    public CloudEventStore create() {
+        if (this.writeBehindEnabled) {
+            return new WriteBehindCloudEventStore(this.store, this.maxBatchSize, this.lingerMillis,
+                    this.queueCapacity, this.durability);
+        }
+        return this.store;
+    }
+
+}
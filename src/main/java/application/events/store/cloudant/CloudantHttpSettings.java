@@ -0,0 +1,103 @@
+package application.events.store.cloudant;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.ibm.cloud.cloudant.v1.Cloudant;
+
+import application.events.store.CloudEventStoreFactory;
+import application.events.store.ConditionalOnBackend;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.okhttp3.OkHttpConnectionPoolMetrics;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Tunes the OkHttp client the Cloudant SDK sends requests with, which otherwise uses the SDK defaults.
+ * <p>
+ * The connection pool keeps up to <code>max-idle-connections</code> idle connections open for
+ * <code>keep-alive-ms</code>, so bursts of requests reuse connections rather than opening new ones. Asynchronous
+ * requests are limited to <code>max-requests</code> at once, which should be at least
+ * <code>eventstore.cloudant.max-in-flight</code>; OkHttp's default is 5 per host. The read timeout must be longer
+ * than the changes feed long-poll timeout. HTTP/2 is used when the server offers it over TLS. Request bodies are gzip
+ * compressed, as the SDK does by default, unless <code>gzip</code> is disabled.
+ * <p>
+ * The connection pool and request queue are published as Micrometer gauges tagged with <code>client=cloudant</code>.
+ */
+@Component
+@ConditionalOnBackend(CloudEventStoreFactory.BACKEND_CLOUDANT)
+public class CloudantHttpSettings {
+
+    private static final Tags TAGS = Tags.of("client", "cloudant");
+
+    private final int maxRequests;
+    private final int maxIdleConnections;
+    private final long keepAliveMillis;
+    private final long connectTimeoutMillis;
+    private final long readTimeoutMillis;
+    private final boolean http2;
+    private final boolean gzip;
+    private final MeterRegistry meterRegistry;
+
+    public CloudantHttpSettings(@Value("${eventstore.cloudant.http.max-requests:64}") int maxRequests,
+            @Value("${eventstore.cloudant.http.max-idle-connections:32}") int maxIdleConnections,
+            @Value("${eventstore.cloudant.http.keep-alive-ms:300000}") long keepAliveMillis,
+            @Value("${eventstore.cloudant.http.connect-timeout-ms:10000}") long connectTimeoutMillis,
+            @Value("${eventstore.cloudant.http.read-timeout-ms:60000}") long readTimeoutMillis,
+            @Value("${eventstore.cloudant.http.http2:true}") boolean http2,
+            @Value("${eventstore.cloudant.http.gzip:true}") boolean gzip, MeterRegistry meterRegistry) {
+        if (maxRequests < 1 || maxIdleConnections < 0 || keepAliveMillis < 1 || connectTimeoutMillis < 0
+                || readTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Invalid Cloudant HTTP configuration: maxRequests=" + maxRequests
+                    + ", maxIdleConnections=" + maxIdleConnections + ", keepAliveMillis=" + keepAliveMillis
+                    + ", connectTimeoutMillis=" + connectTimeoutMillis + ", readTimeoutMillis=" + readTimeoutMillis);
+        }
+        this.maxRequests = maxRequests;
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAliveMillis = keepAliveMillis;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.http2 = http2;
+        this.gzip = gzip;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Replaces the client's HTTP client with one built from these settings and registers its gauges.
+     */
+    public void apply(Cloudant client) {
+        // The SDK adds its gzip interceptor to its own client, which is then rebuilt with the settings below
+        client.enableGzipCompression(this.gzip);
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(this.maxRequests);
+        dispatcher.setMaxRequestsPerHost(this.maxRequests);
+        ConnectionPool pool = new ConnectionPool(this.maxIdleConnections, this.keepAliveMillis,
+                TimeUnit.MILLISECONDS);
+        OkHttpClient httpClient = client.getClient().newBuilder().dispatcher(dispatcher).connectionPool(pool)
+                .connectTimeout(this.connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(this.readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .protocols(this.http2 ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : Collections.singletonList(Protocol.HTTP_1_1))
+                .build();
+        client.setClient(httpClient);
+
+        new OkHttpConnectionPoolMetrics(pool, "okhttp.pool", TAGS, this.maxIdleConnections)
+                .bindTo(this.meterRegistry);
+        Gauge.builder("okhttp.dispatcher.calls", dispatcher, Dispatcher::runningCallsCount).tags(TAGS)
+                .tag("state", "running").description("The number of asynchronous requests being sent")
+                .register(this.meterRegistry);
+        Gauge.builder("okhttp.dispatcher.calls", dispatcher, Dispatcher::queuedCallsCount).tags(TAGS)
+                .tag("state", "queued").description("The number of asynchronous requests waiting to be sent")
+                .register(this.meterRegistry);
+    }
+
+}
@@ -0,0 +1,129 @@
+package application.events.store.cloudant;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates document ids that sort by event time, so <code>_all_docs</code> returns events in time order and a time
+ * window is a range of ids.
+ * <p>
+ * Ids are <a href="https://github.com/ulid/spec">ULIDs</a>: the time in milliseconds since the epoch in 10 characters
+ * of Crockford's base 32, followed by 16 characters of random bits. Ids generated for the same millisecond increment
+ * the random bits of the previous one instead, so they keep the order they were generated in. When partitioned by day,
+ * ids are prefixed with the UTC date of the event and <code>:</code>, the partition key of a Cloudant partitioned
+ * database, which keeps them in time order too.
+ */
+public class EventDocumentIds {
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int TIME_LENGTH = 10;
+    private static final int RANDOM_LENGTH = 16;
+    private static final long MAX_TIME = (1L << 48) - 1;
+    private static final long RANDOM_HIGH_MASK = (1L << 16) - 1;
+
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd")
+            .withZone(ZoneOffset.UTC);
+    private static final char PARTITION_SEPARATOR = ':';
+
+    private final boolean partitionByDay;
+
+    /* The time and the 80 random bits, as 16 and 64 bits, of the last id */
+    private long lastTime = -1;
+    private long lastRandomHigh;
+    private long lastRandomLow;
+
+    public EventDocumentIds(boolean partitionByDay) {
+        this.partitionByDay = partitionByDay;
+    }
+
+    public boolean isPartitionedByDay() {
+        return this.partitionByDay;
+    }
+
+    /**
+     * @param timeMillis The event time in milliseconds since the epoch.
+     * @return a new id that sorts after every id for an earlier time
+     */
+    public String next(long timeMillis) {
+        long time = Math.min(Math.max(timeMillis, 0), MAX_TIME);
+        long high;
+        long low;
+        synchronized (this) {
+            if (time == this.lastTime) {
+                this.lastRandomLow++;
+                if (this.lastRandomLow == 0) {
+                    this.lastRandomHigh = (this.lastRandomHigh + 1) & RANDOM_HIGH_MASK;
+                }
+            } else {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                this.lastTime = time;
+                this.lastRandomHigh = random.nextLong() & RANDOM_HIGH_MASK;
+                this.lastRandomLow = random.nextLong();
+            }
+            high = this.lastRandomHigh;
+            low = this.lastRandomLow;
+        }
+
+        StringBuilder id = new StringBuilder(TIME_LENGTH + RANDOM_LENGTH + 9);
+        appendPrefix(id, time);
+        // 80 random bits: the 16 high bits and the top 4 of the low ones, then the other 60 low bits
+        appendBase32(id, (high << 4) | (low >>> 60), 4);
+        appendBase32(id, low & ((1L << 60) - 1), RANDOM_LENGTH - 4);
+        return id.toString();
+    }
+
+    /**
+     * @return an id that sorts before every id for the given time or later, and after every id for an earlier time
+     */
+    public String lowerBound(Instant time) {
+        StringBuilder id = new StringBuilder(TIME_LENGTH + RANDOM_LENGTH + 9);
+        appendPrefix(id, Math.min(Math.max(time.toEpochMilli(), 0), MAX_TIME));
+        for (int i = 0; i < RANDOM_LENGTH; i++) {
+            id.append(ALPHABET[0]);
+        }
+        return id.toString();
+    }
+
+    /**
+     * @return the partition key for events at the given time, or null if ids are not partitioned
+     */
+    public String partition(Instant time) {
+        return this.partitionByDay ? PARTITION_FORMAT.format(time) : null;
+    }
+
+    /**
+     * @return the time encoded in an id generated by this class, or null if the id was not
+     */
+    public static Instant timeOf(String id) {
+        int start = id.indexOf(PARTITION_SEPARATOR) + 1;
+        if (id.length() - start != TIME_LENGTH + RANDOM_LENGTH) {
+            return null;
+        }
+        long time = 0;
+        for (int i = start; i < start + TIME_LENGTH; i++) {
+            int digit = Arrays.binarySearch(ALPHABET, id.charAt(i));
+            if (digit < 0) {
+                return null;
+            }
+            time = (time << 5) | digit;
+        }
+        return time <= MAX_TIME ? Instant.ofEpochMilli(time) : null;
+    }
+
+    private void appendPrefix(StringBuilder id, long time) {
+        if (this.partitionByDay) {
+            id.append(PARTITION_FORMAT.format(Instant.ofEpochMilli(time))).append(PARTITION_SEPARATOR);
+        }
+        appendBase32(id, time, TIME_LENGTH);
+    }
+
+    private static void appendBase32(StringBuilder id, long value, int length) {
+        for (int shift = (length - 1) * 5; shift >= 0; shift -= 5) {
+            id.append(ALPHABET[(int) (value >>> shift) & 31]);
+        }
+    }
+
+}
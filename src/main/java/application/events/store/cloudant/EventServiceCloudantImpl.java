@@ -2,29 +2,66 @@ package application.events.store.cloudant;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import com.ibm.cloud.cloudant.v1.Cloudant;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Component;
 
+import application.events.EventMetrics;
 import application.events.EventService;
+import application.events.PurgeJob;
 import application.events.store.CloudEventStore;
 import application.events.store.CloudEventStoreFactory;
+import application.events.store.EventPage;
+import application.events.store.EventQuery;
+import application.events.store.PurgeMode;
 import io.cloudevents.CloudEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 
 /**
  * Cloudant-backed implementation of the event service interface.
+ * <p>
+ * The time taken by each read from and write to the event store is recorded in the <code>eventstore.store</code>
+ * timers, tagged by operation, by the exception it failed with, and for writes by event type and source.
  */
 @Component
 public class EventServiceCloudantImpl implements EventService {
 
+    private static final Logger logger = LoggerFactory.getLogger(EventServiceCloudantImpl.class);
+
+    private static final String TAG_OPERATION = "operation";
+
     private final Map<String, String> env = System.getenv();
 
     private final CloudEventStore eventStore;
     private final Cloudant cloudant;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService purgeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "event-store-purge");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    public EventServiceCloudantImpl(CloudEventStoreFactory cesFactory, Cloudant cloudant) {
-        this.cloudant = cloudant;
+    private PurgeJob purgeJob;
+
+    /**
+     * @param cloudant Not available unless the Cloudant event store backend is selected.
+     */
+    public EventServiceCloudantImpl(CloudEventStoreFactory cesFactory, ObjectProvider<Cloudant> cloudant,
+            MeterRegistry meterRegistry) {
+        this.cloudant = cloudant.getIfAvailable();
+        this.meterRegistry = meterRegistry;
         this.eventStore = cesFactory.getDefault();
     }
 
@@ -35,23 +72,115 @@ public class EventServiceCloudantImpl implements EventService {
     }
 
     @Override
-    public List<CloudEvent<?, ?>> getEvents() throws Exception {
-        return this.eventStore.getEvents();
+    public EventPage getEvents(int limit, String bookmark, boolean descending) throws Exception {
+        return record(EventMetrics.STORE_READS, Tags.of(TAG_OPERATION, "page"),
+                () -> this.eventStore.getEvents(limit, bookmark, descending));
+    }
+
+    @Override
+    public EventPage queryEvents(EventQuery query) throws Exception {
+        return record(EventMetrics.STORE_READS, Tags.of(TAG_OPERATION, "query"),
+                () -> this.eventStore.queryEvents(query));
+    }
+
+    @Override
+    public void addEvent(CloudEvent event) throws Exception {
+        record(EventMetrics.STORE_WRITES, Tags.of(TAG_OPERATION, "add"), () -> {
+            this.eventStore.addEvent(event);
+            return null;
+        });
+        written(EventMetrics.eventTags(event), "add", 1);
+    }
+
+    @Override
+    public void addEvents(List<CloudEvent> events) throws Exception {
+        record(EventMetrics.STORE_WRITES, Tags.of(TAG_OPERATION, "add_batch"), () -> {
+            this.eventStore.addEvents(events);
+            return null;
+        });
+        written(EventMetrics.eventTags(events), "add_batch", events.size());
+    }
+
+    @Override
+    public CompletableFuture<Void> addEventAsync(CloudEvent event) {
+        long start = System.nanoTime();
+        return this.eventStore.addEventAsync(event).whenComplete((ignored, error) -> {
+            timer(EventMetrics.STORE_WRITES, Tags.of(TAG_OPERATION, "add"), error).record(System.nanoTime() - start,
+                    TimeUnit.NANOSECONDS);
+            if (error == null) {
+                written(EventMetrics.eventTags(event), "add", 1);
+            }
+        });
     }
 
     @Override
-    public void addEvent(CloudEvent<?, ?> event) throws Exception {
-        this.eventStore.addEvent(event);
+    public CompletableFuture<Void> addEventsAsync(List<CloudEvent> events) {
+        long start = System.nanoTime();
+        return this.eventStore.addEventsAsync(events).whenComplete((ignored, error) -> {
+            timer(EventMetrics.STORE_WRITES, Tags.of(TAG_OPERATION, "add_batch"), error)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (error == null) {
+                written(EventMetrics.eventTags(events), "add_batch", events.size());
+            }
+        });
     }
 
     @Override
-    public void removeAllEvents() throws Exception {
-        this.eventStore.removeAllEvents();
+    public synchronized PurgeJob startPurge(PurgeMode mode) {
+        if (this.purgeJob != null && this.purgeJob.isRunning()) {
+            return this.purgeJob;
+        }
+        PurgeJob job = new PurgeJob(mode);
+        this.purgeJob = job;
+        this.purgeExecutor.execute(() -> {
+            try {
+                this.eventStore.removeAllEvents(mode, job::addDeletedEvents);
+                job.complete();
+                logger.info(job.toString());
+            } catch (Exception e) {
+                logger.error("Unable to remove all events", e);
+                job.fail(e);
+            }
+        });
+        return job;
+    }
+
+    @Override
+    public synchronized PurgeJob getPurgeJob() {
+        return this.purgeJob;
     }
 
     @Override
     public long getNumEvents() throws Exception {
-        return this.eventStore.getNumEvents();
+        return record(EventMetrics.STORE_READS, Tags.of(TAG_OPERATION, "count"), this.eventStore::getNumEvents);
+    }
+
+    private <T> T record(String name, Tags tags, Callable<T> operation) throws Exception {
+        long start = System.nanoTime();
+        Exception error = null;
+        try {
+            return operation.call();
+        } catch (Exception e) {
+            error = e;
+            throw e;
+        } finally {
+            timer(name, tags, error).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(String name, Tags tags, Throwable error) {
+        return Timer.builder(name).tags(tags).tag(EventMetrics.TAG_EXCEPTION, EventMetrics.exception(error))
+                .publishPercentileHistogram().description("The time taken by event store operations")
+                .register(this.meterRegistry);
+    }
+
+    /*
+     * Counts the events written by type and source, which are left off the timers to keep their histograms few.
+     */
+    private void written(Tags eventTags, String operation, int events) {
+        Counter.builder(EventMetrics.STORE_EVENTS).tags(eventTags).tag(TAG_OPERATION, operation)
+                .description("The number of events written to the event store").register(this.meterRegistry)
+                .increment(events);
     }
 
     @Override
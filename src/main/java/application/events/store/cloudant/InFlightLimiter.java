@@ -0,0 +1,90 @@
+package application.events.store.cloudant;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import application.events.store.EventStoreFullException;
+
+/**
+ * Limits the number of asynchronous requests in flight. Requests over the limit wait in a bounded queue, without
+ * holding a thread, and start as earlier requests complete; requests over the queue limit fail with
+ * {@link EventStoreFullException}.
+ */
+final class InFlightLimiter {
+
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final Deque<Runnable> queued = new ArrayDeque<>();
+    private int inFlight;
+
+    InFlightLimiter(int maxInFlight, int maxQueued) {
+        if (maxInFlight < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("Invalid in-flight limits: maxInFlight=" + maxInFlight
+                    + ", maxQueued=" + maxQueued);
+        }
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Starts the request now if there is room, otherwise once there is.
+     */
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            CompletableFuture<T> response;
+            try {
+                response = request.get();
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            response.whenComplete((value, error) -> {
+                release();
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        };
+        synchronized (this) {
+            if (this.inFlight < this.maxInFlight) {
+                this.inFlight++;
+            } else if (this.queued.size() < this.maxQueued) {
+                this.queued.add(start);
+                return result;
+            } else {
+                return CompletableFuture.failedFuture(new EventStoreFullException("Too many Cloudant requests ("
+                        + this.inFlight + " in flight, " + this.queued.size() + " queued)"));
+            }
+        }
+        start.run();
+        return result;
+    }
+
+    synchronized int getInFlight() {
+        return this.inFlight;
+    }
+
+    synchronized int getQueued() {
+        return this.queued.size();
+    }
+
+    /*
+     * Hands the slot of a completed request to the next queued one, if any.
+     */
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = this.queued.poll();
+            if (next == null) {
+                this.inFlight--;
+                return;
+            }
+        }
+        next.run();
+    }
+
+}
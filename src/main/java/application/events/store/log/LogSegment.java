@@ -0,0 +1,328 @@
+package application.events.store.log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A file of consecutive event records, starting at a base offset, mapped into memory.
+ * <p>
+ * Each record is a 4 byte payload length, the 4 byte CRC-32C of the payload and the payload. A zero length marks the
+ * end of the records, which is where the zero-filled remainder of a preallocated segment starts. Every
+ * <code>indexInterval</code>th record's file position is kept in a sparse in-memory index, so a record is found by
+ * scanning at most <code>indexInterval - 1</code> records. When a segment is sealed its index is written next to it, so
+ * recovery does not need to scan sealed segments.
+ * <p>
+ * Only one thread appends; any number of threads read. Readers only look at records below the published size and
+ * count, which are written after the record bytes.
+ */
+final class LogSegment {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogSegment.class);
+
+    static final int HEADER_BYTES = 8;
+
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".index";
+
+    private final long baseOffset;
+    private final Path logFile;
+    private final Path indexFile;
+    private final int indexInterval;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private volatile int size;
+    private volatile int count;
+    private volatile int[] index;
+    private int forced;
+
+    private LogSegment(Path directory, long baseOffset, int capacity, int indexInterval) throws IOException {
+        this.baseOffset = baseOffset;
+        this.logFile = directory.resolve(fileName(baseOffset, LOG_SUFFIX));
+        this.indexFile = directory.resolve(fileName(baseOffset, INDEX_SUFFIX));
+        this.indexInterval = indexInterval;
+        this.channel = FileChannel.open(this.logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        // Mapping past the end of the file extends it, so the whole segment is allocated up front
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.max(capacity, this.channel.size()));
+        this.index = new int[16];
+    }
+
+    /**
+     * Creates a new, empty segment.
+     */
+    static LogSegment create(Path directory, long baseOffset, int capacity, int indexInterval) throws IOException {
+        return new LogSegment(directory, baseOffset, capacity, indexInterval);
+    }
+
+    /**
+     * Opens a segment that is no longer appended to, using its saved index when it matches the file. A segment that
+     * was not sealed, because the process stopped while rolling to the next one, is recovered and sealed.
+     *
+     * @throws IllegalStateException if the segment holds a record that is not intact
+     */
+    static LogSegment openSealed(Path directory, long baseOffset, int indexInterval) throws IOException {
+        LogSegment segment = new LogSegment(directory, baseOffset, 0, indexInterval);
+        if (!segment.loadIndex()) {
+            int end = segment.recover();
+            if (!segment.isZero(end)) {
+                throw new IllegalStateException("Corrupt record at position " + end + " of sealed log segment "
+                        + segment.logFile);
+            }
+            segment.seal();
+        }
+        return segment;
+    }
+
+    /**
+     * Opens the segment that was being appended to, and truncates any record that was only partly written when the
+     * process stopped.
+     */
+    static LogSegment openActive(Path directory, long baseOffset, int capacity, int indexInterval)
+            throws IOException {
+        LogSegment segment = new LogSegment(directory, baseOffset, capacity, indexInterval);
+        Files.deleteIfExists(segment.indexFile);
+        int end = segment.recover();
+        if (!segment.isZero(end)) {
+            logger.warn("Truncating torn record at position " + end + " of log segment " + segment.logFile);
+            segment.zero(end, segment.buffer.capacity());
+            segment.buffer.force();
+        }
+        return segment;
+    }
+
+    static boolean isLogFile(Path file) {
+        return file.getFileName().toString().endsWith(LOG_SUFFIX);
+    }
+
+    static long baseOffsetOf(Path logFile) {
+        String name = logFile.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length()));
+    }
+
+    long getBaseOffset() {
+        return this.baseOffset;
+    }
+
+    /**
+     * @return the offset after the last record
+     */
+    long getEndOffset() {
+        return this.baseOffset + this.count;
+    }
+
+    int getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return the number of bytes taken by the records
+     */
+    int getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return when the file was last written to, which for a sealed segment is when its last record was appended or,
+     *         if it had to be recovered, when it was sealed
+     */
+    Instant getLastModified() throws IOException {
+        return Files.getLastModifiedTime(this.logFile).toInstant();
+    }
+
+    boolean hasRoomFor(int payloadLength) {
+        return this.buffer.capacity() - this.size >= HEADER_BYTES + payloadLength;
+    }
+
+    /**
+     * Appends a record. The caller must have checked {@link #hasRoomFor(int)}.
+     */
+    void append(byte[] payload) {
+        int position = this.size;
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        this.buffer.putInt(position + 4, (int) crc.getValue());
+        this.buffer.put(position + HEADER_BYTES, payload);
+        // The length goes in last, so a record is never seen with a length but without its bytes
+        this.buffer.putInt(position, payload.length);
+        addToIndex(this.count, position);
+        this.size = position + HEADER_BYTES + payload.length;
+        this.count++;
+    }
+
+    /**
+     * Writes the appended records through to the file.
+     */
+    synchronized void force() {
+        int end = this.size;
+        if (end > this.forced) {
+            this.buffer.force(this.forced, end - this.forced);
+            this.forced = end;
+        }
+    }
+
+    /**
+     * Reads up to <code>max</code> records starting at the given offset, which must be in this segment.
+     */
+    void read(long offset, int max, RecordConsumer consumer) {
+        int count = this.count;
+        int relative = (int) (offset - this.baseOffset);
+        int[] index = this.index;
+        int position = index[relative / this.indexInterval];
+        for (int i = relative - relative % this.indexInterval; i < relative; i++) {
+            position += HEADER_BYTES + this.buffer.getInt(position);
+        }
+        for (int i = relative; i < count && i < relative + max; i++) {
+            int length = this.buffer.getInt(position);
+            byte[] payload = new byte[length];
+            this.buffer.get(position + HEADER_BYTES, payload);
+            consumer.accept(this.baseOffset + i, payload);
+            position += HEADER_BYTES + length;
+        }
+    }
+
+    /**
+     * Forces the records to the file, truncates the file to them and saves the index.
+     */
+    void seal() throws IOException {
+        force();
+        this.channel.truncate(this.size);
+        Path tmp = this.indexFile.resolveSibling(this.indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            int entries = indexEntries(this.count);
+            out.writeInt(this.count);
+            out.writeInt(this.size);
+            for (int i = 0; i < entries; i++) {
+                out.writeInt(this.index[i]);
+            }
+        }
+        Files.move(tmp, this.indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void close() throws IOException {
+        force();
+        this.channel.close();
+    }
+
+    void delete() throws IOException {
+        this.channel.close();
+        Files.deleteIfExists(this.logFile);
+        Files.deleteIfExists(this.indexFile);
+    }
+
+    /*
+     * Scans the records from the start, rebuilding the index, and stops at the first one that is not intact.
+     */
+    private int recover() {
+        int position = 0;
+        int records = 0;
+        int capacity = this.buffer.capacity();
+        CRC32C crc = new CRC32C();
+        while (capacity - position >= HEADER_BYTES) {
+            int length = this.buffer.getInt(position);
+            if (length <= 0 || length > capacity - position - HEADER_BYTES) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            this.buffer.get(position + HEADER_BYTES, payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != this.buffer.getInt(position + 4)) {
+                break;
+            }
+            addToIndex(records++, position);
+            position += HEADER_BYTES + length;
+        }
+        this.size = position;
+        this.forced = position;
+        this.count = records;
+        return position;
+    }
+
+    private boolean loadIndex() throws IOException {
+        if (!Files.exists(this.indexFile)) {
+            return false;
+        }
+        try (InputStream file = Files.newInputStream(this.indexFile);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            int records = in.readInt();
+            int bytes = in.readInt();
+            if (bytes != this.buffer.capacity()) {
+                return false;
+            }
+            int[] positions = new int[Math.max(indexEntries(records), 1)];
+            for (int i = 0; i < indexEntries(records); i++) {
+                positions[i] = in.readInt();
+            }
+            this.index = positions;
+            this.size = bytes;
+            this.forced = bytes;
+            this.count = records;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void addToIndex(int relative, int position) {
+        if (relative % this.indexInterval != 0) {
+            return;
+        }
+        int entry = relative / this.indexInterval;
+        if (entry == this.index.length) {
+            // Readers read the count before the index, so they never see a count without the entries below it
+            this.index = Arrays.copyOf(this.index, entry * 2);
+        }
+        this.index[entry] = position;
+    }
+
+    private int indexEntries(int records) {
+        return (records + this.indexInterval - 1) / this.indexInterval;
+    }
+
+    private boolean isZero(int from) {
+        for (int i = from; i < this.buffer.capacity(); i++) {
+            if (this.buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void zero(int from, int to) {
+        byte[] zeros = new byte[Math.min(to - from, 64 * 1024)];
+        for (int position = from; position < to; position += zeros.length) {
+            this.buffer.put(position, zeros, 0, Math.min(zeros.length, to - position));
+        }
+    }
+
+    private static String fileName(long baseOffset, String suffix) {
+        return String.format("%020d%s", baseOffset, suffix);
+    }
+
+    /**
+     * Receives records read from a segment.
+     */
+    @FunctionalInterface
+    interface RecordConsumer {
+        void accept(long offset, byte[] payload);
+    }
+
+}
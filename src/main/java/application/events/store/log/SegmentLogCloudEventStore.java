@@ -0,0 +1,363 @@
+package application.events.store.log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import application.SBApplicationConfig;
+import application.events.CloudEventUnmarshaller;
+import application.events.store.CloudEventStore;
+import application.events.store.EventPage;
+import application.events.store.PurgeMode;
+import application.events.store.RetentionPolicy;
+import application.events.store.cloudant.CloudEventDocumentWriter;
+import io.cloudevents.CloudEvent;
+
+/**
+ * A cloud event store that appends events to a log of memory-mapped segment files in a local directory. Events
+ * survive restarts of the process, so this backend suits a single instance that needs durable storage without
+ * Cloudant.
+ * <p>
+ * Every event is given the next offset and written as one record, in the same JSON format as the Cloudant documents.
+ * When the active segment has no room for a record it is sealed and a new segment starts at the next offset. Writers
+ * append under a lock and then wait until their records have been forced to disk. Forcing is shared: the first waiting
+ * writer forces everything appended so far while the others wait for it, so concurrent writers are made durable by one
+ * <code>msync</code>. Readers do not lock and may see records that have been appended but not forced yet.
+ * <p>
+ * On startup any record at the end of the active segment that was only partly written is truncated. Bookmarks are
+ * offsets, which the sparse index of each segment turns into file positions.
+ * <p>
+ * Retention removes whole sealed segments, oldest first.
+ */
+public class SegmentLogCloudEventStore implements CloudEventStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentLogCloudEventStore.class);
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int indexInterval;
+    private final CloudEventDocumentWriter documentWriter;
+
+    private final ConcurrentSkipListMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private final Object appendLock = new Object();
+    private LogSegment active;
+    /* The offset the next event gets */
+    private volatile long nextOffset;
+    /* Events with lower offsets have been purged */
+    private volatile long firstOffset;
+
+    private final Object syncLock = new Object();
+    private long durableOffset;
+    private boolean syncing;
+
+    /**
+     * Opens the log in the given directory, creating it if needed, and recovers the active segment.
+     *
+     * @param segmentBytes  The size of each segment file. No event can be larger than this.
+     * @param indexInterval The number of records between index entries.
+     */
+    public SegmentLogCloudEventStore(Path directory, int segmentBytes, int indexInterval) throws IOException {
+        if (segmentBytes <= LogSegment.HEADER_BYTES) {
+            throw new IllegalArgumentException("Invalid log segment size: " + segmentBytes);
+        }
+        if (indexInterval < 1) {
+            throw new IllegalArgumentException("Invalid log index interval: " + indexInterval);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.indexInterval = indexInterval;
+        this.documentWriter = new CloudEventDocumentWriter(SBApplicationConfig.getCustomGsonBuilder().create());
+
+        Files.createDirectories(directory);
+        List<Path> logFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            logFiles = files.filter(LogSegment::isLogFile).sorted().collect(Collectors.toList());
+        }
+        for (int i = 0; i < logFiles.size() - 1; i++) {
+            long baseOffset = LogSegment.baseOffsetOf(logFiles.get(i));
+            this.segments.put(baseOffset, LogSegment.openSealed(directory, baseOffset, indexInterval));
+        }
+        if (logFiles.isEmpty()) {
+            this.active = LogSegment.create(directory, 0, segmentBytes, indexInterval);
+        } else {
+            long baseOffset = LogSegment.baseOffsetOf(logFiles.get(logFiles.size() - 1));
+            this.active = LogSegment.openActive(directory, baseOffset, segmentBytes, indexInterval);
+        }
+        this.segments.put(this.active.getBaseOffset(), this.active);
+        this.firstOffset = this.segments.firstKey();
+        this.nextOffset = this.active.getEndOffset();
+        this.durableOffset = this.nextOffset;
+        logger.info("Opened event log " + directory + " with " + getNumEvents() + " events in "
+                + this.segments.size() + " segments");
+    }
+
+    @Override
+    public EventPage getEvents(int limit, String bookmark, boolean descending) {
+        long end = this.nextOffset;
+        long first = this.firstOffset;
+        if (descending) {
+            long last = bookmark != null ? Math.min(decodeBookmark(bookmark), end - 1) : end - 1;
+            long from = Math.max(first, last - limit + 1);
+            List<CloudEvent> events = read(from, last + 1);
+            Collections.reverse(events);
+            return new EventPage(events, from > first ? encodeBookmark(from - 1) : null);
+        }
+        long from = bookmark != null ? Math.max(decodeBookmark(bookmark), first) : first;
+        long to = from + Math.min(limit, Math.max(end - from, 0));
+        return new EventPage(read(from, to), to < end ? encodeBookmark(to) : null);
+    }
+
+    /**
+     * @return the number of events in the log, including any that are still being forced to disk
+     */
+    @Override
+    public long getNumEvents() {
+        return this.nextOffset - this.firstOffset;
+    }
+
+    @Override
+    public void addEvent(CloudEvent event) throws Exception {
+        addEvents(Collections.singletonList(event));
+    }
+
+    /**
+     * Appends the batch under consecutive offsets and returns once all of it has been forced to disk.
+     */
+    @Override
+    public void addEvents(List<CloudEvent> events) throws Exception {
+        if (events.isEmpty()) {
+            return;
+        }
+        // Serialize outside the lock so writers only hold it while copying bytes
+        List<byte[]> records = new ArrayList<>(events.size());
+        for (CloudEvent event : events) {
+            byte[] record;
+            try (InputStream in = this.documentWriter.toDocument(event)) {
+                record = in.readAllBytes();
+            }
+            if (record.length > this.segmentBytes - LogSegment.HEADER_BYTES) {
+                throw new IllegalArgumentException("Event " + event.getId() + " is larger than the log segment size ("
+                        + this.segmentBytes + " bytes)");
+            }
+            records.add(record);
+        }
+
+        long end;
+        synchronized (this.appendLock) {
+            for (byte[] record : records) {
+                if (!this.active.hasRoomFor(record.length)) {
+                    roll();
+                }
+                this.active.append(record);
+            }
+            end = this.active.getEndOffset();
+            this.nextOffset = end;
+        }
+        awaitDurable(end);
+    }
+
+    /**
+     * Deletes every segment file. Both purge modes take constant time per segment. Offsets keep increasing, so
+     * bookmarks from before the purge do not return newer events twice.
+     */
+    @Override
+    public void removeAllEvents(PurgeMode mode, LongConsumer progress) throws IOException {
+        synchronized (this.appendLock) {
+            long end = this.nextOffset;
+            for (LogSegment segment : this.segments.values()) {
+                segment.delete();
+                this.segments.remove(segment.getBaseOffset());
+                if (segment.getCount() > 0) {
+                    progress.accept(segment.getCount());
+                }
+            }
+            // An empty active segment has the same base offset, so it is replaced only after being deleted
+            this.active = LogSegment.create(this.directory, end, this.segmentBytes, this.indexInterval);
+            this.segments.put(end, this.active);
+            this.firstOffset = end;
+        }
+    }
+
+    /**
+     * Deletes the oldest sealed segments while the policy does not keep them: while the last record of the oldest is
+     * older than the maximum age, or while the log holds more events or bytes than the maximum. Only whole segments
+     * are deleted, so up to a segment's worth fewer events than the maximum may be left, and the active segment is
+     * always kept. Deleting a segment takes constant time, so the policy's rate does not apply.
+     */
+    @Override
+    public void removeExpiredEvents(RetentionPolicy policy, LongConsumer progress) throws IOException {
+        Instant cutoff = policy.getMaxAge().isZero() ? null : Instant.now().minus(policy.getMaxAge());
+        while (true) {
+            LogSegment segment;
+            synchronized (this.appendLock) {
+                segment = this.segments.firstEntry().getValue();
+                if (segment == this.active || !isExpired(segment, policy, cutoff)) {
+                    return;
+                }
+                // Readers skip the segment before its file goes
+                this.firstOffset = segment.getEndOffset();
+                this.segments.remove(segment.getBaseOffset());
+                segment.delete();
+            }
+            logger.info("Removed expired log segment at offset " + segment.getBaseOffset());
+            if (segment.getCount() > 0) {
+                progress.accept(segment.getCount());
+            }
+        }
+    }
+
+    @Override
+    public boolean supportsRetention(RetentionPolicy policy) {
+        return true;
+    }
+
+    private boolean isExpired(LogSegment oldest, RetentionPolicy policy, Instant cutoff) throws IOException {
+        if (cutoff != null && oldest.getLastModified().isBefore(cutoff)) {
+            return true;
+        }
+        if (policy.getMaxEvents() > 0 && getNumEvents() > policy.getMaxEvents()) {
+            return true;
+        }
+        if (policy.getMaxBytes() > 0) {
+            long bytes = 0;
+            for (LogSegment segment : this.segments.values()) {
+                bytes += segment.getSize();
+            }
+            return bytes > policy.getMaxBytes();
+        }
+        return false;
+    }
+
+    @Override
+    public void ping() {
+        // Always reachable
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (this.appendLock) {
+            for (LogSegment segment : this.segments.values()) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    logger.warn("Unable to close log segment " + segment.getBaseOffset(), e);
+                }
+            }
+        }
+    }
+
+    /*
+     * Called with the append lock held. Sealing forces the old segment, so its records are durable once the new one
+     * takes over.
+     */
+    private void roll() throws IOException {
+        long baseOffset = this.active.getEndOffset();
+        this.active.seal();
+        this.active = LogSegment.create(this.directory, baseOffset, this.segmentBytes, this.indexInterval);
+        this.segments.put(baseOffset, this.active);
+        logger.info("Rolled event log to a new segment at offset " + baseOffset);
+    }
+
+    /*
+     * Waits until the records below the given offset have been forced to disk. If no other writer is forcing, this one
+     * forces everything appended so far, including the records of writers that arrived after it.
+     */
+    private void awaitDurable(long offset) throws InterruptedException {
+        while (true) {
+            synchronized (this.syncLock) {
+                while (this.durableOffset < offset && this.syncing) {
+                    this.syncLock.wait();
+                }
+                if (this.durableOffset >= offset) {
+                    return;
+                }
+                this.syncing = true;
+            }
+
+            long target;
+            LogSegment segment;
+            synchronized (this.appendLock) {
+                target = this.nextOffset;
+                segment = this.active;
+            }
+            boolean forced = false;
+            try {
+                segment.force();
+                forced = true;
+            } finally {
+                synchronized (this.syncLock) {
+                    if (forced) {
+                        this.durableOffset = Math.max(this.durableOffset, target);
+                    }
+                    this.syncing = false;
+                    this.syncLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /*
+     * Reads the events with offsets in [from, to), which may span segments.
+     */
+    private List<CloudEvent> read(long from, long to) {
+        List<CloudEvent> events = new ArrayList<>((int) Math.max(to - from, 0));
+        if (from >= to) {
+            return events;
+        }
+        Long start = this.segments.floorKey(from);
+        if (start == null) {
+            return events;
+        }
+        for (LogSegment segment : this.segments.tailMap(start).values()) {
+            long offset = from + events.size();
+            if (offset >= to) {
+                break;
+            }
+            if (offset < segment.getEndOffset()) {
+                segment.read(offset, (int) (to - offset),
+                        (recordOffset, payload) -> events.add(toEvent(recordOffset, payload)));
+            }
+        }
+        return events;
+    }
+
+    /*
+     * A record that does not hold an event is the store's fault, not the client's
+     */
+    private static CloudEvent toEvent(long offset, byte[] record) {
+        try {
+            return CloudEventUnmarshaller.structured(record);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid event log record at offset " + offset + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String encodeBookmark(long offset) {
+        return Long.toString(offset, Character.MAX_RADIX);
+    }
+
+    private static long decodeBookmark(String bookmark) {
+        try {
+            long offset = Long.parseLong(bookmark, Character.MAX_RADIX);
+            if (offset < 0) {
+                throw new IllegalArgumentException("Invalid bookmark: " + bookmark);
+            }
+            return offset;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid bookmark: " + bookmark, e);
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package application.events.store.log;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import application.events.store.CloudEventStore;
+import application.events.store.CloudEventStoreFactory;
+import application.events.store.CloudEventStoreProvider;
+
+/**
+ * Provides the <code>log</code> backend.
+ */
+@Component
+public class SegmentLogCloudEventStoreProvider implements CloudEventStoreProvider {
+
+    private final String directory;
+    private final int segmentBytes;
+    private final int indexInterval;
+
+    public SegmentLogCloudEventStoreProvider(@Value("${eventstore.log.directory:eventstore-log}") String directory,
+            @Value("${eventstore.log.segment-bytes:67108864}") int segmentBytes,
+            @Value("${eventstore.log.index-interval:64}") int indexInterval) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.indexInterval = indexInterval;
+    }
+
+    @Override
+    public String getName() {
+        return CloudEventStoreFactory.BACKEND_LOG;
+    }
+
+    /**
+     * Concurrent writers already share each fsync, which is what write-behind batching would buy.
+     */
+    @Override
+    public CloudEventStore create() throws IOException {
+        return new SegmentLogCloudEventStore(Paths.get(this.directory), this.segmentBytes, this.indexInterval);
+    }
+
+}
@@ -0,0 +1,267 @@
+package application.events.store.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongConsumer;
+
+import application.events.store.CloudEventStore;
+import application.events.store.EventPage;
+import application.events.store.EventStoreFullException;
+import application.events.store.PurgeMode;
+import application.events.store.RetentionPolicy;
+import io.cloudevents.CloudEvent;
+
+/**
+ * A cloud event store that keeps the most recent events in a bounded ring buffer in memory. Events are lost when the
+ * process stops, so this backend is meant for local development, tests, ephemeral sinks and measuring the overhead of
+ * the rest of the application.
+ * <p>
+ * Every event is given the next sequence number and stored in the slot that number maps to. Writers never lock: a
+ * sequence number is claimed with a single atomic increment, or compare-and-set when full buffers reject events, and
+ * the slot is replaced unless a writer with a newer sequence number got there first. Readers see the events whose
+ * sequence numbers are still in the window of the last <code>capacity</code> events, skipping slots that have already
+ * been overwritten or not been filled yet. Bookmarks are sequence numbers.
+ * <p>
+ * Retention removes events by age, as of when they were added, and by count. The size of events is not measured.
+ */
+public class InMemoryCloudEventStore implements CloudEventStore {
+
+    /**
+     * What happens when an event is added to a full buffer.
+     */
+    public enum Eviction {
+        /** Overwrite the oldest event. */
+        DROP_OLDEST,
+        /** Reject the new event with {@link EventStoreFullException}. */
+        REJECT
+    }
+
+    private final int capacity;
+    private final Eviction eviction;
+    private final AtomicReferenceArray<Slot> slots;
+
+    /* The sequence number the next event gets */
+    private final AtomicLong next = new AtomicLong();
+    /* Events with lower sequence numbers have been purged */
+    private final AtomicLong start = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    public InMemoryCloudEventStore(int capacity, Eviction eviction) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid in-memory event store capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.eviction = eviction;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    @Override
+    public EventPage getEvents(int limit, String bookmark, boolean descending) {
+        long end = this.next.get();
+        long first = firstSequence(end);
+        List<CloudEvent> events = new ArrayList<>(Math.min(limit, this.capacity));
+        if (descending) {
+            long seq = bookmark != null ? Math.min(decodeBookmark(bookmark), end - 1) : end - 1;
+            for (; seq >= first && events.size() < limit; seq--) {
+                addIfPresent(seq, events);
+            }
+            return new EventPage(events, seq >= first ? encodeBookmark(seq) : null);
+        }
+        long seq = bookmark != null ? Math.max(decodeBookmark(bookmark), first) : first;
+        for (; seq < end && events.size() < limit; seq++) {
+            addIfPresent(seq, events);
+        }
+        return new EventPage(events, seq < end ? encodeBookmark(seq) : null);
+    }
+
+    /**
+     * @return the number of events in the buffer, including any whose writes are still in progress
+     */
+    @Override
+    public long getNumEvents() {
+        long end = this.next.get();
+        return end - firstSequence(end);
+    }
+
+    @Override
+    public void addEvent(CloudEvent event) throws Exception {
+        store(claim(1), event, System.currentTimeMillis());
+    }
+
+    /**
+     * Adds the batch under consecutive sequence numbers. With {@link Eviction#REJECT} either the whole batch fits or
+     * none of it is added.
+     */
+    @Override
+    public void addEvents(List<CloudEvent> events) throws Exception {
+        if (events.isEmpty()) {
+            return;
+        }
+        long seq = claim(events.size());
+        long addedMillis = System.currentTimeMillis();
+        for (CloudEvent event : events) {
+            store(seq++, event, addedMillis);
+        }
+    }
+
+    /**
+     * Empties the buffer. Both purge modes take constant time.
+     */
+    @Override
+    public void removeAllEvents(PurgeMode mode, LongConsumer progress) {
+        long end = this.next.get();
+        long first = firstSequence(end);
+        this.start.accumulateAndGet(end, Math::max);
+        if (end > first) {
+            progress.accept(end - first);
+        }
+        // Release the events for garbage collection; slots written concurrently with newer events are kept
+        for (int i = 0; i < this.capacity; i++) {
+            Slot slot = this.slots.get(i);
+            if (slot != null && slot.seq < end) {
+                this.slots.compareAndSet(i, slot, null);
+            }
+        }
+    }
+
+    /**
+     * Moves the start of the buffer past the events added before the maximum age and those beyond the maximum number,
+     * which takes constant time per event, so the policy's rate does not apply. Age trimming stops at an event whose
+     * write is still in progress.
+     *
+     * @throws UnsupportedOperationException if the policy limits the size of the events
+     */
+    @Override
+    public void removeExpiredEvents(RetentionPolicy policy, LongConsumer progress) {
+        if (!supportsRetention(policy)) {
+            throw new UnsupportedOperationException("The in-memory event store does not measure the size of events");
+        }
+        long end = this.next.get();
+        long first = firstSequence(end);
+        long keep = first;
+        if (policy.getMaxEvents() > 0) {
+            keep = Math.max(keep, end - policy.getMaxEvents());
+        }
+        if (!policy.getMaxAge().isZero()) {
+            long cutoff = System.currentTimeMillis() - policy.getMaxAge().toMillis();
+            for (; keep < end; keep++) {
+                Slot slot = this.slots.get(index(keep));
+                // A newer sequence number in the slot means the event has already been overwritten
+                if (slot == null || slot.seq < keep || slot.seq == keep && slot.addedMillis >= cutoff) {
+                    break;
+                }
+            }
+        }
+        long previous = this.start.getAndAccumulate(keep, Math::max);
+        long from = Math.max(previous, first);
+        if (keep > from) {
+            progress.accept(keep - from);
+        }
+        for (long seq = from; seq < keep; seq++) {
+            Slot slot = this.slots.get(index(seq));
+            if (slot != null && slot.seq == seq) {
+                this.slots.compareAndSet(index(seq), slot, null);
+            }
+        }
+    }
+
+    @Override
+    public boolean supportsRetention(RetentionPolicy policy) {
+        return policy.getMaxBytes() == 0;
+    }
+
+    @Override
+    public void ping() {
+        // Always reachable
+    }
+
+    @Override
+    public void shutdown() {
+        // Nothing to release
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return the number of events overwritten to make room for newer ones since the store was created
+     */
+    public long getEvictedEvents() {
+        return this.evicted.get();
+    }
+
+    private long claim(int count) throws EventStoreFullException {
+        if (this.eviction == Eviction.DROP_OLDEST) {
+            long seq = this.next.getAndAdd(count);
+            long overflow = seq - firstSequence(seq) + count - this.capacity;
+            if (overflow > 0) {
+                this.evicted.addAndGet(overflow);
+            }
+            return seq;
+        }
+        while (true) {
+            long seq = this.next.get();
+            if (seq + count - this.start.get() > this.capacity) {
+                throw new EventStoreFullException("In-memory event store is full (" + this.capacity + " events)");
+            }
+            if (this.next.compareAndSet(seq, seq + count)) {
+                return seq;
+            }
+        }
+    }
+
+    private void store(long seq, CloudEvent event, long addedMillis) {
+        Slot slot = new Slot(seq, event, addedMillis);
+        this.slots.accumulateAndGet(index(seq), slot,
+                (current, update) -> current == null || current.seq < update.seq ? update : current);
+    }
+
+    private void addIfPresent(long seq, List<CloudEvent> events) {
+        Slot slot = this.slots.get(index(seq));
+        if (slot != null && slot.seq == seq) {
+            events.add(slot.event);
+        }
+    }
+
+    private long firstSequence(long end) {
+        return Math.max(this.start.get(), end - this.capacity);
+    }
+
+    private int index(long seq) {
+        return (int) (seq % this.capacity);
+    }
+
+    private static String encodeBookmark(long seq) {
+        return Long.toString(seq, Character.MAX_RADIX);
+    }
+
+    private static long decodeBookmark(String bookmark) {
+        try {
+            long seq = Long.parseLong(bookmark, Character.MAX_RADIX);
+            if (seq < 0) {
+                throw new IllegalArgumentException("Invalid bookmark: " + bookmark);
+            }
+            return seq;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid bookmark: " + bookmark, e);
+        }
+    }
+
+    private static final class Slot {
+
+        private final long seq;
+        private final CloudEvent event;
+        private final long addedMillis;
+
+        private Slot(long seq, CloudEvent event, long addedMillis) {
+            this.seq = seq;
+            this.event = event;
+            this.addedMillis = addedMillis;
+        }
+
+    }
+
+}
@@ -0,0 +1,39 @@
+package application.events.store.memory;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import application.events.store.CloudEventStore;
+import application.events.store.CloudEventStoreFactory;
+import application.events.store.CloudEventStoreProvider;
+import application.events.store.memory.InMemoryCloudEventStore.Eviction;
+
+/**
+ * Provides the <code>memory</code> backend.
+ */
+@Component
+public class InMemoryCloudEventStoreProvider implements CloudEventStoreProvider {
+
+    private final int capacity;
+    private final Eviction eviction;
+
+    public InMemoryCloudEventStoreProvider(@Value("${eventstore.memory.capacity:10000}") int capacity,
+            @Value("${eventstore.memory.eviction:DROP_OLDEST}") Eviction eviction) {
+        this.capacity = capacity;
+        this.eviction = eviction;
+    }
+
+    @Override
+    public String getName() {
+        return CloudEventStoreFactory.BACKEND_MEMORY;
+    }
+
+    /**
+     * Writes are already in-process, so there is nothing for write-behind to save.
+     */
+    @Override
+    public CloudEventStore create() {
+        return new InMemoryCloudEventStore(this.capacity, this.eviction);
+    }
+
+}
@@ -0,0 +1,99 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import application.events.store.CachingCloudEventStore;
+import application.events.store.CloudEventStore;
+import application.events.store.EventPage;
+import application.events.store.PurgeMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CachingCloudEventStoreTest {
+
+    @Mock
+    private CloudEventStore delegate;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    public void setup() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        Mockito.when(this.delegate.getNumEvents()).thenReturn(1L);
+        Mockito.when(this.delegate.getEvents(Mockito.anyInt(), Mockito.any(), Mockito.anyBoolean()))
+                .thenAnswer(invocation -> new EventPage(Collections.emptyList(), null));
+    }
+
+    @Test
+    public void testRepeatedReadsAreCached() throws Exception {
+        CachingCloudEventStore objectUnderTest = new CachingCloudEventStore(this.delegate, 10, 60000, this.registry);
+
+        EventPage page = objectUnderTest.getEvents(10, null, true);
+        assertSame(page, objectUnderTest.getEvents(10, null, true), "Expected the cached page");
+        objectUnderTest.getEvents(10, null, false);
+        objectUnderTest.getEvents(10, "bookmark", true);
+        assertEquals(1, objectUnderTest.getNumEvents(), "Unexpected number of events");
+        assertEquals(1, objectUnderTest.getNumEvents(), "Unexpected number of events");
+
+        Mockito.verify(this.delegate, Mockito.times(3)).getEvents(Mockito.anyInt(), Mockito.any(),
+                Mockito.anyBoolean());
+        Mockito.verify(this.delegate, Mockito.times(1)).getNumEvents();
+        assertEquals(2, this.registry.get("cache.gets").tag("result", "hit").counter().count(), "Unexpected hits");
+        assertEquals(4, this.registry.get("cache.gets").tag("result", "miss").counter().count(), "Unexpected misses");
+        assertEquals(2.0 / 6, this.registry.get("cache.hit.ratio").gauge().value(), 1e-9, "Unexpected hit ratio");
+    }
+
+    @Test
+    public void testWritesInvalidate() throws Exception {
+        CachingCloudEventStore objectUnderTest = new CachingCloudEventStore(this.delegate, 10, 60000, this.registry);
+
+        objectUnderTest.getNumEvents();
+        objectUnderTest.addEvent(EventControllerEndpointTest.createTestCloudEvent());
+        objectUnderTest.getNumEvents();
+        objectUnderTest.addEvents(Collections.singletonList(EventControllerEndpointTest.createTestCloudEvent()));
+        objectUnderTest.getNumEvents();
+        objectUnderTest.removeAllEvents(PurgeMode.TRUNCATE, deleted -> {
+        });
+        objectUnderTest.getNumEvents();
+        objectUnderTest.getNumEvents();
+
+        Mockito.verify(this.delegate, Mockito.times(4)).getNumEvents();
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        CachingCloudEventStore objectUnderTest = new CachingCloudEventStore(this.delegate, 2, 60000, this.registry);
+
+        objectUnderTest.getEvents(1, null, true);
+        objectUnderTest.getEvents(2, null, true);
+        objectUnderTest.getEvents(1, null, true);
+        objectUnderTest.getEvents(3, null, true);
+        objectUnderTest.getEvents(1, null, true);
+        objectUnderTest.getEvents(2, null, true);
+
+        // The least recently used page (limit 2) was evicted to make room for limit 3
+        Mockito.verify(this.delegate, Mockito.times(1)).getEvents(1, null, true);
+        Mockito.verify(this.delegate, Mockito.times(2)).getEvents(2, null, true);
+        assertEquals(2, this.registry.get("cache.evictions").counter().count(), "Unexpected evictions");
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception {
+        CachingCloudEventStore objectUnderTest = new CachingCloudEventStore(this.delegate, 10, 1, this.registry);
+
+        objectUnderTest.getNumEvents();
+        Thread.sleep(5);
+        objectUnderTest.getNumEvents();
+
+        Mockito.verify(this.delegate, Mockito.times(2)).getNumEvents();
+    }
+
+}
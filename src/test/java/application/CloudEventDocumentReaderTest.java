@@ -0,0 +1,138 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.Gson;
+
+import application.events.EventMetrics;
+import application.events.JsonPayload;
+import application.events.store.cloudant.CloudEventDocumentReader;
+import application.events.store.cloudant.CloudEventDocumentWriter;
+import io.cloudevents.CloudEvent;
+import io.cloudevents.SpecVersion;
+import io.cloudevents.core.builder.CloudEventBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CloudEventDocumentReaderTest {
+
+    private final Gson gson = SBApplicationConfig.getCustomGsonBuilder().create();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CloudEventDocumentReader objectUnderTest = new CloudEventDocumentReader(this.gson,
+            this.meterRegistry);
+
+    @Test
+    public void testReadsWrittenDocuments() throws Exception {
+        CloudEvent ce = EventControllerEndpointTest.createTestCloudEvent();
+        byte[] binary = { 0, 1, 2, (byte) 0xff };
+        CloudEvent binaryCe = CloudEventBuilder.v1().withType("knative.eventing.test")
+                .withSource(URI.create("https://github.com/cloudevents/spec/pull")).withId("B234-1234-1234")
+                .withData("application/octet-stream", binary).build();
+        CloudEventDocumentWriter writer = new CloudEventDocumentWriter(this.gson);
+        String first = new String(writer.toDocument(ce).readAllBytes(), StandardCharsets.UTF_8);
+        String second = new String(writer.toDocument(binaryCe).readAllBytes(), StandardCharsets.UTF_8);
+
+        List<CloudEventDocumentReader.Row> rows = read(
+                row("a", "{\"_id\":\"a\",\"_rev\":\"1-a\"," + first.substring(1)), row("b", second));
+
+        assertEquals(2, rows.size(), "Unexpected number of rows");
+        EventControllerEndpointTest.assertCloudEventEquals(ce, rows.get(0).getEvent());
+        assertTrue(rows.get(0).getEvent().getData() instanceof JsonPayload, "Expected raw data");
+        assertArrayEquals(binary, rows.get(1).getEvent().getData().toBytes(), "Unexpected data");
+    }
+
+    @Test
+    public void testReadsLegacyDocuments() throws Exception {
+        String isoTime = "{\"_id\":\"a\",\"_rev\":\"1-a\",\"attributes\":{\"type\":\"knative.eventing.test\","
+                + "\"specversion\":\"0.2\",\"source\":\"https://github.com/cloudevents/spec/pull\",\"id\":\"a\","
+                + "\"time\":\"2019-10-09T21:23:08.288-04:00[America/New_York]\","
+                + "\"schemaurl\":\"https://example.com/schema\",\"contenttype\":\"application/json\"},"
+                + "\"data\":{\"test\":\"value\"},"
+                + "\"extensions\":{\"distributedTracing\":{\"traceparent\":\"0\",\"tracestate\":\"congo=4\"}},"
+                + "\"extensionsFormats\":[{\"extension\":{\"key\":\"distributedTracing\"}}]}";
+        String nestedTime = "{\"attributes\":{\"type\":\"knative.eventing.test\",\"specversion\":\"0.2\","
+                + "\"source\":\"https://github.com/cloudevents/spec/pull\",\"id\":\"b\",\"time\":{\"dateTime\":"
+                + "{\"date\":{\"year\":2019,\"month\":10,\"day\":9},\"time\":{\"hour\":21,\"minute\":23,\"second\":8,"
+                + "\"nano\":288000000}},\"offset\":{\"totalSeconds\":-14400},\"zone\":{\"id\":\"America/New_York\"}}},"
+                + "\"data\":{\"test\":\"value\"}}";
+
+        List<CloudEventDocumentReader.Row> rows = read(row("a", isoTime), row("b", nestedTime));
+
+        OffsetDateTime expectedTime = OffsetDateTime.of(2019, 10, 9, 21, 23, 8, 288000000, ZoneOffset.ofHours(-4));
+        CloudEvent first = rows.get(0).getEvent();
+        assertEquals(SpecVersion.V1, first.getSpecVersion(), "Unexpected spec version");
+        assertEquals("a", first.getId(), "Unexpected id");
+        assertEquals(expectedTime, first.getTime(), "Unexpected time");
+        assertEquals(URI.create("https://example.com/schema"), first.getDataSchema(), "Unexpected data schema");
+        assertEquals("application/json", first.getDataContentType(), "Unexpected content type");
+        assertEquals("{\"test\":\"value\"}", first.getData().toString(), "Unexpected data");
+        assertEquals("0", first.getExtension("traceparent"), "Unexpected traceparent");
+        assertEquals("congo=4", first.getExtension("tracestate"), "Unexpected tracestate");
+        assertEquals(2, first.getExtensionNames().size(), "Unexpected extensions");
+
+        CloudEvent second = rows.get(1).getEvent();
+        assertEquals(expectedTime, second.getTime(), "Unexpected time");
+        assertEquals("{\"test\":\"value\"}", second.getData().toString(), "Unexpected data");
+    }
+
+    @Test
+    public void testSkipsDesignDocuments() {
+        List<CloudEventDocumentReader.Row> rows = read(
+                row("_design/events", "{\"_id\":\"_design/events\",\"views\":{}}"));
+
+        assertEquals("_design/events", rows.get(0).getId(), "Unexpected id");
+        assertNull(rows.get(0).getEvent(), "Unexpected event");
+    }
+
+    @Test
+    public void testSkipsInvalidDocuments() throws Exception {
+        String valid = new String(new CloudEventDocumentWriter(this.gson)
+                .toDocument(EventControllerEndpointTest.createTestCloudEvent()).readAllBytes(), StandardCharsets.UTF_8);
+        String legacyTime = "{\"attributes\":{\"type\":\"t\",\"specversion\":\"0.2\",\"source\":\"s\","
+                + "\"id\":\"c\",\"time\":\"yesterday\"}}";
+
+        List<CloudEventDocumentReader.Row> rows = read(row("a", "{\"_id\":\"a\",\"id\":\"a\"}"), row("b", valid),
+                row("c", legacyTime), "{\"value\":{},\"doc\":{\"views\":{}}}");
+
+        assertEquals(3, rows.size(), "Expected the row without an id skipped");
+        assertEquals("a", rows.get(0).getId(), "Unexpected id");
+        assertNull(rows.get(0).getEvent(), "Expected the document without a spec version skipped");
+        EventControllerEndpointTest.assertCloudEventEquals(EventControllerEndpointTest.createTestCloudEvent(),
+                rows.get(1).getEvent());
+        assertNull(rows.get(2).getEvent(), "Expected the document with an invalid time skipped");
+        assertEquals(3, this.meterRegistry.get(EventMetrics.STORE_INVALID).counter().count(),
+                "Unexpected number of invalid documents");
+    }
+
+    @Test
+    public void testInvalidResponse() {
+        assertThrows(IllegalStateException.class, () -> this.objectUnderTest
+                .readAllDocs("{\"rows\":[{\"id\":\"a\",\"doc\":{".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalStateException.class,
+                () -> this.objectUnderTest.readFind("[]".getBytes(StandardCharsets.UTF_8), 10));
+    }
+
+    private List<CloudEventDocumentReader.Row> read(String... rows) {
+        String body = "{\"total_rows\":" + rows.length + ",\"offset\":0,\"rows\":[" + String.join(",", rows) + "]}";
+        return this.objectUnderTest.readAllDocs(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String row(String id, String doc) {
+        return "{\"id\":\"" + id + "\",\"key\":\"" + id + "\",\"value\":{\"rev\":\"1-" + id + "\"},\"doc\":" + doc
+                + "}";
+    }
+
+}
@@ -0,0 +1,128 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import application.events.JsonPayload;
+import application.events.store.cloudant.CloudEventDocumentWriter;
+import io.cloudevents.CloudEvent;
+import io.cloudevents.core.builder.CloudEventBuilder;
+import io.cloudevents.jackson.JsonFormat;
+
+public class CloudEventDocumentWriterTest {
+
+    private final Gson gson = SBApplicationConfig.getCustomGsonBuilder().create();
+
+    private final CloudEventDocumentWriter objectUnderTest = new CloudEventDocumentWriter(this.gson);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDocumentMatchesEventFormat() throws Exception {
+        CloudEvent ce = EventControllerEndpointTest.createTestCloudEvent();
+
+        Map<String, Object> expected = this.gson.fromJson(
+                new String(new JsonFormat().serialize(ce), StandardCharsets.UTF_8), Map.class);
+        Map<String, Object> actual = this.gson.fromJson(read(this.objectUnderTest.toDocument(ce)), Map.class);
+
+        assertEquals(expected, actual, "Unexpected document");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTimeIsIndexed() throws Exception {
+        CloudEvent ce = EventControllerEndpointTest.createTestCloudEvent();
+        CloudEventDocumentWriter writer = new CloudEventDocumentWriter(this.gson, true, null);
+
+        Map<String, Object> expected = this.gson.fromJson(
+                new String(new JsonFormat().serialize(ce), StandardCharsets.UTF_8), Map.class);
+        Map<String, Object> actual = this.gson.fromJson(read(writer.toDocument(ce)), Map.class);
+
+        assertEquals(ce.getTime().toInstant().toEpochMilli(),
+                ((Number) actual.remove(CloudEventDocumentWriter.TIME_MILLIS)).longValue(), "Unexpected time");
+        assertEquals(expected, actual, "Unexpected document");
+    }
+
+    @Test
+    public void testDocumentCanBeReadBack() throws Exception {
+        CloudEvent ce = EventControllerEndpointTest.createTestCloudEvent();
+
+        CloudEvent actual = new JsonFormat().deserialize(this.objectUnderTest.toDocument(ce).readAllBytes());
+
+        EventControllerEndpointTest.assertCloudEventEquals(ce, actual);
+        assertEquals("0", actual.getExtension("traceparent"), "Missing tracing extension");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNonAsciiData() throws Exception {
+        String value = "caf\u00e9 \u20ac \ud83d\ude00 " + "x".repeat(1000) + " \u00fc";
+        CloudEvent ce = CloudEventBuilder.v1().withType("knative.eventing.test")
+                .withSource(URI.create("https://github.com/cloudevents/spec/pull")).withId("A234-1234-1234")
+                .withData("application/json", this.gson.toJson(Collections.singletonMap("text", value))
+                        .getBytes(StandardCharsets.UTF_8))
+                .build();
+
+        byte[] body = this.objectUnderTest.toDocument(ce).readAllBytes();
+        Map<String, Object> actual = this.gson.fromJson(new String(body, StandardCharsets.UTF_8), Map.class);
+
+        assertEquals(value, ((Map<String, Object>) actual.get("data")).get("text"), "Unexpected data");
+    }
+
+    @Test
+    public void testRawDataIsCopiedVerbatim() throws Exception {
+        String data = "{\"b\":[1, 2.50],  \"a\":\"caf\u00e9\"}";
+        CloudEvent ce = CloudEventBuilder.v1().withType("knative.eventing.test")
+                .withSource(URI.create("https://github.com/cloudevents/spec/pull")).withId("A234-1234-1234")
+                .withData(JsonPayload.of(data.getBytes(StandardCharsets.UTF_8))).build();
+
+        String document = new String(this.objectUnderTest.toDocument(ce).readAllBytes(), StandardCharsets.UTF_8);
+
+        assertTrue(document.contains(",\"data\":" + data + "}"), "Unexpected document: " + document);
+        assertEquals(2, this.gson.fromJson(document, JsonObject.class).getAsJsonObject("data").size(),
+                "Unexpected data");
+    }
+
+    @Test
+    public void testBinaryDataIsBase64() throws Exception {
+        byte[] data = { 0, 1, 2, (byte) 0xff };
+        CloudEvent ce = CloudEventBuilder.v1().withType("knative.eventing.test")
+                .withSource(URI.create("https://github.com/cloudevents/spec/pull")).withId("A234-1234-1234")
+                .withData("application/octet-stream", data).build();
+
+        JsonObject document = this.gson.fromJson(read(this.objectUnderTest.toDocument(ce)), JsonObject.class);
+
+        assertArrayEquals(data, Base64.getDecoder().decode(document.get("data_base64").getAsString()),
+                "Unexpected data");
+    }
+
+    @Test
+    public void testBulkDocs() throws Exception {
+        List<CloudEvent> events = Arrays.asList(EventControllerEndpointTest.createTestCloudEvent(),
+                EventControllerEndpointTest.createTestCloudEvent());
+
+        JsonObject bulkDocs = this.gson.fromJson(read(this.objectUnderTest.toBulkDocs(events)), JsonObject.class);
+
+        assertEquals(2, bulkDocs.getAsJsonArray("docs").size(), "Unexpected number of documents");
+    }
+
+    private static InputStreamReader read(InputStream body) {
+        return new InputStreamReader(body, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,434 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.ibm.cloud.cloudant.v1.Cloudant;
+import com.ibm.cloud.cloudant.v1.model.AllDocsResult;
+import com.ibm.cloud.cloudant.v1.model.DatabaseInformation;
+import com.ibm.cloud.cloudant.v1.model.DocsResultRow;
+import com.ibm.cloud.cloudant.v1.model.DocsResultRowValue;
+import com.ibm.cloud.cloudant.v1.model.DocumentResult;
+import com.ibm.cloud.cloudant.v1.model.IndexResult;
+import com.ibm.cloud.cloudant.v1.model.PostFindOptions;
+import com.ibm.cloud.cloudant.v1.model.PostAllDocsOptions;
+import com.ibm.cloud.cloudant.v1.model.PostBulkDocsOptions;
+import com.ibm.cloud.cloudant.v1.model.PostDocumentOptions;
+import com.ibm.cloud.cloudant.v1.model.PostIndexOptions;
+import com.ibm.cloud.cloudant.v1.model.PostPartitionAllDocsOptions;
+import com.ibm.cloud.sdk.core.http.Response;
+import com.ibm.cloud.sdk.core.http.ServiceCall;
+import com.ibm.cloud.sdk.core.http.ServiceCallback;
+import com.ibm.cloud.sdk.core.service.exception.BadRequestException;
+
+import application.events.EventMetrics;
+import application.events.store.EventPage;
+import application.events.store.EventQuery;
+import application.events.store.EventStoreFullException;
+import application.events.store.PurgeMode;
+import application.events.store.RetentionPolicy;
+import application.events.store.cloudant.CloudEventDocumentWriter;
+import application.events.store.cloudant.CloudEventStoreCloudant;
+import application.events.store.cloudant.EventDocumentIds;
+import io.cloudevents.CloudEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.api.OpenTelemetry;
+
+public class CloudEventStoreCloudantTest {
+
+    @Mock
+    private Cloudant cloudant;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CloudEventStoreCloudant objectUnderTest;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        this.objectUnderTest = new CloudEventStoreCloudant(this.cloudant, SBApplicationConfig.getCustomGsonBuilder(),
+                2, 2, 2, 2, true, false, OpenTelemetry.noop(), this.meterRegistry);
+    }
+
+    @Test
+    public void testNumEventsIsCountedLocally() throws Exception {
+        mockDocCount(5);
+        ServiceCall<DocumentResult> postCall = mockCall(Mockito.mock(DocumentResult.class));
+        Mockito.when(this.cloudant.postDocument(Mockito.any())).thenReturn(postCall);
+
+        assertEquals(5, this.objectUnderTest.getNumEvents(), "Unexpected number of events");
+        this.objectUnderTest.addEvent(EventControllerEndpointTest.createTestCloudEvent());
+        assertEquals(6, this.objectUnderTest.getNumEvents(), "Unexpected number of events");
+
+        Mockito.verify(this.cloudant, Mockito.times(1)).getDatabaseInformation(Mockito.any());
+    }
+
+    @Test
+    public void testReconcileEventCount() throws Exception {
+        mockDocCount(5);
+        assertEquals(5, this.objectUnderTest.getNumEvents(), "Unexpected number of events");
+
+        mockDocCount(8);
+        this.objectUnderTest.reconcileEventCount();
+        assertEquals(8, this.objectUnderTest.getNumEvents(), "Unexpected number of events");
+
+        // Design documents are not events, even when another instance created them
+        mockDesignDocs("_design/event-query");
+        this.objectUnderTest.reconcileEventCount();
+        assertEquals(7, this.objectUnderTest.getNumEvents(), "Unexpected number of events");
+    }
+
+    @Test
+    public void testGetEventsReturnsBookmark() throws Exception {
+        ServiceCall<InputStream> firstCall = mockAllDocs("a", "_design/events", "b", "c");
+        ServiceCall<InputStream> secondCall = mockAllDocs("b");
+        Mockito.when(this.cloudant.postAllDocsAsStream(Mockito.any())).thenReturn(firstCall, secondCall);
+
+        EventPage page = this.objectUnderTest.getEvents(2, null, false);
+        assertEquals(2, page.getEvents().size(), "Unexpected number of events");
+        assertEquals("b", page.getEvents().get(1).getId(), "Unexpected event");
+        assertTrue(page.hasMore(), "Expected another page");
+
+        page = this.objectUnderTest.getEvents(2, page.getBookmark(), false);
+        assertFalse(page.hasMore(), "Expected the last page");
+    }
+
+    @Test
+    public void testInvalidDocumentsAreSkipped() throws Exception {
+        ServiceCall<InputStream> allDocsCall = mockAllDocs("a", "invalid-b", "c");
+        Mockito.when(this.cloudant.postAllDocsAsStream(Mockito.any())).thenReturn(allDocsCall);
+        ServiceCall<IndexResult> indexCall = mockCall(Mockito.mock(IndexResult.class));
+        Mockito.when(this.cloudant.postIndex(Mockito.any())).thenReturn(indexCall);
+        ServiceCall<InputStream> findCall = mockFind("page2", "invalid-a", "b");
+        Mockito.when(this.cloudant.postFindAsStream(Mockito.any())).thenReturn(findCall);
+
+        EventPage page = this.objectUnderTest.getEvents(2, null, false);
+        assertEquals(1, page.getEvents().size(), "Unexpected number of events");
+        assertTrue(page.hasMore(), "Expected the next page after the invalid document");
+        page = this.objectUnderTest.queryEvents(EventQuery.builder().type("knative.eventing.test").limit(2).build());
+        assertEquals("b", page.getEvents().get(0).getId(), "Unexpected event");
+        assertEquals("page2", page.getBookmark(), "Expected the next page after the invalid document");
+        assertEquals(2, this.meterRegistry.get(EventMetrics.STORE_INVALID).counter().count(),
+                "Unexpected number of invalid documents");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAsyncRequestsAreLimited() throws Exception {
+        List<ServiceCallback<DocumentResult>> callbacks = new ArrayList<>();
+        ServiceCall<DocumentResult> postCall = Mockito.mock(ServiceCall.class);
+        Mockito.doAnswer(invocation -> callbacks.add(invocation.getArgument(0))).when(postCall)
+                .enqueue(Mockito.any());
+        Mockito.when(this.cloudant.postDocument(Mockito.any())).thenReturn(postCall);
+
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(this.objectUnderTest.addEventAsync(EventControllerEndpointTest.createTestCloudEvent()));
+        }
+        assertEquals(2, callbacks.size(), "Unexpected number of requests sent");
+        assertEquals(2, this.objectUnderTest.getRequestsInFlight(), "Unexpected number of requests in flight");
+        assertEquals(2, this.objectUnderTest.getRequestsQueued(), "Unexpected number of requests queued");
+        CompletionException e = assertThrows(CompletionException.class, () -> results.get(4).join());
+        assertTrue(e.getCause() instanceof EventStoreFullException, "Expected the store to be full");
+
+        Response<DocumentResult> response = Mockito.mock(Response.class);
+        Mockito.when(response.getResult()).thenReturn(Mockito.mock(DocumentResult.class));
+        callbacks.get(0).onResponse(response);
+        callbacks.get(1).onFailure(new IllegalStateException("down"));
+        assertTrue(results.get(0).isDone() && !results.get(0).isCompletedExceptionally(), "Expected the event added");
+        assertTrue(results.get(1).isCompletedExceptionally(), "Expected the request to fail");
+        assertEquals(4, callbacks.size(), "Expected the queued requests to be sent");
+        assertEquals(0, this.objectUnderTest.getRequestsQueued(), "Unexpected number of requests queued");
+
+        callbacks.get(2).onResponse(response);
+        callbacks.get(3).onResponse(response);
+        assertEquals(0, this.objectUnderTest.getRequestsInFlight(), "Unexpected number of requests in flight");
+    }
+
+    @Test
+    public void testBulkDeleteInPages() throws Exception {
+        mockDocCount(0);
+        List<DocsResultRow> firstRows = Arrays.asList(mockIdRow("a"), mockIdRow("_design/events"));
+        List<DocsResultRow> secondRows = Arrays.asList(mockIdRow("b"));
+        AllDocsResult firstPage = Mockito.mock(AllDocsResult.class);
+        Mockito.when(firstPage.getRows()).thenReturn(firstRows);
+        AllDocsResult secondPage = Mockito.mock(AllDocsResult.class);
+        Mockito.when(secondPage.getRows()).thenReturn(secondRows);
+        ServiceCall<AllDocsResult> firstCall = mockCall(firstPage);
+        ServiceCall<AllDocsResult> secondCall = mockCall(secondPage);
+        Mockito.when(this.cloudant.postAllDocs(Mockito.any())).thenReturn(firstCall, secondCall);
+        ServiceCall<List<DocumentResult>> bulkCall = mockCall(
+                Collections.singletonList(Mockito.mock(DocumentResult.class)));
+        Mockito.when(this.cloudant.postBulkDocs(Mockito.any())).thenReturn(bulkCall);
+
+        AtomicLong deleted = new AtomicLong();
+        this.objectUnderTest.removeAllEvents(PurgeMode.BULK_DELETE, deleted::addAndGet);
+
+        assertEquals(2, deleted.get(), "Unexpected number of deleted events");
+        Mockito.verify(this.cloudant, Mockito.times(2)).postBulkDocs(Mockito.any());
+        Mockito.verify(this.cloudant, Mockito.never()).deleteDocument(Mockito.any());
+    }
+
+    @Test
+    public void testQueryUsesIndex() throws Exception {
+        ServiceCall<IndexResult> indexCall = mockCall(Mockito.mock(IndexResult.class));
+        Mockito.when(this.cloudant.postIndex(Mockito.any())).thenReturn(indexCall);
+        ServiceCall<InputStream> firstCall = mockFind("page2", "a", "b");
+        ServiceCall<InputStream> secondCall = mockFind("page3", "c");
+        Mockito.when(this.cloudant.postFindAsStream(Mockito.any())).thenReturn(firstCall, secondCall);
+
+        EventQuery.Builder query = EventQuery.builder().type("knative.eventing.test")
+                .from(Instant.ofEpochMilli(1000)).to(Instant.ofEpochMilli(2000)).limit(2).descending(true);
+        EventPage page = this.objectUnderTest.queryEvents(query.build());
+        assertEquals(2, page.getEvents().size(), "Unexpected number of events");
+        assertEquals("page2", page.getBookmark(), "Unexpected bookmark");
+        page = this.objectUnderTest.queryEvents(query.bookmark(page.getBookmark()).build());
+        assertEquals("c", page.getEvents().get(0).getId(), "Unexpected event");
+        assertFalse(page.hasMore(), "Expected the last page");
+
+        ArgumentCaptor<PostIndexOptions> indexCaptor = ArgumentCaptor.forClass(PostIndexOptions.class);
+        Mockito.verify(this.cloudant, Mockito.times(4)).postIndex(indexCaptor.capture());
+        assertEquals("type-time", indexCaptor.getAllValues().get(3).name(), "Unexpected index");
+        ArgumentCaptor<PostFindOptions> findCaptor = ArgumentCaptor.forClass(PostFindOptions.class);
+        Mockito.verify(this.cloudant, Mockito.times(2)).postFindAsStream(findCaptor.capture());
+        PostFindOptions find = findCaptor.getAllValues().get(1);
+        assertEquals(Arrays.asList("event-query", "type-time"), find.useIndex(), "Unexpected index");
+        assertEquals("knative.eventing.test", find.selector().get("type"), "Unexpected selector");
+        assertEquals(Map.of("$gte", 1000L, "$lt", 2000L), find.selector().get(CloudEventDocumentWriter.TIME_MILLIS),
+                "Unexpected time window");
+        assertEquals(Arrays.asList(Collections.singletonMap("type", "desc"),
+                Collections.singletonMap(CloudEventDocumentWriter.TIME_MILLIS, "desc")), find.sort(),
+                "Unexpected sort");
+        assertEquals("page2", find.bookmark(), "Unexpected bookmark");
+
+    }
+
+    @Test
+    public void testQueryRecreatesMissingIndexes() throws Exception {
+        ServiceCall<IndexResult> indexCall = mockCall(Mockito.mock(IndexResult.class));
+        Mockito.when(this.cloudant.postIndex(Mockito.any())).thenReturn(indexCall);
+        BadRequestException noIndex = Mockito.mock(BadRequestException.class);
+        Mockito.when(noIndex.getMessage()).thenReturn("No index exists for this sort, try indexing by the sort fields");
+        Mockito.when(noIndex.getDebuggingInfo()).thenReturn(Map.of("error", "no_usable_index", "reason",
+                "No index exists for this sort, try indexing by the sort fields"));
+        @SuppressWarnings("unchecked")
+        ServiceCall<InputStream> failedCall = Mockito.mock(ServiceCall.class);
+        Mockito.when(failedCall.execute()).thenThrow(noIndex);
+        ServiceCall<InputStream> findCall = mockFind("page2", "a");
+        Mockito.when(this.cloudant.postFindAsStream(Mockito.any())).thenReturn(failedCall, findCall);
+
+        EventPage page = this.objectUnderTest.queryEvents(EventQuery.builder().type("knative.eventing.test").build());
+        assertEquals(1, page.getEvents().size(), "Unexpected number of events");
+        Mockito.verify(this.cloudant, Mockito.times(8)).postIndex(Mockito.any());
+        Mockito.verify(this.cloudant, Mockito.times(2)).postFindAsStream(Mockito.any());
+    }
+
+    @Test
+    public void testOtherBadQueriesDoNotRecreateIndexes() throws Exception {
+        ServiceCall<IndexResult> indexCall = mockCall(Mockito.mock(IndexResult.class));
+        Mockito.when(this.cloudant.postIndex(Mockito.any())).thenReturn(indexCall);
+        BadRequestException badQuery = Mockito.mock(BadRequestException.class);
+        Mockito.when(badQuery.getMessage()).thenReturn("Invalid index definition");
+        Mockito.when(badQuery.getDebuggingInfo())
+                .thenReturn(Map.of("error", "invalid_operator", "reason", "Invalid index definition"));
+        @SuppressWarnings("unchecked")
+        ServiceCall<InputStream> failedCall = Mockito.mock(ServiceCall.class);
+        Mockito.when(failedCall.execute()).thenThrow(badQuery);
+        Mockito.when(this.cloudant.postFindAsStream(Mockito.any())).thenReturn(failedCall);
+
+        assertThrows(BadRequestException.class,
+                () -> this.objectUnderTest.queryEvents(EventQuery.builder().type("knative.eventing.test").build()));
+        Mockito.verify(this.cloudant, Mockito.times(4)).postIndex(Mockito.any());
+        Mockito.verify(this.cloudant, Mockito.times(1)).postFindAsStream(Mockito.any());
+    }
+
+    @Test
+    public void testEventsAreGivenTimeOrderedIds() throws Exception {
+        ServiceCall<DocumentResult> postCall = mockCall(Mockito.mock(DocumentResult.class));
+        Mockito.when(this.cloudant.postDocument(Mockito.any())).thenReturn(postCall);
+
+        CloudEvent event = EventControllerEndpointTest.createTestCloudEvent();
+        this.objectUnderTest.addEvent(event);
+
+        ArgumentCaptor<PostDocumentOptions> captor = ArgumentCaptor.forClass(PostDocumentOptions.class);
+        Mockito.verify(this.cloudant).postDocument(captor.capture());
+        String document = new String(captor.getValue().body().readAllBytes(), StandardCharsets.UTF_8);
+        String id = document.substring(document.indexOf("\"_id\":\"") + 7, document.indexOf("\","));
+        assertEquals(event.getTime().toInstant().toEpochMilli(), EventDocumentIds.timeOf(id).toEpochMilli(),
+                "Expected the id to hold the event time");
+    }
+
+    @Test
+    public void testTimeQueryReadsIdRange() throws Exception {
+        CloudEventStoreCloudant store = new CloudEventStoreCloudant(this.cloudant,
+                SBApplicationConfig.getCustomGsonBuilder(), 2, 2, 2, 2, true, true, OpenTelemetry.noop(),
+                this.meterRegistry);
+        EventDocumentIds ids = new EventDocumentIds(true);
+        Instant from = Instant.parse("2019-10-09T10:00:00Z");
+        Instant to = Instant.parse("2019-10-09T11:00:00Z");
+        ServiceCall<InputStream> partitionCall = mockAllDocs("a", "b", "c");
+        Mockito.when(this.cloudant.postPartitionAllDocsAsStream(Mockito.any())).thenReturn(partitionCall);
+        ServiceCall<InputStream> allDocsCall = mockAllDocs("a");
+        Mockito.when(this.cloudant.postAllDocsAsStream(Mockito.any())).thenReturn(allDocsCall);
+
+        // The test events have no time, so are only selected by an open window
+        EventPage page = store.queryEvents(EventQuery.builder().from(from).to(to).limit(2).build());
+        assertTrue(page.getEvents().isEmpty(), "Expected no events in the window");
+        assertTrue(page.hasMore(), "Expected another page");
+        page = store.queryEvents(EventQuery.builder().limit(2).descending(true).build());
+        assertEquals(1, page.getEvents().size(), "Unexpected number of events");
+
+        ArgumentCaptor<PostPartitionAllDocsOptions> partitionCaptor = ArgumentCaptor
+                .forClass(PostPartitionAllDocsOptions.class);
+        Mockito.verify(this.cloudant).postPartitionAllDocsAsStream(partitionCaptor.capture());
+        PostPartitionAllDocsOptions range = partitionCaptor.getValue();
+        assertEquals("20191009", range.partitionKey(), "Unexpected partition");
+        assertEquals(ids.lowerBound(from), range.startKey(), "Unexpected start of range");
+        assertEquals(ids.lowerBound(to), range.endKey(), "Unexpected end of range");
+        assertFalse(range.inclusiveEnd(), "Expected the end of the window excluded");
+        ArgumentCaptor<PostAllDocsOptions> allDocsCaptor = ArgumentCaptor.forClass(PostAllDocsOptions.class);
+        Mockito.verify(this.cloudant).postAllDocsAsStream(allDocsCaptor.capture());
+        assertTrue(allDocsCaptor.getValue().descending(), "Expected a descending range");
+        Mockito.verify(this.cloudant, Mockito.never()).postFindAsStream(Mockito.any());
+    }
+
+    @Test
+    public void testRemoveExpiredEvents() throws Exception {
+        mockDocCount(5);
+        EventDocumentIds ids = new EventDocumentIds(false);
+        long old = Instant.now().minus(Duration.ofDays(2)).toEpochMilli();
+        String firstOld = ids.next(old);
+        String secondOld = ids.next(old);
+        ServiceCall<AllDocsResult> firstAgeCall = mockAllDocsRows(firstOld, "0a5b2c3d4e5f60718293a4b5c6d7e8f9");
+        ServiceCall<AllDocsResult> secondAgeCall = mockAllDocsRows(secondOld);
+        ServiceCall<AllDocsResult> firstCountCall = mockAllDocsRows("a", "_design/event-query");
+        ServiceCall<AllDocsResult> secondCountCall = mockAllDocsRows("b");
+        Mockito.when(this.cloudant.postAllDocs(Mockito.any())).thenReturn(firstAgeCall, secondAgeCall, firstCountCall,
+                secondCountCall);
+        ServiceCall<List<DocumentResult>> bulkCall = mockCall(
+                Collections.singletonList(Mockito.mock(DocumentResult.class)));
+        Mockito.when(this.cloudant.postBulkDocs(Mockito.any())).thenReturn(bulkCall);
+
+        AtomicLong deleted = new AtomicLong();
+        this.objectUnderTest.removeExpiredEvents(new RetentionPolicy(Duration.ofDays(1), 2, 0, 0),
+                deleted::addAndGet);
+
+        assertEquals(4, deleted.get(), "Unexpected number of deleted events");
+        ArgumentCaptor<PostAllDocsOptions> pageCaptor = ArgumentCaptor.forClass(PostAllDocsOptions.class);
+        Mockito.verify(this.cloudant, Mockito.times(4)).postAllDocs(pageCaptor.capture());
+        PostAllDocsOptions agePage = pageCaptor.getAllValues().get(1);
+        assertTrue(agePage.endKey().compareTo(secondOld) > 0, "Expected the old events before the end of the range");
+        assertFalse(agePage.inclusiveEnd(), "Expected the end of the range excluded");
+        assertEquals("0a5b2c3d4e5f60718293a4b5c6d7e8f9\u0000", agePage.startKey(), "Unexpected start of next page");
+        assertEquals(null, pageCaptor.getAllValues().get(2).endKey(), "Expected the oldest events of any age");
+        ArgumentCaptor<PostBulkDocsOptions> bulkCaptor = ArgumentCaptor.forClass(PostBulkDocsOptions.class);
+        Mockito.verify(this.cloudant, Mockito.times(4)).postBulkDocs(bulkCaptor.capture());
+        List<String> deletedIds = new ArrayList<>();
+        for (PostBulkDocsOptions options : bulkCaptor.getAllValues()) {
+            options.bulkDocs().docs().forEach(doc -> deletedIds.add(doc.getId()));
+        }
+        assertEquals(Arrays.asList(firstOld, secondOld, "a", "b"), deletedIds, "Unexpected deleted documents");
+    }
+
+    private void mockDocCount(long docCount) {
+        DatabaseInformation dbInfo = Mockito.mock(DatabaseInformation.class);
+        Mockito.when(dbInfo.getDocCount()).thenReturn(docCount);
+        ServiceCall<DatabaseInformation> dbInfoCall = mockCall(dbInfo);
+        Mockito.when(this.cloudant.getDatabaseInformation(Mockito.any())).thenReturn(dbInfoCall);
+        mockDesignDocs();
+    }
+
+    private void mockDesignDocs(String... ids) {
+        ServiceCall<AllDocsResult> designCall = mockAllDocsRows(ids);
+        Mockito.when(this.cloudant.postDesignDocs(Mockito.any())).thenReturn(designCall);
+    }
+
+    private static ServiceCall<InputStream> mockAllDocs(String... ids) {
+        StringBuilder body = new StringBuilder("{\"total_rows\":").append(ids.length)
+                .append(",\"offset\":0,\"rows\":[");
+        for (int i = 0; i < ids.length; i++) {
+            String id = ids[i];
+            body.append(i == 0 ? "" : ",").append("{\"id\":\"").append(id).append("\",\"key\":\"").append(id)
+                    .append("\",\"value\":{\"rev\":\"1-").append(id).append("\"},\"doc\":{\"_id\":\"").append(id)
+                    .append("\",\"_rev\":\"1-").append(id).append("\",");
+            if (id.startsWith("_design/")) {
+                body.append("\"views\":{}}}");
+            } else if (id.startsWith("invalid")) {
+                body.append("\"id\":\"").append(id).append("\"}}");
+            } else {
+                body.append("\"specversion\":\"1.0\",\"id\":\"").append(id)
+                        .append("\",\"source\":\"https://github.com/cloudevents/spec/pull\",")
+                        .append("\"type\":\"knative.eventing.test\",\"data\":{\"test\":\"value\"}}}");
+            }
+        }
+        body.append("]}");
+        return mockCall(new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static ServiceCall<InputStream> mockFind(String bookmark, String... ids) {
+        StringBuilder body = new StringBuilder("{\"docs\":[");
+        for (int i = 0; i < ids.length; i++) {
+            // An unknown spec version makes the document invalid
+            String specversion = ids[i].startsWith("invalid") ? "0.1" : "1.0";
+            body.append(i == 0 ? "" : ",").append("{\"_id\":\"").append(ids[i]).append("\",\"_rev\":\"1-")
+                    .append(ids[i]).append("\",\"specversion\":\"").append(specversion).append("\",\"id\":\"")
+                    .append(ids[i])
+                    .append("\",\"source\":\"https://github.com/cloudevents/spec/pull\",")
+                    .append("\"type\":\"knative.eventing.test\",\"timeepochms\":1500}");
+        }
+        body.append("],\"bookmark\":\"").append(bookmark).append("\"}");
+        return mockCall(new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static ServiceCall<AllDocsResult> mockAllDocsRows(String... ids) {
+        List<DocsResultRow> rows = new ArrayList<>();
+        for (String id : ids) {
+            rows.add(mockIdRow(id));
+        }
+        AllDocsResult page = Mockito.mock(AllDocsResult.class);
+        Mockito.when(page.getRows()).thenReturn(rows);
+        return mockCall(page);
+    }
+
+    private static DocsResultRow mockIdRow(String id) {
+        DocsResultRowValue value = Mockito.mock(DocsResultRowValue.class);
+        Mockito.when(value.getRev()).thenReturn("1-" + id);
+        DocsResultRow row = Mockito.mock(DocsResultRow.class);
+        Mockito.when(row.getId()).thenReturn(id);
+        Mockito.when(row.getValue()).thenReturn(value);
+        return row;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ServiceCall<T> mockCall(T result) {
+        ServiceCall<T> call = Mockito.mock(ServiceCall.class);
+        Response<T> response = Mockito.mock(Response.class);
+        Mockito.when(call.execute()).thenReturn(response);
+        Mockito.when(response.getResult()).thenReturn(result);
+        return call;
+    }
+
+}
@@ -0,0 +1,77 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import application.events.CloudEventUnmarshaller;
+import io.cloudevents.CloudEvent;
+
+public class CloudEventUnmarshallerTest {
+
+    private static final String ATTRIBUTES = "\"specversion\":\"1.0\",\"type\":\"knative.eventing.test\","
+            + "\"source\":\"https://github.com/cloudevents/spec/pull\",\"id\":\"A234-1234-1234\"";
+
+    @Test
+    public void testDataIsSlicedVerbatim() {
+        String[] values = { "{ \"a\" : [1, 2.50, {\"b\":null}] }", "[]", "\"caf\\u00e9 €\"", "-1.5e3", "true",
+                "12" };
+        for (String value : values) {
+            String body = "{" + ATTRIBUTES + ",\"data\":" + value + " ,\"tracestate\":\"congo=4\"}";
+            CloudEvent event = CloudEventUnmarshaller.structured(bytes(body));
+            assertEquals(value, event.getData().toString(), "Unexpected data");
+        }
+    }
+
+    @Test
+    public void testNoData() {
+        assertNull(CloudEventUnmarshaller.structured(bytes("{" + ATTRIBUTES + "}")).getData(), "Unexpected data");
+        assertNull(CloudEventUnmarshaller.structured(bytes("{" + ATTRIBUTES + ",\"data\":null}")).getData(),
+                "Unexpected data");
+    }
+
+    @Test
+    public void testNonJsonData() {
+        CloudEvent text = CloudEventUnmarshaller.structured(
+                bytes("{" + ATTRIBUTES + ",\"datacontenttype\":\"text/plain\",\"data\":\"caf\u00e9\"}"));
+        assertEquals("caf\u00e9", new String(text.getData().toBytes(), StandardCharsets.UTF_8), "Unexpected data");
+
+        CloudEvent binary = CloudEventUnmarshaller.structured(bytes("{" + ATTRIBUTES
+                + ",\"datacontenttype\":\"application/octet-stream\",\"data_base64\":\"AAEC/w==\"}"));
+        assertArrayEquals(new byte[] { 0, 1, 2, (byte) 0xff }, binary.getData().toBytes(), "Unexpected data");
+    }
+
+    @Test
+    public void testBatch() {
+        List<CloudEvent> events = CloudEventUnmarshaller
+                .batch(bytes("[{" + ATTRIBUTES + ",\"data\":1},{\"data\":2," + ATTRIBUTES + "}]"));
+        assertEquals(2, events.size(), "Unexpected number of events");
+        assertEquals("2", events.get(1).getData().toString(), "Unexpected data");
+
+        assertEquals(0, CloudEventUnmarshaller.batch(bytes(" [ ] ")).size(), "Unexpected number of events");
+    }
+
+    @Test
+    public void testInvalidEvents() {
+        String[] bodies = { "{" + ATTRIBUTES + ",\"data\":{\"a\":}}", "{\"id\":\"1\",\"data\":{}}",
+                "{" + ATTRIBUTES + "} {}", "[1]", "", "{" + ATTRIBUTES.replace("pull\"", "pull") + "}",
+                "{" + ATTRIBUTES.replace("1.0", "0.2") + "}" };
+        for (String body : bodies) {
+            assertThrows(IllegalArgumentException.class, () -> CloudEventUnmarshaller.structured(bytes(body)),
+                    "Expected an invalid event: " + body);
+        }
+        assertThrows(IllegalArgumentException.class, () -> CloudEventUnmarshaller.batch(bytes("{" + ATTRIBUTES + "}")),
+                "Expected an invalid batch");
+    }
+
+    private static byte[] bytes(String body) {
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
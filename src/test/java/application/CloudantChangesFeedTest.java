@@ -0,0 +1,185 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.ibm.cloud.cloudant.v1.Cloudant;
+import com.ibm.cloud.cloudant.v1.model.AllDocsResult;
+import com.ibm.cloud.cloudant.v1.model.Change;
+import com.ibm.cloud.cloudant.v1.model.ChangesResult;
+import com.ibm.cloud.cloudant.v1.model.ChangesResultItem;
+import com.ibm.cloud.cloudant.v1.model.DatabaseInformation;
+import com.ibm.cloud.cloudant.v1.model.DocumentResult;
+import com.ibm.cloud.sdk.core.http.ServiceCall;
+
+import application.events.store.CachingCloudEventStore;
+import application.events.store.CloudEventStoreFactory;
+import application.events.store.cloudant.CloudEventStoreCloudant;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.api.OpenTelemetry;
+import application.events.store.cloudant.CloudantChangesFeed;
+
+public class CloudantChangesFeedTest {
+
+    @Mock
+    private Cloudant cloudant;
+
+    @Mock
+    private CloudEventStoreFactory storeFactory;
+
+    @Mock
+    private CachingCloudEventStore cache;
+
+    private CloudEventStoreCloudant store;
+
+    private CloudantChangesFeed objectUnderTest;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        Mockito.when(this.storeFactory.getDefault()).thenReturn(this.cache);
+        this.store = new CloudEventStoreCloudant(this.cloudant, SBApplicationConfig.getCustomGsonBuilder(), 2, 2,
+                2, 2, true, false, OpenTelemetry.noop(), new SimpleMeterRegistry());
+        this.objectUnderTest = new CloudantChangesFeed(this.cloudant, this.store, this.storeFactory, 1000, 100, 10);
+
+        DatabaseInformation dbInfo = Mockito.mock(DatabaseInformation.class);
+        Mockito.when(dbInfo.getDocCount()).thenReturn(5L);
+        Mockito.when(dbInfo.getUpdateSeq()).thenReturn("10-a");
+        ServiceCall<DatabaseInformation> dbInfoCall = CloudEventStoreCloudantTest.mockCall(dbInfo);
+        Mockito.when(this.cloudant.getDatabaseInformation(Mockito.any())).thenReturn(dbInfoCall);
+        AllDocsResult designDocs = Mockito.mock(AllDocsResult.class);
+        ServiceCall<AllDocsResult> designCall = CloudEventStoreCloudantTest.mockCall(designDocs);
+        Mockito.when(this.cloudant.postDesignDocs(Mockito.any())).thenReturn(designCall);
+    }
+
+    @Test
+    public void testChangesAdjustCount() throws Exception {
+        ChangesResult first = mockChanges("13-a", mockChange("a", "1-a", false), mockChange("b", "1-b", false),
+                mockChange("_design/events", "2-d", false));
+        ChangesResult second = mockChanges("14-a", mockChange("c", "1-c", false));
+        ServiceCall<ChangesResult> firstCall = CloudEventStoreCloudantTest.mockCall(first);
+        ServiceCall<ChangesResult> secondCall = CloudEventStoreCloudantTest.mockCall(second);
+        Mockito.when(this.cloudant.postChanges(Mockito.any())).thenReturn(firstCall, secondCall);
+
+        this.objectUnderTest.resync();
+        assertEquals("10-a", this.objectUnderTest.getLastSeq(), "Unexpected sequence");
+        assertEquals(5, this.store.getNumEvents(), "Unexpected number of events");
+
+        assertEquals(3, this.objectUnderTest.poll(), "Unexpected number of changes");
+        assertEquals("13-a", this.objectUnderTest.getLastSeq(), "Unexpected sequence");
+        assertEquals(7, this.store.getNumEvents(), "Unexpected number of events");
+
+        this.objectUnderTest.poll();
+        assertEquals("14-a", this.objectUnderTest.getLastSeq(), "Unexpected sequence");
+        assertEquals(8, this.store.getNumEvents(), "Unexpected number of events");
+        Mockito.verify(this.cache, Mockito.times(3)).invalidate();
+    }
+
+    @Test
+    public void testDeletionOfUnseenDocumentReconcilesCount() throws Exception {
+        // Created and deleted since the last poll, so the feed only reports the deletion
+        ServiceCall<ChangesResult> changesCall = CloudEventStoreCloudantTest
+                .mockCall(mockChanges("12-a", mockChange("a", "1-a", false), mockChange("b", "2-b", true)));
+        Mockito.when(this.cloudant.postChanges(Mockito.any())).thenReturn(changesCall);
+
+        this.objectUnderTest.resync();
+        mockDatabaseInformation(6, "12-a");
+        assertEquals(2, this.objectUnderTest.poll(), "Unexpected number of changes");
+
+        assertEquals(6, this.store.getNumEvents(), "Unexpected number of events");
+        assertEquals("12-a", this.objectUnderTest.getLastSeq(), "Unexpected sequence");
+        Mockito.verify(this.cache, Mockito.times(2)).invalidate();
+    }
+
+    @Test
+    public void testLaterRevisionReconcilesCount() throws Exception {
+        // The first revision was compacted away before the feed saw it
+        ServiceCall<ChangesResult> changesCall = CloudEventStoreCloudantTest
+                .mockCall(mockChanges("11-a", mockChange("a", "2-a", false)));
+        Mockito.when(this.cloudant.postChanges(Mockito.any())).thenReturn(changesCall);
+
+        this.objectUnderTest.resync();
+        mockDatabaseInformation(6, "11-a");
+        this.objectUnderTest.poll();
+
+        assertEquals(6, this.store.getNumEvents(), "Unexpected number of events");
+        assertEquals("11-a", this.objectUnderTest.getLastSeq(), "Unexpected sequence");
+    }
+
+    @Test
+    public void testOwnWritesAreCountedOnce() throws Exception {
+        ServiceCall<DocumentResult> postCall = CloudEventStoreCloudantTest.mockCall(
+                Mockito.mock(DocumentResult.class));
+        Mockito.when(this.cloudant.postDocument(Mockito.any())).thenReturn(postCall);
+        ServiceCall<ChangesResult> changesCall = CloudEventStoreCloudantTest
+                .mockCall(mockChanges("11-a", mockChange("a", "1-a", false)));
+        Mockito.when(this.cloudant.postChanges(Mockito.any())).thenReturn(changesCall);
+
+        this.objectUnderTest.resync();
+        this.store.addEvent(EventControllerEndpointTest.createTestCloudEvent());
+        this.objectUnderTest.poll();
+
+        assertEquals(6, this.store.getNumEvents(), "Unexpected number of events");
+    }
+
+    @Test
+    public void testReconcileLeavesCountToFeed() throws Exception {
+        ServiceCall<ChangesResult> changesCall = CloudEventStoreCloudantTest
+                .mockCall(mockChanges("11-a", mockChange("a", "1-a", false)));
+        Mockito.when(this.cloudant.postChanges(Mockito.any())).thenReturn(changesCall);
+
+        this.objectUnderTest.resync();
+        DatabaseInformation dbInfo = Mockito.mock(DatabaseInformation.class);
+        Mockito.when(dbInfo.getDocCount()).thenReturn(6L);
+        ServiceCall<DatabaseInformation> dbInfoCall = CloudEventStoreCloudantTest.mockCall(dbInfo);
+        Mockito.when(this.cloudant.getDatabaseInformation(Mockito.any())).thenReturn(dbInfoCall);
+        assertEquals(5, this.store.reconcileEventCount(), "Expected the count to be left to the feed");
+        this.objectUnderTest.poll();
+
+        assertEquals(6, this.store.getNumEvents(), "Unexpected number of events");
+    }
+
+    @Test
+    public void testNoChanges() throws Exception {
+        ServiceCall<ChangesResult> changesCall = CloudEventStoreCloudantTest.mockCall(mockChanges("10-a"));
+        Mockito.when(this.cloudant.postChanges(Mockito.any())).thenReturn(changesCall);
+
+        this.objectUnderTest.resync();
+        assertEquals(0, this.objectUnderTest.poll(), "Unexpected number of changes");
+        Mockito.verify(this.cache, Mockito.times(1)).invalidate();
+    }
+
+    private void mockDatabaseInformation(long docCount, String updateSeq) {
+        DatabaseInformation dbInfo = Mockito.mock(DatabaseInformation.class);
+        Mockito.when(dbInfo.getDocCount()).thenReturn(docCount);
+        Mockito.when(dbInfo.getUpdateSeq()).thenReturn(updateSeq);
+        ServiceCall<DatabaseInformation> dbInfoCall = CloudEventStoreCloudantTest.mockCall(dbInfo);
+        Mockito.when(this.cloudant.getDatabaseInformation(Mockito.any())).thenReturn(dbInfoCall);
+    }
+
+    private static ChangesResult mockChanges(String lastSeq, ChangesResultItem... items) {
+        ChangesResult result = Mockito.mock(ChangesResult.class);
+        Mockito.when(result.getLastSeq()).thenReturn(lastSeq);
+        Mockito.when(result.getResults()).thenReturn(Arrays.asList(items));
+        return result;
+    }
+
+    private static ChangesResultItem mockChange(String id, String rev, boolean deleted) {
+        Change change = Mockito.mock(Change.class);
+        Mockito.when(change.getRev()).thenReturn(rev);
+        ChangesResultItem item = Mockito.mock(ChangesResultItem.class);
+        Mockito.when(item.getId()).thenReturn(id);
+        Mockito.when(item.getChanges()).thenReturn(Collections.singletonList(change));
+        Mockito.when(item.isDeleted()).thenReturn(deleted);
+        return item;
+    }
+
+}
@@ -0,0 +1,48 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import com.ibm.cloud.cloudant.v1.Cloudant;
+import com.ibm.cloud.sdk.core.security.NoAuthAuthenticator;
+
+import application.events.store.cloudant.CloudantHttpSettings;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+public class CloudantHttpSettingsTest {
+
+    @Test
+    public void testApply() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Cloudant cloudant = new Cloudant("test", new NoAuthAuthenticator());
+        new CloudantHttpSettings(48, 16, 60000, 2000, 45000, false, false, registry).apply(cloudant);
+
+        OkHttpClient client = cloudant.getClient();
+        assertEquals(48, client.dispatcher().getMaxRequests(), "Unexpected request limit");
+        assertEquals(48, client.dispatcher().getMaxRequestsPerHost(), "Unexpected request limit per host");
+        assertEquals(2000, client.connectTimeoutMillis(), "Unexpected connect timeout");
+        assertEquals(45000, client.readTimeoutMillis(), "Unexpected read timeout");
+        assertEquals(Collections.singletonList(Protocol.HTTP_1_1), client.protocols(), "Unexpected protocols");
+        assertTrue(client.interceptors().isEmpty(), "Expected gzip to be disabled");
+
+        assertEquals(16, registry.get("okhttp.pool.connection.limit").tag("client", "cloudant").gauge().value(),
+                "Unexpected pool limit");
+        assertNotNull(registry.get("okhttp.dispatcher.calls").tag("state", "queued").gauge(),
+                "Expected the queued requests gauge");
+    }
+
+    @Test
+    public void testInvalidSettings() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CloudantHttpSettings(0, 16, 60000, 2000, 45000, true, false, new SimpleMeterRegistry()));
+    }
+
+}
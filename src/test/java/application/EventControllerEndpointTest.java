@@ -2,26 +2,34 @@ package application;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
-import java.time.ZonedDateTime;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.CompletionException;
 
-import com.google.gson.Gson;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ibm.cloud.cloudant.v1.Cloudant;
-import com.ibm.cloud.cloudant.v1.model.AllDocsResult;
-import com.ibm.cloud.cloudant.v1.model.DocsResultRow;
-import com.ibm.cloud.cloudant.v1.model.Document;
-import com.ibm.cloud.sdk.core.http.Response;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.Answers;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -31,40 +39,64 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import application.events.EventController;
+import application.events.EventMetrics;
+import application.events.EventTracing;
 import application.events.EventService;
 import application.events.EventServiceFactory;
+import application.events.JsonPayload;
+import application.events.PurgeJob;
+import application.events.store.CloudEventStore;
 import application.events.store.CloudEventStoreFactory;
+import application.events.store.EventPage;
+import application.events.store.EventQuery;
+import application.events.store.EventStoreFullException;
+import application.events.store.PurgeMode;
 import io.cloudevents.CloudEvent;
-import io.cloudevents.extensions.DistributedTracingExtension;
-import io.cloudevents.extensions.ExtensionFormat;
-import io.cloudevents.format.Wire;
-import io.cloudevents.v02.CloudEventBuilder;
-import io.cloudevents.v02.CloudEventImpl;
-import io.cloudevents.v02.http.Marshallers;
+import io.cloudevents.core.builder.CloudEventBuilder;
+import io.cloudevents.http.HttpMessageFactory;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.sdk.testing.junit5.OpenTelemetryExtension;
+import io.opentelemetry.sdk.trace.data.SpanData;
 
 public class EventControllerEndpointTest {
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @RegisterExtension
+    static final OpenTelemetryExtension OTEL = OpenTelemetryExtension.create();
+
     @Mock
     private CloudEventStoreFactory cesFactory;
 
     @Mock
     private Cloudant cloudant;
 
-    @Mock
+    /* The asynchronous methods call the mocked blocking ones */
+    @Mock(answer = Answers.CALLS_REAL_METHODS)
     private EventService eventService;
 
     @Mock
     private EventServiceFactory eventServiceFactory;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private EventController objectUnderTest;
 
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
         Mockito.when(this.eventServiceFactory.getDefault()).thenReturn(this.eventService);
-        this.objectUnderTest = new EventController(this.eventServiceFactory);
+        this.objectUnderTest = new EventController(this.eventServiceFactory, 1024, 4096, this.meterRegistry,
+                OTEL.getOpenTelemetry());
     }
 
     @Test
@@ -88,190 +120,437 @@ public class EventControllerEndpointTest {
     }
 
     public ResponseEntity<String> testEmptyEvents(final boolean deleteAll) throws Exception {
-        @SuppressWarnings("rawtypes")
-        List<CloudEventImpl> docs = Collections.emptyList();
+        List<CloudEvent> docs = Collections.emptyList();
         this.mockGetEvents(docs);
-        ResponseEntity<String> response = objectUnderTest.events(deleteAll);
+        ResponseEntity<String> response = getEvents(deleteAll);
         return response;
     }
 
-    public void mockGetEvents(@SuppressWarnings("rawtypes") final List<CloudEventImpl> docs) throws Exception {
-        Gson customGson = SBApplicationConfig.getCustomGsonBuilder().create();
-
-        List<DocsResultRow> docsResultRows = new ArrayList<>();
-
-        for (CloudEvent<?, ?> cloudEvent : docs) {
-            Document document = new Document();
-            document.setProperties(customGson.fromJson(customGson.toJson(cloudEvent), Map.class));
-
-            DocsResultRow docsResultRowMock = Mockito.mock(DocsResultRow.class);
-            Mockito.when(docsResultRowMock.getDoc()).thenReturn(document);
-            docsResultRows.add(docsResultRowMock);
-        }
+    public void mockGetEvents(final List<CloudEvent> docs) throws Exception {
+        this.mockGetEvents(docs, null);
+    }
 
+    public void mockGetEvents(final List<CloudEvent> docs, final String bookmark) throws Exception {
+        List<CloudEvent> events = new ArrayList<>(docs);
         long expectedNumEvents = docs.size();
 
-        @SuppressWarnings("unchecked")
-        Response<AllDocsResult> responseMock = Mockito.mock(Response.class);
-        AllDocsResult allDocsResultMock = Mockito.mock(AllDocsResult.class);
-
         Mockito.when(this.eventService.getNumEvents()).thenReturn(expectedNumEvents);
-        Mockito.when(responseMock.getResult()).thenReturn(allDocsResultMock);
-        Mockito.when(allDocsResultMock.getRows()).thenReturn(docsResultRows);
+        Mockito.when(this.eventService.getEvents(Mockito.anyInt(), Mockito.any(), Mockito.anyBoolean()))
+                .thenReturn(new EventPage(events, bookmark));
     }
 
     @Test
     public void testEventEndpoint() throws Exception {
-        CloudEventImpl<Map<?, ?>> ce = createTestCloudEvent();
-        @SuppressWarnings("rawtypes")
-        ArgumentCaptor<CloudEventImpl> eventCaptor = ArgumentCaptor.forClass(CloudEventImpl.class);
+        CloudEvent ce = createTestCloudEvent();
+        ArgumentCaptor<CloudEvent> eventCaptor = ArgumentCaptor.forClass(CloudEvent.class);
         Mockito.doNothing().when(this.eventService).addEvent(eventCaptor.capture());
 
-        ResponseEntity<Void> result = this.objectUnderTest.event(getHeadersMap(ce), getPayload(ce));
+        ResponseEntity<Void> result = this.post(getHeadersMap(ce), getBody(ce));
         validateEntityPost(result);
         Mockito.verify(this.eventService).addEvent(eventCaptor.capture());
-        CloudEventImpl<?> captorVal = eventCaptor.getValue();
-        assertCloudEventImplEquals(ce, captorVal);
+        CloudEvent captorVal = eventCaptor.getValue();
+        assertCloudEventEquals(ce, captorVal);
 
-        @SuppressWarnings("rawtypes")
-        List<CloudEventImpl> docs = new ArrayList<>();
+        List<CloudEvent> docs = new ArrayList<>();
         docs.add(ce);
         this.mockGetEvents(docs);
-        ResponseEntity<String> response = this.objectUnderTest.events(false);
+        ResponseEntity<String> response = this.getEvents(false);
         System.out.println("testEventEndpoint response: " + response);
         validateNonzeroEvents(response);
     }
 
     @Test
-    public void testEventsDeleteAllEndpoint() throws Exception {
+    public void testEventKeepsRawData() throws Exception {
+        CloudEvent ce = createTestCloudEvent();
+        ArgumentCaptor<CloudEvent> eventCaptor = ArgumentCaptor.forClass(CloudEvent.class);
+        Mockito.doNothing().when(this.eventService).addEvent(eventCaptor.capture());
+
+        this.post(getHeadersMap(ce), getBody(ce));
+
+        Object data = eventCaptor.getValue().getData();
+        assertTrue(data instanceof JsonPayload, "Expected raw data but was " + data.getClass());
+        assertEquals(getPayload(ce), data.toString(), "Unexpected data");
+    }
+
+    @Test
+    public void testEventTooLarge() throws Exception {
+        CloudEvent ce = createTestCloudEvent();
+        Map<String, Object> headers = getHeadersMap(ce);
+        byte[] payload = new byte[1025];
+
+        headers.put("content-length", String.valueOf(payload.length));
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> this.objectUnderTest.event(headers, new ByteArrayInputStream(payload)));
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, e.getStatus(), "Unexpected response code");
+
+        headers.remove("content-length");
+        e = assertThrows(ResponseStatusException.class,
+                () -> this.objectUnderTest.event(headers, new ByteArrayInputStream(payload)));
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, e.getStatus(), "Unexpected response code");
+        Mockito.verify(this.eventService, Mockito.never()).addEvent(Mockito.any());
+    }
+
+    @Test
+    public void testEventInvalidJson() throws Exception {
+        CloudEvent ce = createTestCloudEvent();
+        byte[] payload = "{\"test\": ".getBytes(StandardCharsets.UTF_8);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> this.objectUnderTest.event(getHeadersMap(ce), new ByteArrayInputStream(payload)));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus(), "Unexpected response code");
+        Mockito.verify(this.eventService, Mockito.never()).addEvent(Mockito.any());
+    }
+
+    @Test
+    public void testStructuredEvent() throws Exception {
+        String body = "{\"specversion\":\"1.0\",\"type\":\"knative.eventing.test\",\"id\":\"A234-1234-1234\","
+                + "\"source\":\"https://github.com/cloudevents/spec/pull\",\"datacontenttype\":\"application/json\","
+                + "\"traceparent\":\"0\",\"tracestate\":\"congo=4\",\"data\":{\"test\":\"value\"}}";
+        ArgumentCaptor<CloudEvent> eventCaptor = ArgumentCaptor.forClass(CloudEvent.class);
+        Mockito.doNothing().when(this.eventService).addEvent(eventCaptor.capture());
+
+        ResponseEntity<Void> result = this.post(
+                Collections.singletonMap(HttpHeaders.CONTENT_TYPE, EventController.CLOUDEVENTS_JSON_VALUE),
+                toBody(body));
+        validateEntityPost(result);
+        CloudEvent event = eventCaptor.getValue();
+        assertEquals("A234-1234-1234", event.getId(), "Unexpected id");
+        assertEquals("{\"test\":\"value\"}", event.getData().toString(), "Unexpected data");
+        assertEquals("congo=4", event.getExtension("tracestate"), "Expected the tracing extension");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBatchEvents() throws Exception {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < 3; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"specversion\":\"1.0\",\"type\":\"knative.eventing.test\",")
+                    .append("\"source\":\"https://github.com/cloudevents/spec/pull\",\"id\":\"").append(i)
+                    .append("\",\"data\":{\"index\":").append(i).append("}}");
+        }
+        body.append("]");
         @SuppressWarnings("rawtypes")
-        ArgumentCaptor<CloudEventImpl> eventCaptor = ArgumentCaptor.forClass(CloudEventImpl.class);
+        ArgumentCaptor<List> eventsCaptor = ArgumentCaptor.forClass(List.class);
+        Mockito.doNothing().when(this.eventService).addEvents(eventsCaptor.capture());
+
+        ResponseEntity<Void> result = this.post(
+                Collections.singletonMap(HttpHeaders.CONTENT_TYPE, EventController.CLOUDEVENTS_BATCH_JSON_VALUE),
+                toBody(body.toString()));
+        validateEntityPost(result);
+        List<CloudEvent> events = eventsCaptor.getValue();
+        assertEquals(3, events.size(), "Unexpected number of events");
+        assertEquals("{\"index\":2}", events.get(2).getData().toString(), "Unexpected data");
+        Mockito.verify(this.eventService, Mockito.never()).addEvent(Mockito.any());
+    }
+
+    @Test
+    public void testEventContentTypes() throws Exception {
+        CloudEvent ce = createTestCloudEvent();
+        Map<String, Object> headers = getHeadersMap(ce);
+        headers.keySet().removeIf(HttpHeaders.CONTENT_TYPE::equalsIgnoreCase);
+        headers.put("content-type", "application/json; charset=utf-8");
+        validateEntityPost(this.post(headers, getBody(ce)));
+        Mockito.verify(this.eventService).addEvent(Mockito.any());
+
+        headers.put("content-type", MediaType.TEXT_PLAIN_VALUE);
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> this.objectUnderTest.event(headers, getBody(ce)));
+        assertEquals(HttpStatus.UNSUPPORTED_MEDIA_TYPE, e.getStatus(), "Unexpected response code");
+    }
+
+    @Test
+    public void testEventStoreFull() throws Exception {
+        CloudEvent ce = createTestCloudEvent();
+        Mockito.doThrow(new EventStoreFullException("full")).when(this.eventService).addEvent(Mockito.any());
+
+        ResponseEntity<Void> result = this.post(getHeadersMap(ce), getBody(ce));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, result.getStatusCode(), "Unexpected response code");
+        assertEquals("1", result.getHeaders().getFirst(HttpHeaders.RETRY_AFTER), "Expected a retry hint");
+
+        Mockito.doThrow(new IllegalStateException("down")).when(this.eventService).addEvent(Mockito.any());
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> this.post(getHeadersMap(ce), getBody(ce)));
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, e.getStatus(), "Unexpected response code");
+    }
+
+    @Test
+    public void testIngestMetrics() throws Exception {
+        CloudEvent ce = createTestCloudEvent();
+        this.post(getHeadersMap(ce), getBody(ce));
+        Timer unmarshal = this.meterRegistry.get(EventMetrics.INGEST_UNMARSHAL).tag("mode", "binary").timer();
+        assertEquals(1, unmarshal.count(), "Unexpected number of unmarshalled requests");
+        assertEquals(1, unmarshal.getId().getTags().size(), "Expected the timer tagged with the mode only");
+        assertEquals(1, this.meterRegistry.get(EventMetrics.INGEST_EVENTS).tag("mode", "binary")
+                .tag(EventMetrics.TAG_TYPE, ce.getType()).tag(EventMetrics.TAG_SOURCE, ce.getSource().toString())
+                .counter().count(), "Unexpected number of events");
+        assertEquals(getBody(ce).available(),
+                this.meterRegistry.get(EventMetrics.INGEST_PAYLOAD).summary().totalAmount(), "Unexpected payload size");
+
+        String body = "[{\"specversion\":\"1.0\",\"type\":\"a\",\"source\":\"s\",\"id\":\"1\"},"
+                + "{\"specversion\":\"1.0\",\"type\":\"b\",\"source\":\"s\",\"id\":\"2\"}]";
+        this.post(Collections.singletonMap(HttpHeaders.CONTENT_TYPE, EventController.CLOUDEVENTS_BATCH_JSON_VALUE),
+                toBody(body));
+        DistributionSummary batchSize = this.meterRegistry.get(EventMetrics.INGEST_BATCH_SIZE).summary();
+        assertEquals(2, batchSize.totalAmount(), "Unexpected batch size");
+        assertEquals(2, this.meterRegistry.get(EventMetrics.INGEST_EVENTS).tag(EventMetrics.TAG_TYPE, "mixed")
+                .tag(EventMetrics.TAG_SOURCE, "s").counter().count(), "Unexpected number of events");
+
+        assertThrows(ResponseStatusException.class,
+                () -> this.post(getHeadersMap(ce), toBody("{\"test\": ")));
+        assertEquals(1, this.meterRegistry.get(EventMetrics.INGEST_ERRORS).tag("status", "400").counter().count(),
+                "Unexpected number of errors");
+    }
+
+    @Test
+    public void testTracing() throws Exception {
+        String traceId = "0af7651916cd43dd8448eb211c80319c";
+        String producerSpanId = "b7ad6b7169203331";
+        CloudEvent ce = CloudEventBuilder.v1(createTestCloudEvent())
+                .withExtension("traceparent", "00-" + traceId + "-" + producerSpanId + "-01").build();
+
+        this.post(getHeadersMap(ce), getBody(ce));
+
+        List<SpanData> spans = OTEL.getSpans();
+        assertEquals(2, spans.size(), "Unexpected number of spans");
+        SpanData ingest = spans.stream().filter(span -> span.getName().equals("ingest event")).findFirst().get();
+        assertEquals(traceId, ingest.getTraceId(), "Expected the producer's trace to continue");
+        assertEquals(producerSpanId, ingest.getParentSpanId(), "Expected the producer's span as parent");
+        assertEquals(ce.getId(), ingest.getAttributes().get(EventTracing.EVENT_ID), "Unexpected event id");
+        SpanData unmarshal = spans.stream().filter(span -> span.getName().equals("unmarshal")).findFirst().get();
+        assertEquals(ingest.getSpanId(), unmarshal.getParentSpanId(), "Expected unmarshal within the ingest span");
+        assertEquals(ingest.getStartEpochNanos(), unmarshal.getStartEpochNanos(), "Expected unmarshal to start first");
+        assertTrue(unmarshal.getEndEpochNanos() <= ingest.getEndEpochNanos(), "Expected unmarshal to end first");
+    }
+
+    @Test
+    public void testEventsDeleteAllEndpoint() throws Exception {
+        ArgumentCaptor<CloudEvent> eventCaptor = ArgumentCaptor.forClass(CloudEvent.class);
         Mockito.doNothing().when(this.eventService).addEvent(eventCaptor.capture());
 
-        CloudEventImpl<Map<?, ?>> ce = createTestCloudEvent();
-        ResponseEntity<Void> result = this.objectUnderTest.event(getHeadersMap(ce), getPayload(ce));
+        CloudEvent ce = createTestCloudEvent();
+        ResponseEntity<Void> result = this.post(getHeadersMap(ce), getBody(ce));
         validateEntityPost(result);
         Mockito.verify(this.eventService).addEvent(eventCaptor.capture());
-        CloudEventImpl<?> captorVal = eventCaptor.getValue();
-        assertCloudEventImplEquals(ce, captorVal);
+        CloudEvent captorVal = eventCaptor.getValue();
+        assertCloudEventEquals(ce, captorVal);
 
         ResponseEntity<String> response = this.testEmptyEvents();
         System.out.println("testEventsDeleteAllEndpoint response: " + response);
         validateServerResponse(response, HttpStatus.OK);
 
+        PurgeJob job = new PurgeJob(PurgeMode.BULK_DELETE);
+        Mockito.when(this.eventService.startPurge(PurgeMode.BULK_DELETE)).thenReturn(job);
         response = this.testEmptyEvents(true);
         System.out.println("testEventsDeleteAllEndpoint response: " + response);
+        validateServerResponse(response, HttpStatus.ACCEPTED);
+        assertTrue(response.getBody().contains("Deletion of all cloud events started"),
+                "Invalid response from server : " + response);
+        Mockito.verify(this.eventService).startPurge(PurgeMode.BULK_DELETE);
+
+        job.addDeletedEvents(1);
+        job.complete();
+        Mockito.when(this.eventService.getPurgeJob()).thenReturn(job);
+        response = this.objectUnderTest.purgeStatus();
         validateServerResponse(response, HttpStatus.OK);
-        assertTrue(response.getBody().contains("All cloud events deleted"),
+        assertTrue(response.getBody().contains("COMPLETED: 1 events deleted"),
                 "Invalid response from server : " + response);
 
-        response = this.objectUnderTest.events(false);
+        response = this.getEvents(false);
         assertTrue(response.getBody().startsWith("No events found in the database"),
                 "Invalid response from server : " + response);
     }
 
-    public static void assertCloudEventImplEquals(final CloudEventImpl<?> expectedCe,
-            final CloudEventImpl<?> actualCe) {
-        assertEquals(expectedCe.getData().get(), actualCe.getData().get(), "Unexpected data");
-        assertEquals(expectedCe.getAttributes().getContenttype().get(), actualCe.getAttributes().getContenttype().get(),
-                "Unexpected data");
+    @Test
+    public void testEventsPagination() throws Exception {
+        List<CloudEvent> docs = new ArrayList<>();
+        docs.add(createTestCloudEvent());
+        this.mockGetEvents(docs, "bmV4dA");
+
+        ResponseEntity<String> response = this.objectUnderTest.events(false, "bulk_delete", 1, "Zmlyc3Q", "desc");
+        validateNonzeroEvents(response);
+        Mockito.verify(this.eventService).getEvents(1, "Zmlyc3Q", true);
+        String link = response.getHeaders().getFirst(HttpHeaders.LINK);
+        assertEquals("</v1/events?limit=1&bookmark=bmV4dA&order=desc>; rel=\"next\"", link, "Unexpected next link");
+        assertTrue(response.getBody().contains("NEXT PAGE: /v1/events?limit=1&bookmark=bmV4dA&order=desc"),
+                "Invalid response from server : " + response);
+    }
+
+    @Test
+    public void testEventsInvalidLimit() throws Exception {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> this.objectUnderTest.events(false, "bulk_delete", EventController.MAX_PAGE_SIZE + 1, null, "asc"));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus(), "Unexpected response code");
+    }
 
-        assertEquals(expectedCe.getAttributes().getId(), actualCe.getAttributes().getId(), "Unexpected id");
+    @Test
+    public void testInvalidStoreResponse() throws Exception {
+        Mockito.when(this.eventService.getNumEvents()).thenReturn(1L);
+        Mockito.when(this.eventService.getEvents(Mockito.anyInt(), Mockito.any(), Mockito.anyBoolean()))
+                .thenThrow(new IllegalStateException("Invalid _all_docs response"));
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> this.objectUnderTest.events(false, "bulk_delete", 1, null, "asc"));
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, e.getStatus(), "Expected the store to be at fault");
+    }
 
-        assertEquals(expectedCe.getAttributes().getContenttype().isPresent(),
-                actualCe.getAttributes().getContenttype().isPresent(), "Unexpected content type presence");
-        if (expectedCe.getAttributes().getContenttype().isPresent()) {
-            assertEquals(expectedCe.getAttributes().getContenttype().get(),
-                    actualCe.getAttributes().getContenttype().get(), "Unexpected content type");
+    @Test
+    public void testStreamEventsEndpoint() throws Exception {
+        List<CloudEvent> firstPage = new ArrayList<>();
+        firstPage.add(createTestCloudEvent());
+        firstPage.add(createTestCloudEvent());
+        List<CloudEvent> secondPage = new ArrayList<>();
+        secondPage.add(createTestCloudEvent());
+        Mockito.when(this.eventService.getEvents(2, null, false)).thenReturn(new EventPage(firstPage, "Yg"));
+        Mockito.when(this.eventService.getEvents(1, "Yg", false)).thenReturn(new EventPage(secondPage, "Yw"));
+
+        ResponseEntity<StreamingResponseBody> response = this.objectUnderTest.streamEvents(3, 2, null, "asc");
+        assertEquals(HttpStatus.OK, response.getStatusCode(), "Unexpected response code");
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType(), "Unexpected content type");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+        assertEquals(3, lines.length, "Unexpected number of streamed events");
+        for (String line : lines) {
+            assertTrue(line.startsWith("{") && line.contains("\"id\":\"A234-1234-1234\""), "Unexpected line: " + line);
         }
+        Mockito.verify(this.eventService, Mockito.times(2)).getEvents(Mockito.anyInt(), Mockito.any(),
+                Mockito.anyBoolean());
+    }
 
-        assertEquals(expectedCe.getAttributes().getMediaType().isPresent(),
-                actualCe.getAttributes().getMediaType().isPresent(), "Unexpected media type");
-        if (expectedCe.getAttributes().getMediaType().isPresent()) {
-            assertEquals(expectedCe.getAttributes().getMediaType().get(), actualCe.getAttributes().getMediaType().get(),
-                    "Unexpected media type");
+    @Test
+    public void testEventsAreTextByDefault() throws Exception {
+        this.mockGetEvents(Collections.emptyList());
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(this.objectUnderTest).build();
+
+        for (String accept : new String[] { null, "*/*", "text/html,application/xhtml+xml,*/*;q=0.8" }) {
+            mvc.perform(accept == null ? get("/v1/events") : get("/v1/events").header(HttpHeaders.ACCEPT, accept))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+                    .andExpect(content().string("No events found in the database!"));
         }
 
-        assertEquals(expectedCe.getAttributes().getSchemaurl().isPresent(),
-                actualCe.getAttributes().getSchemaurl().isPresent(), "Unexpected schema URL presence");
-        if (expectedCe.getAttributes().getSchemaurl().isPresent()) {
-            assertEquals(expectedCe.getAttributes().getSchemaurl().get(), actualCe.getAttributes().getSchemaurl().get(),
-                    "Unexpected schema URL");
+        PurgeJob job = new PurgeJob(PurgeMode.BULK_DELETE);
+        Mockito.when(this.eventService.startPurge(PurgeMode.BULK_DELETE)).thenReturn(job);
+        mvc.perform(get("/v1/events").param("deleteAll", "true")).andExpect(status().isAccepted());
+        Mockito.verify(this.eventService).startPurge(PurgeMode.BULK_DELETE);
+
+        MvcResult stream = mvc.perform(get(EventController.STREAM_PATH).param("limit", "1")).andReturn();
+        mvc.perform(asyncDispatch(stream)).andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON));
+    }
+
+    @Test
+    public void testQueryEventsEndpoint() throws Exception {
+        List<CloudEvent> page = new ArrayList<>();
+        page.add(createTestCloudEvent());
+        ArgumentCaptor<EventQuery> queryCaptor = ArgumentCaptor.forClass(EventQuery.class);
+        Mockito.when(this.eventService.queryEvents(queryCaptor.capture())).thenReturn(new EventPage(page, "bmV4dA"));
+
+        ResponseEntity<StreamingResponseBody> response = this.objectUnderTest.queryEvents("knative.eventing.test",
+                null, null, "2019-10-09T00:00:00Z", "2019-10-10T00:00:00+02:00", 1, null, "desc");
+        assertEquals(HttpStatus.OK, response.getStatusCode(), "Unexpected response code");
+        assertEquals("</v1/events/query?type=knative.eventing.test&from=2019-10-09T00:00:00Z"
+                + "&to=2019-10-09T22:00:00Z&limit=1&bookmark=bmV4dA&order=desc>; rel=\"next\"",
+                response.getHeaders().getFirst(HttpHeaders.LINK), "Unexpected next link");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertTrue(out.toString(StandardCharsets.UTF_8.name()).contains("\"id\":\"A234-1234-1234\""),
+                "Unexpected response: " + out);
+
+        EventQuery query = queryCaptor.getValue();
+        assertEquals("knative.eventing.test", query.getType(), "Unexpected type");
+        assertEquals(OffsetDateTime.parse("2019-10-09T22:00:00Z").toInstant(), query.getTo(), "Unexpected end");
+        assertTrue(query.isDescending(), "Expected descending order");
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> this.objectUnderTest.queryEvents(null, null, null, "yesterday", null, 1, null, "asc"));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus(), "Unexpected response code");
+        e = assertThrows(ResponseStatusException.class, () -> this.objectUnderTest.queryEvents(null, null, null,
+                "2019-10-10T00:00:00Z", "2019-10-09T00:00:00Z", 1, null, "asc"));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus(), "Unexpected response code");
+    }
+
+    /*
+     * Waits for the stored response, failing with the exception that sets the response status as Spring would.
+     */
+    private ResponseEntity<Void> post(final Map<String, Object> headers, final InputStream body) throws Exception {
+        try {
+            return this.objectUnderTest.event(headers, body).join();
+        } catch (CompletionException e) {
+            throw (Exception) e.getCause();
         }
+    }
 
-        assertEquals(expectedCe.getAttributes().getSource(), actualCe.getAttributes().getSource(), "Unexpected source");
+    private ResponseEntity<String> getEvents(final boolean deleteAll) throws Exception {
+        return this.objectUnderTest.events(deleteAll, "bulk_delete", CloudEventStore.DEFAULT_MAX_EVENTS, null, "asc");
+    }
 
-        assertEquals(expectedCe.getAttributes().getSpecversion(), actualCe.getAttributes().getSpecversion(),
-                "Unexpected spec version");
+    public static void assertCloudEventEquals(final CloudEvent expectedCe, final CloudEvent actualCe)
+            throws IOException {
+        assertEquals(getData(expectedCe), getData(actualCe), "Unexpected data");
+        assertEquals(expectedCe.getId(), actualCe.getId(), "Unexpected id");
+        assertEquals(expectedCe.getDataContentType(), actualCe.getDataContentType(), "Unexpected content type");
+        assertEquals(expectedCe.getDataSchema(), actualCe.getDataSchema(), "Unexpected data schema");
+        assertEquals(expectedCe.getSource(), actualCe.getSource(), "Unexpected source");
+        assertEquals(expectedCe.getSpecVersion(), actualCe.getSpecVersion(), "Unexpected spec version");
+        assertEquals(expectedCe.getSubject(), actualCe.getSubject(), "Unexpected subject");
+
+        assertEquals(expectedCe.getTime() != null, actualCe.getTime() != null, "Unexpected time presence");
+        if (expectedCe.getTime() != null) {
+            assertEquals(expectedCe.getTime().toEpochSecond(), actualCe.getTime().toEpochSecond(), "Unexpected time");
+        }
 
-        assertEquals(expectedCe.getAttributes().getTime().isPresent(), actualCe.getAttributes().getTime().isPresent(),
-                "Unexpected time presence");
-        if (expectedCe.getAttributes().getTime().isPresent()) {
-            ZonedDateTime expectedTime = expectedCe.getAttributes().getTime().get();
-            ZonedDateTime actualTime = actualCe.getAttributes().getTime().get();
-            assertEquals(expectedTime.toEpochSecond(), actualTime.toEpochSecond(), "Unexpected time");
+        assertEquals(expectedCe.getType(), actualCe.getType(), "Unexpected type");
+        assertEquals(expectedCe.getExtensionNames(), actualCe.getExtensionNames(), "Unexpected extensions");
+        for (String name : expectedCe.getExtensionNames()) {
+            assertEquals(expectedCe.getExtension(name), actualCe.getExtension(name), "Unexpected extension " + name);
         }
+    }
+
+    private static Object getData(final CloudEvent ce) throws IOException {
+        return ce.getData() == null ? null : MAPPER.readValue(ce.getData().toBytes(), Map.class);
+    }
 
-        assertEquals(expectedCe.getAttributes().getType(), actualCe.getAttributes().getType(), "Unexpected type");
+    public static InputStream getBody(final CloudEvent ce) {
+        return toBody(getPayload(ce));
     }
 
-    public static String getPayload(final CloudEventImpl<Map<?, ?>> ce) {
-        return getWire(ce).getPayload().get();
+    private static InputStream toBody(final String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
     }
 
-    public static Map<String, Object> getHeadersMap(final CloudEventImpl<Map<?, ?>> ce) {
-        /* Marshal the event as a Wire instance and grab the headers and body */
-        Wire<String, String, String> wire = getWire(ce);
-        Map<String, String> headerVals = wire.getHeaders();
-        Map<String, Object> returnVal = new HashMap<>();
-        returnVal.putAll(headerVals);
-        return returnVal;
+    public static String getPayload(final CloudEvent ce) {
+        return new String(ce.getData().toBytes(), StandardCharsets.UTF_8);
     }
 
-    public static <T> Wire<String, String, String> getWire(final CloudEventImpl<Map<?, ?>> ce) {
-        Wire<String, String, String> wire = Marshallers.<Map<?, ?>>binary().withEvent(() -> ce).marshal();
-        return wire;
+    public static Map<String, Object> getHeadersMap(final CloudEvent ce) {
+        /* Write the event in binary mode and grab the headers */
+        Map<String, Object> headers = new HashMap<>();
+        HttpMessageFactory.createWriter(headers::put, body -> {
+        }).writeBinary(ce);
+        return headers;
     }
 
-    public static HttpEntity<String> createHttpEntityFromEvent(final CloudEventImpl<Map<?, ?>> ce) {
-        /* Marshal the event as a Wire instance and grab the headers and body */
-        Wire<String, String, String> wire = getWire(ce);
-        Map<String, String> headerVals = wire.getHeaders();
+    public static HttpEntity<String> createHttpEntityFromEvent(final CloudEvent ce) {
+        /* Write the event in binary mode and grab the headers and body */
         HttpHeaders headers = new HttpHeaders();
-        for (Entry<String, String> entry : headerVals.entrySet()) {
-            String key = entry.getKey();
-            String value = entry.getValue();
-            List<String> vals;
-            if (headers.containsKey(key)) {
-                vals = headers.get(key);
-            } else {
-                vals = new ArrayList<>();
-                headers.put(key, vals);
-            }
-            vals.add(value);
-        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        HttpMessageFactory.createWriter(headers::add, body::writeBytes).writeBinary(ce);
 
         System.out.println("Cloud Event headers: " + headers);
-        System.out.println("Cloud Event body: " + wire.getPayload().get());
-        HttpEntity<String> request = new HttpEntity<>(wire.getPayload().get(), headers);
+        System.out.println("Cloud Event body: " + body.toString(StandardCharsets.UTF_8));
+        HttpEntity<String> request = new HttpEntity<>(body.toString(StandardCharsets.UTF_8), headers);
         return request;
     }
 
-    public static CloudEventImpl<Map<?, ?>> createTestCloudEvent() {
-        Map<String, String> testValue = new HashMap<>();
-        testValue.put("test", "value");
-
-        /* Create a tracing extension */
-        final DistributedTracingExtension dt = new DistributedTracingExtension();
-        dt.setTraceparent("0");
-        dt.setTracestate("congo=4");
-        /* Format it as extension format */
-        final ExtensionFormat tracing = new DistributedTracingExtension.Format(dt);
-        /* Build a CloudEvent instance */
-        CloudEventImpl<Map<?, ?>> ce = CloudEventBuilder.<Map<?, ?>>builder().withType("knative.eventing.test")
+    public static CloudEvent createTestCloudEvent() {
+        /* Build a CloudEvent instance, with the tracing extension */
+        CloudEvent ce = CloudEventBuilder.v1().withType("knative.eventing.test")
                 .withSource(URI.create("https://github.com/cloudevents/spec/pull")).withId("A234-1234-1234")
-                .withTime(ZonedDateTime.now()).withContenttype(MediaType.APPLICATION_JSON_VALUE).withData(testValue)
-                .withExtension(tracing).build();
+                .withTime(OffsetDateTime.now())
+                .withData(MediaType.APPLICATION_JSON_VALUE, "{\"test\":\"value\"}".getBytes(StandardCharsets.UTF_8))
+                .withExtension("traceparent", "0").withExtension("tracestate", "congo=4").build();
         return ce;
     }
 
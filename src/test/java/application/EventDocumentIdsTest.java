@@ -0,0 +1,65 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import application.events.store.cloudant.EventDocumentIds;
+
+public class EventDocumentIdsTest {
+
+    private static final Instant TIME = Instant.parse("2019-10-09T21:23:08.288Z");
+
+    @Test
+    public void testIdsSortByTime() {
+        EventDocumentIds ids = new EventDocumentIds(false);
+        long time = TIME.toEpochMilli();
+
+        String earlier = ids.next(time - 1);
+        String id = ids.next(time);
+        String later = ids.next(time + 1);
+        assertEquals(26, id.length(), "Unexpected id length");
+        assertTrue(earlier.compareTo(id) < 0 && id.compareTo(later) < 0, "Expected ids in time order");
+        assertTrue(ids.lowerBound(TIME).compareTo(id) < 0, "Expected the lower bound before the id");
+        assertTrue(earlier.compareTo(ids.lowerBound(TIME)) < 0, "Expected the lower bound after earlier ids");
+        assertEquals(TIME, EventDocumentIds.timeOf(id), "Unexpected time");
+    }
+
+    @Test
+    public void testIdsForTheSameTimeAreMonotonic() {
+        EventDocumentIds ids = new EventDocumentIds(false);
+        List<String> generated = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            generated.add(ids.next(TIME.toEpochMilli()));
+        }
+        for (int i = 1; i < generated.size(); i++) {
+            assertTrue(generated.get(i - 1).compareTo(generated.get(i)) < 0,
+                    "Expected increasing ids: " + generated.get(i - 1) + ", " + generated.get(i));
+        }
+    }
+
+    @Test
+    public void testPartitionedByDay() {
+        EventDocumentIds ids = new EventDocumentIds(true);
+
+        String id = ids.next(TIME.toEpochMilli());
+        assertTrue(id.startsWith("20191009:"), "Expected the day partition: " + id);
+        assertEquals("20191009", ids.partition(TIME), "Unexpected partition");
+        assertTrue(id.compareTo(ids.next(Instant.parse("2019-10-10T00:00:00Z").toEpochMilli())) < 0,
+                "Expected ids in time order across partitions");
+        assertEquals(TIME, EventDocumentIds.timeOf(id), "Unexpected time");
+    }
+
+    @Test
+    public void testTimeOfOtherIds() {
+        assertNull(EventDocumentIds.timeOf("a5b2c3d4e5f60718293a4b5c6d7e8f90"), "Expected no time for a UUID");
+        assertNull(EventDocumentIds.timeOf("_design/event-query"), "Expected no time for a design document");
+    }
+
+}
@@ -0,0 +1,84 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URI;
+import java.util.function.LongConsumer;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import application.events.EventMetrics;
+import application.events.EventRetention;
+import application.events.store.CloudEventStore;
+import application.events.store.CloudEventStoreFactory;
+import application.events.store.memory.InMemoryCloudEventStore;
+import application.events.store.memory.InMemoryCloudEventStore.Eviction;
+import io.cloudevents.core.builder.CloudEventBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class EventRetentionTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void testRemovesExpiredEvents() throws Exception {
+        CloudEventStore store = Mockito.mock(CloudEventStore.class);
+        Mockito.doAnswer(invocation -> {
+            LongConsumer progress = invocation.getArgument(1);
+            progress.accept(3);
+            progress.accept(2);
+            return null;
+        }).when(store).removeExpiredEvents(Mockito.any(), Mockito.any());
+        Mockito.when(store.supportsRetention(Mockito.any())).thenReturn(true);
+        EventRetention retention = new EventRetention(mockFactory(store), 60000, 100, 0, 10, 60000,
+                this.meterRegistry);
+
+        assertEquals(5, retention.removeExpiredEvents(), "Unexpected number of removed events");
+        assertEquals(5, retention.removeExpiredEvents(), "Unexpected number of removed events");
+        assertEquals(10, this.meterRegistry.get(EventMetrics.RETENTION_DELETED).counter().count(),
+                "Unexpected removed events count");
+        Mockito.verify(store, Mockito.times(2)).removeExpiredEvents(Mockito.eq(retention.getPolicy()),
+                Mockito.any());
+    }
+
+    @Test
+    public void testRemovesEventsFromMemory() throws Exception {
+        CloudEventStore store = new InMemoryCloudEventStore(10, Eviction.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) {
+            store.addEvent(CloudEventBuilder.v1().withType("knative.eventing.test")
+                    .withSource(URI.create("https://github.com/cloudevents/spec/pull")).withId(String.valueOf(i))
+                    .build());
+        }
+        EventRetention retention = new EventRetention(mockFactory(store), 60000, 2, 0, 10, 60000,
+                this.meterRegistry);
+
+        assertEquals(3, retention.removeExpiredEvents(), "Unexpected number of removed events");
+        assertEquals(2, store.getNumEvents(), "Unexpected number of events");
+    }
+
+    @Test
+    public void testRejectsUnsupportedPolicy() {
+        CloudEventStore store = new InMemoryCloudEventStore(10, Eviction.DROP_OLDEST);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new EventRetention(mockFactory(store), 0, 0, 1000, 10, 60000, this.meterRegistry));
+    }
+
+    @Test
+    public void testUnlimitedPolicyDoesNothing() throws Exception {
+        CloudEventStore store = Mockito.mock(CloudEventStore.class);
+        EventRetention retention = new EventRetention(mockFactory(store), 0, 0, 0, 10, 60000, this.meterRegistry);
+
+        assertEquals(0, retention.removeExpiredEvents(), "Expected no events removed");
+        Mockito.verify(store, Mockito.never()).removeExpiredEvents(Mockito.any(), Mockito.any());
+    }
+
+    private static CloudEventStoreFactory mockFactory(CloudEventStore store) {
+        CloudEventStoreFactory factory = Mockito.mock(CloudEventStoreFactory.class);
+        Mockito.when(factory.getDefault()).thenReturn(store);
+        return factory;
+    }
+
+}
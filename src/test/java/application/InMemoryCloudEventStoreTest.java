@@ -0,0 +1,202 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import application.events.store.EventPage;
+import application.events.store.EventQuery;
+import application.events.store.EventStoreFullException;
+import application.events.store.PurgeMode;
+import application.events.store.RetentionPolicy;
+import application.events.store.memory.InMemoryCloudEventStore;
+import application.events.store.memory.InMemoryCloudEventStore.Eviction;
+import io.cloudevents.CloudEvent;
+import io.cloudevents.core.builder.CloudEventBuilder;
+
+public class InMemoryCloudEventStoreTest {
+
+    @Test
+    public void testPagesInBothOrders() throws Exception {
+        InMemoryCloudEventStore store = new InMemoryCloudEventStore(10, Eviction.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) {
+            store.addEvent(createEvent(i));
+        }
+
+        EventPage page = store.getEvents(2, null, false);
+        assertEquals(Arrays.asList("0", "1"), ids(page), "Unexpected first page");
+        page = store.getEvents(2, page.getBookmark(), false);
+        assertEquals(Arrays.asList("2", "3"), ids(page), "Unexpected second page");
+        page = store.getEvents(2, page.getBookmark(), false);
+        assertEquals(Arrays.asList("4"), ids(page), "Unexpected last page");
+        assertFalse(page.hasMore(), "Expected the last page");
+
+        page = store.getEvents(3, null, true);
+        assertEquals(Arrays.asList("4", "3", "2"), ids(page), "Unexpected first page");
+        page = store.getEvents(3, page.getBookmark(), true);
+        assertEquals(Arrays.asList("1", "0"), ids(page), "Unexpected last page");
+        assertFalse(page.hasMore(), "Expected the last page");
+
+        assertThrows(IllegalArgumentException.class, () -> store.getEvents(1, "not a bookmark", false));
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        InMemoryCloudEventStore store = new InMemoryCloudEventStore(3, Eviction.DROP_OLDEST);
+        for (int i = 0; i < 4; i++) {
+            store.addEvent(createEvent(i));
+        }
+        store.addEvents(Arrays.asList(createEvent(4), createEvent(5)));
+
+        assertEquals(3, store.getNumEvents(), "Unexpected number of events");
+        assertEquals(3, store.getEvictedEvents(), "Unexpected number of evicted events");
+        assertEquals(Arrays.asList("3", "4", "5"), ids(store.getEvents(10, null, false)), "Unexpected events");
+    }
+
+    @Test
+    public void testReject() throws Exception {
+        InMemoryCloudEventStore store = new InMemoryCloudEventStore(3, Eviction.REJECT);
+        store.addEvents(Arrays.asList(createEvent(0), createEvent(1)));
+
+        assertThrows(EventStoreFullException.class,
+                () -> store.addEvents(Arrays.asList(createEvent(2), createEvent(3))));
+        store.addEvent(createEvent(2));
+        assertThrows(EventStoreFullException.class, () -> store.addEvent(createEvent(3)));
+
+        assertEquals(Arrays.asList("0", "1", "2"), ids(store.getEvents(10, null, false)), "Unexpected events");
+        assertEquals(0, store.getEvictedEvents(), "Unexpected number of evicted events");
+    }
+
+    @Test
+    public void testRemoveAllEvents() throws Exception {
+        InMemoryCloudEventStore store = new InMemoryCloudEventStore(3, Eviction.REJECT);
+        for (int i = 0; i < 3; i++) {
+            store.addEvent(createEvent(i));
+        }
+
+        AtomicLong deleted = new AtomicLong();
+        store.removeAllEvents(PurgeMode.TRUNCATE, deleted::addAndGet);
+
+        assertEquals(3, deleted.get(), "Unexpected number of deleted events");
+        assertEquals(0, store.getNumEvents(), "Unexpected number of events");
+        assertTrue(store.getEvents(10, null, true).getEvents().isEmpty(), "Expected no events");
+
+        store.addEvent(createEvent(3));
+        assertEquals(Arrays.asList("3"), ids(store.getEvents(10, null, false)), "Unexpected events");
+    }
+
+    @Test
+    public void testQueryScansAllPages() throws Exception {
+        InMemoryCloudEventStore store = new InMemoryCloudEventStore(3000, Eviction.REJECT);
+        Instant start = Instant.parse("2019-10-09T00:00:00Z");
+        for (int i = 0; i < 2500; i++) {
+            store.addEvent(CloudEventBuilder.v1().withType(i % 2 == 0 ? "even" : "odd")
+                    .withSource(URI.create("https://github.com/cloudevents/spec/pull")).withId(String.valueOf(i))
+                    .withTime(start.plusSeconds(i).atOffset(ZoneOffset.UTC)).build());
+        }
+
+        EventQuery.Builder builder = EventQuery.builder().type("odd").from(start.plusSeconds(995))
+                .to(start.plusSeconds(1006)).limit(4);
+        EventPage page = store.queryEvents(builder.build());
+        assertEquals(Arrays.asList("995", "997", "999", "1001"), ids(page), "Unexpected first page");
+        page = store.queryEvents(builder.bookmark(page.getBookmark()).build());
+        assertEquals(Arrays.asList("1003", "1005"), ids(page), "Unexpected last page");
+        assertFalse(page.hasMore(), "Expected the last page");
+
+        page = store.queryEvents(EventQuery.builder().type("even").limit(2).descending(true).build());
+        assertEquals(Arrays.asList("2498", "2496"), ids(page), "Unexpected newest events");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> store.queryEvents(EventQuery.builder().bookmark("not a bookmark").build()));
+        assertThrows(IllegalArgumentException.class,
+                () -> EventQuery.builder().from(start.plusSeconds(1)).to(start).build());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        InMemoryCloudEventStore store = new InMemoryCloudEventStore(1000, Eviction.DROP_OLDEST);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        store.addEvent(createEvent(i));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1000, store.getNumEvents(), "Unexpected number of events");
+        assertEquals(3000, store.getEvictedEvents(), "Unexpected number of evicted events");
+        assertEquals(1000, store.getEvents(2000, null, false).getEvents().size(), "Unexpected number of events");
+    }
+
+    @Test
+    public void testRemoveExpiredEvents() throws Exception {
+        InMemoryCloudEventStore store = new InMemoryCloudEventStore(5, Eviction.REJECT);
+        for (int i = 0; i < 5; i++) {
+            store.addEvent(createEvent(i));
+        }
+
+        AtomicLong deleted = new AtomicLong();
+        store.removeExpiredEvents(new RetentionPolicy(Duration.ofDays(1), 3, 0, 0), deleted::addAndGet);
+        assertEquals(2, deleted.get(), "Unexpected number of deleted events");
+        assertEquals(Arrays.asList("2", "3", "4"), ids(store.getEvents(10, null, false)), "Unexpected events");
+
+        // The removed events made room
+        store.addEvents(Arrays.asList(createEvent(5), createEvent(6)));
+        assertEquals(5, store.getNumEvents(), "Unexpected number of events");
+
+        Thread.sleep(5);
+        store.removeExpiredEvents(new RetentionPolicy(Duration.ofMillis(1), 0, 0, 0), deleted::addAndGet);
+        assertEquals(7, deleted.get(), "Unexpected number of deleted events");
+        assertEquals(0, store.getNumEvents(), "Unexpected number of events");
+        assertTrue(store.getEvents(10, null, true).getEvents().isEmpty(), "Expected no events");
+    }
+
+    @Test
+    public void testRetentionBySizeIsNotSupported() {
+        InMemoryCloudEventStore store = new InMemoryCloudEventStore(5, Eviction.REJECT);
+        RetentionPolicy policy = new RetentionPolicy(Duration.ZERO, 0, 1000, 0);
+
+        assertFalse(store.supportsRetention(policy), "Expected retention by size not to be supported");
+        assertThrows(UnsupportedOperationException.class, () -> store.removeExpiredEvents(policy, deleted -> {
+        }));
+    }
+
+    private static CloudEvent createEvent(int id) {
+        return CloudEventBuilder.v1().withType("knative.eventing.test")
+                .withSource(URI.create("https://github.com/cloudevents/spec/pull")).withId(String.valueOf(id)).build();
+    }
+
+    private static List<String> ids(EventPage page) {
+        List<String> ids = new ArrayList<>();
+        for (CloudEvent event : page.getEvents()) {
+            ids.add(event.getId());
+        }
+        return ids;
+    }
+
+}
@@ -0,0 +1,238 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import application.events.store.EventPage;
+import application.events.store.PurgeMode;
+import application.events.store.RetentionPolicy;
+import application.events.store.log.SegmentLogCloudEventStore;
+import io.cloudevents.CloudEvent;
+import io.cloudevents.core.builder.CloudEventBuilder;
+
+public class SegmentLogCloudEventStoreTest {
+
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testPagesInBothOrders() throws Exception {
+        SegmentLogCloudEventStore store = new SegmentLogCloudEventStore(this.directory, SEGMENT_BYTES, 2);
+        CloudEvent ce = EventControllerEndpointTest.createTestCloudEvent();
+        store.addEvent(ce);
+        store.addEvents(Arrays.asList(createEvent(1), createEvent(2), createEvent(3), createEvent(4)));
+
+        EventControllerEndpointTest.assertCloudEventEquals(ce, store.getEvents(1, null, false).getEvents().get(0));
+        EventPage page = store.getEvents(2, null, false);
+        assertEquals(Arrays.asList(ce.getId(), "1"), ids(page), "Unexpected first page");
+        page = store.getEvents(2, page.getBookmark(), false);
+        assertEquals(Arrays.asList("2", "3"), ids(page), "Unexpected second page");
+        page = store.getEvents(2, page.getBookmark(), false);
+        assertEquals(Arrays.asList("4"), ids(page), "Unexpected last page");
+        assertFalse(page.hasMore(), "Expected the last page");
+
+        page = store.getEvents(3, null, true);
+        assertEquals(Arrays.asList("4", "3", "2"), ids(page), "Unexpected first page");
+        page = store.getEvents(3, page.getBookmark(), true);
+        assertEquals(Arrays.asList("1", ce.getId()), ids(page), "Unexpected last page");
+        assertFalse(page.hasMore(), "Expected the last page");
+
+        assertEquals(5, store.getNumEvents(), "Unexpected number of events");
+        assertThrows(IllegalArgumentException.class, () -> store.getEvents(1, "not a bookmark", false));
+        store.shutdown();
+    }
+
+    @Test
+    public void testRollsAndReopensSegments() throws Exception {
+        SegmentLogCloudEventStore written = new SegmentLogCloudEventStore(this.directory, SEGMENT_BYTES, 4);
+        for (int i = 0; i < 100; i++) {
+            written.addEvent(createEvent(i));
+        }
+        written.shutdown();
+        assertTrue(logFiles().size() > 1, "Expected more than one segment");
+
+        SegmentLogCloudEventStore store = new SegmentLogCloudEventStore(this.directory, SEGMENT_BYTES, 4);
+        assertEquals(100, store.getNumEvents(), "Unexpected number of events");
+        EventPage page = store.getEvents(30, store.getEvents(40, null, false).getBookmark(), false);
+        assertEquals(30, page.getEvents().size(), "Unexpected number of events");
+        for (int i = 0; i < 30; i++) {
+            assertEquals(String.valueOf(40 + i), page.getEvents().get(i).getId(), "Unexpected event");
+        }
+        page = store.getEvents(100, null, true);
+        assertEquals("99", page.getEvents().get(0).getId(), "Unexpected first event");
+        assertEquals("0", page.getEvents().get(99).getId(), "Unexpected last event");
+        assertThrows(IllegalArgumentException.class, () -> store.addEvent(createEvent(0, new byte[SEGMENT_BYTES])));
+        store.shutdown();
+    }
+
+    @Test
+    public void testTruncatesTornRecord() throws Exception {
+        SegmentLogCloudEventStore store = new SegmentLogCloudEventStore(this.directory, SEGMENT_BYTES, 4);
+        store.addEvents(Arrays.asList(createEvent(0), createEvent(1)));
+        store.shutdown();
+
+        // A record whose length was written but whose payload was not
+        Path active = logFiles().get(0);
+        try (FileChannel channel = FileChannel.open(active, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(12).putInt(100).putInt(12345).putInt(0x7b226964);
+            torn.flip();
+            channel.write(torn, endOfRecords(channel));
+        }
+
+        store = new SegmentLogCloudEventStore(this.directory, SEGMENT_BYTES, 4);
+        assertEquals(2, store.getNumEvents(), "Unexpected number of events");
+        store.addEvent(createEvent(2));
+        assertEquals(Arrays.asList("0", "1", "2"), ids(store.getEvents(10, null, false)), "Unexpected events");
+        store.shutdown();
+    }
+
+    @Test
+    public void testRemoveAllEvents() throws Exception {
+        SegmentLogCloudEventStore store = new SegmentLogCloudEventStore(this.directory, SEGMENT_BYTES, 4);
+        for (int i = 0; i < 50; i++) {
+            store.addEvent(createEvent(i));
+        }
+        String bookmark = store.getEvents(10, null, false).getBookmark();
+
+        AtomicLong deleted = new AtomicLong();
+        store.removeAllEvents(PurgeMode.TRUNCATE, deleted::addAndGet);
+
+        assertEquals(50, deleted.get(), "Unexpected number of deleted events");
+        assertEquals(0, store.getNumEvents(), "Unexpected number of events");
+        assertEquals(1, logFiles().size(), "Unexpected number of segments");
+
+        store.addEvent(createEvent(50));
+        assertEquals(Arrays.asList("50"), ids(store.getEvents(10, null, false)), "Unexpected events");
+        assertEquals(Arrays.asList("50"), ids(store.getEvents(10, bookmark, false)), "Unexpected events");
+        store.shutdown();
+    }
+
+    @Test
+    public void testRemoveExpiredEvents() throws Exception {
+        SegmentLogCloudEventStore store = new SegmentLogCloudEventStore(this.directory, SEGMENT_BYTES, 4);
+        for (int i = 0; i < 100; i++) {
+            store.addEvent(createEvent(i));
+        }
+        List<Path> segments = logFiles();
+        assertTrue(segments.size() > 3, "Expected more than three segments");
+        Files.setLastModifiedTime(segments.get(0), FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+
+        AtomicLong deleted = new AtomicLong();
+        store.removeExpiredEvents(new RetentionPolicy(Duration.ofDays(1), 0, 0, 0), deleted::addAndGet);
+        assertEquals(segments.size() - 1, logFiles().size(), "Expected the old segment removed");
+        assertEquals(100 - deleted.get(), store.getNumEvents(), "Unexpected number of events");
+
+        store.removeExpiredEvents(new RetentionPolicy(Duration.ZERO, 30, 0, 0), deleted::addAndGet);
+        assertTrue(store.getNumEvents() <= 30, "Expected at most 30 events: " + store.getNumEvents());
+        assertEquals(100 - deleted.get(), store.getNumEvents(), "Unexpected number of events");
+        EventPage page = store.getEvents(100, null, false);
+        assertEquals(String.valueOf(deleted.get()), page.getEvents().get(0).getId(), "Unexpected first event");
+        assertEquals("99", page.getEvents().get(page.getEvents().size() - 1).getId(), "Unexpected last event");
+
+        // The active segment is kept whatever the policy
+        store.removeExpiredEvents(new RetentionPolicy(Duration.ZERO, 1, 0, 0), deleted::addAndGet);
+        assertEquals(1, logFiles().size(), "Expected only the active segment");
+        store.shutdown();
+
+        store = new SegmentLogCloudEventStore(this.directory, SEGMENT_BYTES, 4);
+        assertEquals(100 - deleted.get(), store.getNumEvents(), "Unexpected number of events after reopening");
+        store.shutdown();
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        SegmentLogCloudEventStore store = new SegmentLogCloudEventStore(this.directory, 64 * 1024, 16);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        store.addEvent(createEvent(i));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1000, store.getNumEvents(), "Unexpected number of events");
+        assertEquals(1000, store.getEvents(2000, null, false).getEvents().size(), "Unexpected number of events");
+        store.shutdown();
+    }
+
+    private List<Path> logFiles() throws Exception {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.filter(file -> file.toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /*
+     * Follows the record lengths to the zero length that ends the records.
+     */
+    private static long endOfRecords(FileChannel channel) throws Exception {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        long position = 0;
+        while (true) {
+            length.clear();
+            channel.read(length, position);
+            int recordLength = length.getInt(0);
+            if (recordLength == 0) {
+                return position;
+            }
+            position += 8 + recordLength;
+        }
+    }
+
+    private static CloudEvent createEvent(int id) {
+        return createEvent(id, null);
+    }
+
+    private static CloudEvent createEvent(int id, byte[] data) {
+        CloudEventBuilder builder = CloudEventBuilder.v1().withType("knative.eventing.test")
+                .withSource(URI.create("https://github.com/cloudevents/spec/pull")).withId(String.valueOf(id));
+        if (data != null) {
+            builder.withData("application/octet-stream", data);
+        }
+        return builder.build();
+    }
+
+    private static List<String> ids(EventPage page) {
+        List<String> ids = new ArrayList<>();
+        for (CloudEvent event : page.getEvents()) {
+            ids.add(event.getId());
+        }
+        return ids;
+    }
+
+}
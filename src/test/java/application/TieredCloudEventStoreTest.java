@@ -0,0 +1,228 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.env.MockEnvironment;
+
+import application.events.store.CloudEventStore;
+import application.events.store.CloudEventStoreFactory;
+import application.events.store.CloudEventStoreProvider;
+import application.events.store.EventPage;
+import application.events.store.EventStoreFullException;
+import application.events.store.RetentionPolicy;
+import application.events.store.TieredCloudEventStore;
+import application.events.store.memory.InMemoryCloudEventStore;
+import application.events.store.memory.InMemoryCloudEventStore.Eviction;
+import io.cloudevents.CloudEvent;
+import io.cloudevents.core.builder.CloudEventBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TieredCloudEventStoreTest {
+
+    private final InMemoryCloudEventStore hot = new InMemoryCloudEventStore(3, Eviction.DROP_OLDEST);
+    private final InMemoryCloudEventStore cold = new InMemoryCloudEventStore(100, Eviction.REJECT);
+
+    @Test
+    public void testReadsRecentEventsFromHotTier() throws Exception {
+        TieredCloudEventStore store = new TieredCloudEventStore(this.hot, this.cold, 10, 0, 100);
+        store.addEvents(Arrays.asList(createEvent(0), createEvent(1)));
+        awaitMigration(store, 2);
+
+        // Everything is in the hot tier, so the cold tier is never read
+        this.cold.removeAllEvents();
+        assertEquals(Arrays.asList("1", "0"), ids(store.getEvents(10, null, true)), "Unexpected events");
+        assertEquals(Arrays.asList("0", "1"), ids(store.getEvents(10, null, false)), "Unexpected events");
+    }
+
+    @Test
+    public void testPagesAcrossTiers() throws Exception {
+        TieredCloudEventStore store = new TieredCloudEventStore(this.hot, this.cold, 10, 0, 100);
+        for (int i = 0; i < 6; i++) {
+            store.addEvent(createEvent(i));
+        }
+        awaitMigration(store, 6);
+        assertEquals(6, store.getNumEvents(), "Unexpected number of events");
+
+        EventPage page = store.getEvents(2, null, true);
+        assertEquals(Arrays.asList("5", "4"), ids(page), "Unexpected first page");
+        page = store.getEvents(2, page.getBookmark(), true);
+        assertEquals(Arrays.asList("3", "2"), ids(page), "Unexpected second page");
+        page = store.getEvents(2, page.getBookmark(), true);
+        assertEquals(Arrays.asList("1", "0"), ids(page), "Unexpected last page");
+        assertFalse(page.hasMore(), "Expected the last page");
+
+        page = store.getEvents(4, null, false);
+        assertEquals(Arrays.asList("0", "1", "2", "3"), ids(page), "Unexpected first page");
+        page = store.getEvents(4, page.getBookmark(), false);
+        assertEquals(Arrays.asList("4", "5"), ids(page), "Unexpected last page");
+        assertFalse(page.hasMore(), "Expected the last page");
+
+        assertThrows(IllegalArgumentException.class, () -> store.getEvents(1, "x", false));
+    }
+
+    @Test
+    public void testColdPagesDoNotReadHotTier() throws Exception {
+        InMemoryCloudEventStore hot = Mockito.spy(this.hot);
+        TieredCloudEventStore store = new TieredCloudEventStore(hot, this.cold, 10, 0, 100);
+        for (int i = 0; i < 8; i++) {
+            store.addEvent(createEvent(i));
+        }
+        awaitMigration(store, 8);
+
+        EventPage page = store.getEvents(2, null, false);
+        assertEquals(Arrays.asList("0", "1"), ids(page), "Unexpected first page");
+        page = store.getEvents(2, page.getBookmark(), false);
+        assertEquals(Arrays.asList("2", "3"), ids(page), "Unexpected second page");
+        Mockito.verify(hot, Mockito.never()).getEvents(Mockito.anyInt(), Mockito.any(), Mockito.anyBoolean());
+        page = store.getEvents(2, page.getBookmark(), false);
+        assertEquals(Arrays.asList("4", "5"), ids(page), "Expected the cold tier cut off before the hot events");
+
+        page = store.getEvents(4, null, true);
+        assertEquals(Arrays.asList("7", "6", "5", "4"), ids(page), "Unexpected first page");
+        page = store.getEvents(4, page.getBookmark(), true);
+        assertEquals(Arrays.asList("3", "2", "1", "0"), ids(page), "Expected the hot events skipped in the cold tier");
+        assertFalse(page.hasMore(), "Expected the last page");
+    }
+
+    @Test
+    public void testRejectedEventsAreNotMigrated() throws Exception {
+        InMemoryCloudEventStore hot = new InMemoryCloudEventStore(2, Eviction.REJECT);
+        TieredCloudEventStore store = new TieredCloudEventStore(hot, this.cold, 10, 0, 100);
+        store.addEvents(Arrays.asList(createEvent(0), createEvent(1)));
+
+        assertThrows(EventStoreFullException.class, () -> store.addEvent(createEvent(2)));
+        awaitMigration(store, 2);
+        assertEquals(2, store.getNumEvents(), "Expected the rejected event in neither tier");
+    }
+
+    @Test
+    public void testBatchIsRejectedWhole() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CloudEventStore cold = Mockito.mock(CloudEventStore.class);
+        Mockito.doAnswer(invocation -> {
+            blocked.await();
+            return null;
+        }).when(cold).addEvents(Mockito.any());
+        TieredCloudEventStore store = new TieredCloudEventStore(this.hot, cold, 1, 0, 3);
+        try {
+            store.addEvents(Arrays.asList(createEvent(0), createEvent(1)));
+
+            // At most one of the queued events is being migrated, so the queue has room for one or two more
+            assertThrows(EventStoreFullException.class,
+                    () -> store.addEvents(Arrays.asList(createEvent(2), createEvent(3), createEvent(4))));
+            assertEquals(2, this.hot.getNumEvents(), "Expected the rejected batch not written to the hot tier");
+            assertTrue(store.getPendingMigrations() <= 2, "Expected none of the rejected batch queued");
+        } finally {
+            blocked.countDown();
+        }
+    }
+
+    @Test
+    public void testRemoveAllEvents() throws Exception {
+        TieredCloudEventStore store = new TieredCloudEventStore(this.hot, this.cold, 10, 0, 100);
+        for (int i = 0; i < 5; i++) {
+            store.addEvent(createEvent(i));
+        }
+        awaitMigration(store, 5);
+
+        store.removeAllEvents();
+
+        assertEquals(0, store.getNumEvents(), "Unexpected number of events");
+        assertTrue(store.getEvents(10, null, true).getEvents().isEmpty(), "Expected no events");
+    }
+
+    @Test
+    public void testFactoryRegistry() throws Exception {
+        CloudEventStoreProvider memory = provider(CloudEventStoreFactory.BACKEND_MEMORY, this.hot);
+        CloudEventStoreProvider cloudant = provider(CloudEventStoreFactory.BACKEND_CLOUDANT, this.cold);
+        List<CloudEventStoreProvider> providers = Arrays.asList(memory, cloudant);
+
+        assertEquals(this.hot, createFactory(providers, "Memory", "memory").getDefault(), "Unexpected store");
+        assertTrue(createFactory(providers, "tiered", "memory").getDefault() instanceof TieredCloudEventStore,
+                "Expected a tiered store");
+        assertThrows(IllegalArgumentException.class, () -> createFactory(providers, "log", "memory"));
+        assertThrows(IllegalArgumentException.class, () -> createFactory(providers, "tiered", "cloudant"));
+
+        MockEnvironment environment = new MockEnvironment();
+        assertEquals(Set.of("cloudant"), CloudEventStoreFactory.getSelectedBackends(environment),
+                "Unexpected backends");
+        environment.setProperty(CloudEventStoreFactory.BACKEND_PROPERTY, "tiered");
+        environment.setProperty(CloudEventStoreFactory.TIERED_HOT_PROPERTY, "log");
+        assertEquals(Set.of("log", "cloudant"), CloudEventStoreFactory.getSelectedBackends(environment),
+                "Unexpected backends");
+    }
+
+    @Test
+    public void testRetentionAppliesToBothTiers() throws Exception {
+        InMemoryCloudEventStore largeHot = new InMemoryCloudEventStore(10, Eviction.DROP_OLDEST);
+        TieredCloudEventStore store = new TieredCloudEventStore(largeHot, this.cold, 10, 0, 100);
+        for (int i = 0; i < 6; i++) {
+            store.addEvent(createEvent(i));
+        }
+        awaitMigration(store, 6);
+        RetentionPolicy policy = new RetentionPolicy(Duration.ZERO, 2, 0, 0);
+        assertTrue(store.supportsRetention(policy), "Expected the policy to be supported");
+
+        AtomicLong deleted = new AtomicLong();
+        store.removeExpiredEvents(policy, deleted::addAndGet);
+
+        // Only the events removed from the cold tier are counted
+        assertEquals(4, deleted.get(), "Unexpected number of deleted events");
+        assertEquals(2, this.cold.getNumEvents(), "Unexpected number of cold events");
+        assertEquals(2, largeHot.getNumEvents(), "Unexpected number of hot events");
+        assertEquals(Arrays.asList("5", "4"), ids(store.getEvents(10, null, true)), "Unexpected events");
+        assertFalse(store.supportsRetention(new RetentionPolicy(Duration.ZERO, 0, 1000, 0)),
+                "Expected retention by size not to be supported by the cold tier");
+    }
+
+    private static CloudEventStoreFactory createFactory(List<CloudEventStoreProvider> providers, String backend,
+            String hotBackend) throws Exception {
+        return new CloudEventStoreFactory(providers, backend, hotBackend, "cloudant", 10, 0, 100, false, 1, 1,
+                new SimpleMeterRegistry());
+    }
+
+    private static CloudEventStoreProvider provider(String name, CloudEventStore store) throws Exception {
+        CloudEventStoreProvider provider = mock(CloudEventStoreProvider.class);
+        when(provider.getName()).thenReturn(name);
+        when(provider.create()).thenReturn(store);
+        return provider;
+    }
+
+    private void awaitMigration(TieredCloudEventStore store, long events) throws InterruptedException {
+        for (int i = 0; i < 500 && this.cold.getNumEvents() < events; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, store.getPendingMigrations(), "Unexpected number of pending migrations");
+        assertEquals(events, this.cold.getNumEvents(), "Unexpected number of migrated events");
+    }
+
+    private static CloudEvent createEvent(int id) {
+        return CloudEventBuilder.v1().withType("knative.eventing.test")
+                .withSource(URI.create("https://github.com/cloudevents/spec/pull")).withId(String.valueOf(id)).build();
+    }
+
+    private static List<String> ids(EventPage page) {
+        List<String> ids = new ArrayList<>();
+        for (CloudEvent event : page.getEvents()) {
+            ids.add(event.getId());
+        }
+        return ids;
+    }
+
+}
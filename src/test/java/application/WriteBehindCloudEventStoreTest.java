@@ -0,0 +1,130 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import application.events.store.CloudEventStore;
+import application.events.store.EventStoreFullException;
+import application.events.store.WriteBehindCloudEventStore;
+import application.events.store.WriteBehindCloudEventStore.Durability;
+import io.cloudevents.CloudEvent;
+
+public class WriteBehindCloudEventStoreTest {
+
+    @Mock
+    private CloudEventStore delegate;
+
+    private WriteBehindCloudEventStore objectUnderTest;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @AfterEach
+    public void teardown() {
+        if (this.objectUnderTest != null) {
+            this.objectUnderTest.shutdown();
+        }
+    }
+
+    @Test
+    public void testEventsAreFlushedAsOneBatch() throws Exception {
+        this.objectUnderTest = new WriteBehindCloudEventStore(this.delegate, 5, 5000, 100, Durability.ENQUEUED);
+        for (int i = 0; i < 5; i++) {
+            this.objectUnderTest.addEvent(EventControllerEndpointTest.createTestCloudEvent());
+        }
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<CloudEvent>> batchCaptor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(this.delegate, Mockito.timeout(2000)).addEvents(batchCaptor.capture());
+        assertEquals(5, batchCaptor.getValue().size(), "Unexpected batch size");
+        Mockito.verify(this.delegate, Mockito.never()).addEvent(Mockito.any());
+    }
+
+    @Test
+    public void testPartialBatchIsFlushedAfterLinger() throws Exception {
+        this.objectUnderTest = new WriteBehindCloudEventStore(this.delegate, 100, 10, 100, Durability.FLUSHED);
+        this.objectUnderTest.addEvent(EventControllerEndpointTest.createTestCloudEvent());
+
+        Mockito.verify(this.delegate).addEvents(Mockito.argThat(batch -> batch.size() == 1));
+        assertEquals(0, this.objectUnderTest.getPendingEvents(), "Unexpected pending events");
+    }
+
+    @Test
+    public void testFlushFailureIsReportedWhenDurable() throws Exception {
+        Mockito.doThrow(new Exception("bulk write failed")).when(this.delegate).addEvents(Mockito.anyList());
+        this.objectUnderTest = new WriteBehindCloudEventStore(this.delegate, 100, 0, 100, Durability.FLUSHED);
+
+        Exception e = assertThrows(Exception.class,
+                () -> this.objectUnderTest.addEvent(EventControllerEndpointTest.createTestCloudEvent()));
+        assertEquals("bulk write failed", e.getMessage(), "Unexpected exception");
+    }
+
+    @Test
+    public void testFullBufferRejectsEvents() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(this.delegate).addEvents(Mockito.anyList());
+        this.objectUnderTest = new WriteBehindCloudEventStore(this.delegate, 1, 0, 1, Durability.ENQUEUED);
+
+        try {
+            // One event is held by the blocked flusher, the next fills the buffer
+            assertThrows(EventStoreFullException.class, () -> {
+                for (int i = 0; i < 3; i++) {
+                    this.objectUnderTest.addEvent(EventControllerEndpointTest.createTestCloudEvent());
+                }
+            });
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testShutdownWaitsForTheBatchBeingWritten() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Mockito.doAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            interrupted.set(Thread.currentThread().isInterrupted());
+            return null;
+        }).when(this.delegate).addEvents(Mockito.anyList());
+        WriteBehindCloudEventStore store = new WriteBehindCloudEventStore(this.delegate, 1, 0, 10,
+                Durability.FLUSHED);
+        CompletableFuture<Void> result = store.addEventAsync(EventControllerEndpointTest.createTestCloudEvent());
+        assertTrue(writing.await(2, TimeUnit.SECONDS), "Expected the batch to be written");
+
+        Thread shutdown = new Thread(store::shutdown);
+        shutdown.start();
+        Thread.sleep(200);
+        release.countDown();
+        shutdown.join(5000);
+
+        assertFalse(shutdown.isAlive(), "Expected shutdown to finish");
+        assertFalse(interrupted.get(), "Expected the write not to be interrupted");
+        result.get(1, TimeUnit.SECONDS);
+        assertThrows(IllegalStateException.class,
+                () -> store.addEvent(EventControllerEndpointTest.createTestCloudEvent()));
+    }
+
+}
@@ -0,0 +1,64 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.Gson;
+
+public class ZonedDateTimeTypeAdapterTest {
+
+    private final Gson gson = SBApplicationConfig.getCustomGsonBuilder().create();
+
+    @Test
+    public void testRoundTrip() {
+        ZonedDateTime regionTime = ZonedDateTime.of(2019, 10, 9, 21, 23, 8, 288000123, ZoneId.of("America/New_York"));
+        ZonedDateTime offsetTime = ZonedDateTime.of(2019, 10, 9, 21, 23, 8, 0, ZoneOffset.ofHoursMinutes(5, 30));
+
+        for (ZonedDateTime time : new ZonedDateTime[] { regionTime, offsetTime }) {
+            String json = this.gson.toJson(time, ZonedDateTime.class);
+            assertEquals("\"" + time + "\"", json, "Unexpected JSON");
+            assertEquals(time, this.gson.fromJson(json, ZonedDateTime.class), "Unexpected date-time");
+        }
+    }
+
+    @Test
+    public void testReadsIsoVariants() {
+        assertEquals(ZonedDateTime.of(2019, 10, 9, 21, 23, 8, 100000000, ZoneOffset.UTC),
+                this.gson.fromJson("\"2019-10-09T21:23:08.1Z\"", ZonedDateTime.class), "Unexpected date-time");
+        assertEquals(ZonedDateTime.of(2019, 10, 9, 21, 23, 0, 0, ZoneOffset.ofHours(-5)),
+                this.gson.fromJson("\"2019-10-09T21:23-05:00\"", ZonedDateTime.class), "Unexpected date-time");
+    }
+
+    @Test
+    public void testReadsEpochNanos() {
+        assertEquals(ZonedDateTime.of(1970, 1, 1, 0, 0, 1, 5, ZoneOffset.UTC),
+                this.gson.fromJson("1000000005", ZonedDateTime.class), "Unexpected date-time");
+    }
+
+    @Test
+    public void testReadsLegacyShape() {
+        String regionJson = "{\"dateTime\":{\"date\":{\"year\":2019,\"month\":10,\"day\":9},"
+                + "\"time\":{\"hour\":21,\"minute\":23,\"second\":8,\"nano\":288000000}},"
+                + "\"offset\":{\"totalSeconds\":-14400},\"zone\":{\"id\":\"America/New_York\"}}";
+        assertEquals(ZonedDateTime.of(2019, 10, 9, 21, 23, 8, 288000000, ZoneId.of("America/New_York")),
+                this.gson.fromJson(regionJson, ZonedDateTime.class), "Unexpected date-time");
+
+        String offsetJson = "{\"dateTime\":{\"date\":{\"year\":2019,\"month\":10,\"day\":9},"
+                + "\"time\":{\"hour\":21,\"minute\":23,\"second\":8,\"nano\":0}},"
+                + "\"offset\":{\"totalSeconds\":19800},\"zone\":{\"totalSeconds\":19800}}";
+        assertEquals(ZonedDateTime.of(2019, 10, 9, 21, 23, 8, 0, ZoneOffset.ofHoursMinutes(5, 30)),
+                this.gson.fromJson(offsetJson, ZonedDateTime.class), "Unexpected date-time");
+    }
+
+    @Test
+    public void testNull() {
+        assertNull(this.gson.fromJson("null", ZonedDateTime.class), "Expected null");
+    }
+
+}
@@ -0,0 +1,130 @@
+package application.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.ibm.cloud.cloudant.v1.model.Document;
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+
+import application.SBApplicationConfig;
+import application.events.JsonPayload;
+import application.events.store.cloudant.CloudEventDocumentReader;
+import application.events.store.cloudant.CloudEventDocumentWriter;
+import io.cloudevents.CloudEvent;
+import io.cloudevents.core.builder.CloudEventBuilder;
+import io.cloudevents.jackson.JsonFormat;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Compares the cost of turning a cloud event into a Cloudant request body with the SDK's JSON event format and with a
+ * <code>Document</code> conversion, and measures reading it back from an <code>_all_docs</code> response. Run with
+ * <code>mvn -Pbenchmark verify -Dbenchmark=CloudEventDocumentBenchmark</code> and compare
+ * <code>gc.alloc.rate.norm</code>, the bytes allocated per event.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CloudEventDocumentBenchmark {
+
+    /**
+     * Approximate size of the event data in bytes.
+     */
+    @Param({ "64", "16384" })
+    public int payloadSize;
+
+    private Gson gson;
+    private Gson sdkGson;
+    private CloudEventDocumentWriter documentWriter;
+    private CloudEventDocumentReader documentReader;
+    private JsonFormat jsonFormat;
+    private CloudEvent event;
+    private byte[] allDocs;
+
+    @Setup
+    public void setup() throws IOException {
+        this.gson = SBApplicationConfig.getCustomGsonBuilder().create();
+        this.sdkGson = GsonSingleton.getGsonWithoutPrettyPrinting();
+        this.documentWriter = new CloudEventDocumentWriter(this.gson);
+        this.jsonFormat = new JsonFormat();
+        this.documentReader = new CloudEventDocumentReader(this.gson, new SimpleMeterRegistry());
+        this.event = createEvent(this.payloadSize);
+        try (InputStream document = this.documentWriter.toDocument(this.event)) {
+            this.allDocs = ("{\"total_rows\":1,\"offset\":0,\"rows\":[{\"id\":\"" + this.event.getId()
+                    + "\",\"doc\":" + new String(document.readAllBytes(), StandardCharsets.UTF_8) + "}]}")
+                            .getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The SDK's JSON event format, which parses the data into a tree to write it.
+     */
+    @Benchmark
+    public byte[] jsonFormat() {
+        return this.jsonFormat.serialize(this.event);
+    }
+
+    /**
+     * Event to JSON string, JSON string to Map, then the Cloudant SDK serializes the Document again.
+     */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public byte[] documentRoundTrip() {
+        Document document = new Document();
+        document.setProperties(this.gson.fromJson(new String(this.jsonFormat.serialize(this.event),
+                StandardCharsets.UTF_8), Map.class));
+        return this.sdkGson.toJson(document).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public InputStream documentWriter() {
+        return this.documentWriter.toDocument(this.event);
+    }
+
+    @Benchmark
+    public List<CloudEventDocumentReader.Row> documentReader() {
+        return this.documentReader.readAllDocs(this.allDocs);
+    }
+
+    /**
+     * @return an event as ingest produces it, with its data kept as raw JSON
+     */
+    public static CloudEvent createEvent(int payloadSize) {
+        Map<String, String> data = new HashMap<>();
+        int size = 0;
+        for (int i = 0; size < payloadSize; i++) {
+            String key = "field" + i;
+            String value = "value-" + Integer.toHexString(key.hashCode()) + "-abcdefghijklmnopqrstuvwxyz";
+            data.put(key, value);
+            size += key.length() + value.length() + 6;
+        }
+        byte[] json = new Gson().toJson(data).getBytes(StandardCharsets.UTF_8);
+        return CloudEventBuilder.v1().withType("knative.eventing.benchmark")
+                .withSource(URI.create("https://github.com/IBM/knative-eventing-java-app")).withId("B-" + payloadSize)
+                .withTime(OffsetDateTime.now()).withDataContentType("application/json")
+                .withData(JsonPayload.of(json)).build();
+    }
+
+}
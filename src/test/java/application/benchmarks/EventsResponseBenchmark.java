@@ -0,0 +1,160 @@
+package application.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import application.events.EventController;
+import application.events.EventService;
+import application.events.EventServiceFactory;
+import application.events.PurgeJob;
+import application.events.store.EventPage;
+import application.events.store.EventQuery;
+import application.events.store.PurgeMode;
+import io.cloudevents.CloudEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.api.OpenTelemetry;
+
+/**
+ * Measures encoding a page of events for <code>GET /v1/events</code> and as the NDJSON stream of
+ * <code>GET /v1/events/stream</code>, from an event service that returns the same page every time. Run with
+ * <code>mvn -Pbenchmark verify -Dbenchmark=EventsResponseBenchmark</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventsResponseBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Approximate size of the event data in bytes.
+     */
+    @Param({ "64", "1024" })
+    public int payloadSize;
+
+    private EventController controller;
+
+    @Setup
+    public void setup() {
+        List<CloudEvent> events = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            events.add(CloudEventDocumentBenchmark.createEvent(this.payloadSize));
+        }
+        EventService eventService = new PageEventService(new EventPage(events, null));
+        this.controller = new EventController(new EventServiceFactory(eventService), Integer.MAX_VALUE,
+                Integer.MAX_VALUE, new SimpleMeterRegistry(), OpenTelemetry.noop());
+    }
+
+    @Benchmark
+    public String text() throws Exception {
+        return this.controller.events(false, PurgeMode.BULK_DELETE.name(), PAGE_SIZE, null, "asc").getBody();
+    }
+
+    @Benchmark
+    public void ndjson(Blackhole blackhole) throws IOException {
+        ResponseEntity<StreamingResponseBody> response = this.controller.streamEvents(PAGE_SIZE, PAGE_SIZE, null,
+                "asc");
+        response.getBody().writeTo(new BlackholeOutputStream(blackhole));
+    }
+
+    /*
+     * Consumes the response without copying it.
+     */
+    private static final class BlackholeOutputStream extends OutputStream {
+
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            this.blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.blackhole.consume(b);
+            this.blackhole.consume(len);
+        }
+
+    }
+
+    private static final class PageEventService implements EventService {
+
+        private final EventPage page;
+
+        PageEventService(EventPage page) {
+            this.page = page;
+        }
+
+        @Override
+        public String getStatus() {
+            return STATUS_UP;
+        }
+
+        @Override
+        public EventPage getEvents(int limit, String bookmark, boolean descending) {
+            return this.page;
+        }
+
+        @Override
+        public EventPage queryEvents(EventQuery query) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addEvent(CloudEvent event) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addEvents(List<CloudEvent> events) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public PurgeJob startPurge(PurgeMode mode) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public PurgeJob getPurgeJob() {
+            return null;
+        }
+
+        @Override
+        public long getNumEvents() {
+            return this.page.getEvents().size();
+        }
+
+        @Override
+        public String getEnvironment() {
+            return "";
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+package application.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import application.events.CloudEventUnmarshaller;
+import io.cloudevents.CloudEvent;
+import io.cloudevents.jackson.JsonFormat;
+
+/**
+ * Measures unmarshalling received requests into cloud events in each HTTP content mode, as
+ * <code>EventController</code> does before storing them. Run with <code>mvn -Pbenchmark verify
+ * -Dbenchmark=IngestBenchmark</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IngestBenchmark {
+
+    private static final int BATCH_SIZE = 10;
+
+    /**
+     * Approximate size of the event data in bytes.
+     */
+    @Param({ "64", "1024", "16384" })
+    public int payloadSize;
+
+    private Map<String, Object> binaryHeaders;
+    private byte[] binaryBody;
+    private byte[] structuredBody;
+    private byte[] batchBody;
+
+    @Setup
+    public void setup() {
+        CloudEvent event = CloudEventDocumentBenchmark.createEvent(this.payloadSize);
+        JsonFormat jsonFormat = new JsonFormat();
+
+        // As Spring passes them to the controller
+        this.binaryHeaders = new HashMap<>();
+        this.binaryHeaders.put("ce-specversion", event.getSpecVersion().toString());
+        this.binaryHeaders.put("ce-id", event.getId());
+        this.binaryHeaders.put("ce-type", event.getType());
+        this.binaryHeaders.put("ce-source", event.getSource().toString());
+        this.binaryHeaders.put("ce-time", event.getTime().toString());
+        this.binaryHeaders.put("content-type", event.getDataContentType());
+        this.binaryBody = event.getData().toBytes();
+        this.binaryHeaders.put("content-length", String.valueOf(this.binaryBody.length));
+
+        this.structuredBody = jsonFormat.serialize(event);
+
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.append(i > 0 ? "," : "").append(new String(this.structuredBody, StandardCharsets.UTF_8));
+        }
+        this.batchBody = batch.append("]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public CloudEvent binary() {
+        return CloudEventUnmarshaller.binary(this.binaryHeaders, this.binaryBody);
+    }
+
+    @Benchmark
+    public CloudEvent structured() {
+        return CloudEventUnmarshaller.structured(this.structuredBody);
+    }
+
+    /**
+     * A batch of {@value #BATCH_SIZE} events, each with data of the given size.
+     */
+    @Benchmark
+    public List<CloudEvent> batch() {
+        return CloudEventUnmarshaller.batch(this.batchBody);
+    }
+
+}
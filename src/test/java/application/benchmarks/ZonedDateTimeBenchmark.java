@@ -0,0 +1,106 @@
+package application.benchmarks;
+
+import java.text.NumberFormat;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonObject;
+
+import application.SBApplicationConfig;
+
+/**
+ * Compares reading event times with the <code>NumberFormat</code> based deserializer that
+ * <code>SBApplicationConfig</code> used to register against <code>ZonedDateTimeTypeAdapter</code>, for both the
+ * legacy nested shape and ISO-8601 strings. Run with <code>mvn -Pbenchmark verify
+ * -Dbenchmark=ZonedDateTimeBenchmark</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZonedDateTimeBenchmark {
+
+    private static final String LEGACY_JSON = "{\"dateTime\":{\"date\":{\"year\":2019,\"month\":10,\"day\":9},"
+            + "\"time\":{\"hour\":21,\"minute\":23,\"second\":8,\"nano\":288000000}},"
+            + "\"offset\":{\"totalSeconds\":-18000},\"zone\":{\"totalSeconds\":-18000}}";
+
+    private Gson legacyGson;
+    private Gson gson;
+    private String isoJson;
+    private ZonedDateTime time;
+
+    @Setup
+    public void setup() {
+        this.legacyGson = new GsonBuilder().registerTypeAdapter(ZonedDateTime.class, legacyDeserializer()).create();
+        this.gson = SBApplicationConfig.getCustomGsonBuilder().create();
+        this.time = ZonedDateTime.of(2019, 10, 9, 21, 23, 8, 288000000, ZoneId.of("-05:00"));
+        this.isoJson = this.gson.toJson(this.time, ZonedDateTime.class);
+    }
+
+    @Benchmark
+    public ZonedDateTime legacyDeserializerReadLegacy() {
+        return this.legacyGson.fromJson(LEGACY_JSON, ZonedDateTime.class);
+    }
+
+    @Benchmark
+    public ZonedDateTime codecReadLegacy() {
+        return this.gson.fromJson(LEGACY_JSON, ZonedDateTime.class);
+    }
+
+    @Benchmark
+    public ZonedDateTime codecReadIso() {
+        return this.gson.fromJson(this.isoJson, ZonedDateTime.class);
+    }
+
+    @Benchmark
+    public String codecWrite() {
+        return this.gson.toJson(this.time, ZonedDateTime.class);
+    }
+
+    /*
+     * The deserializer as it was, minus the branches a stored document never reaches.
+     */
+    private static JsonDeserializer<ZonedDateTime> legacyDeserializer() {
+        return (json, type, context) -> {
+            JsonObject jsonObject = json.getAsJsonObject();
+            JsonObject dateTimeElem = jsonObject.get("dateTime").getAsJsonObject();
+            JsonObject dateElem = dateTimeElem.get("date").getAsJsonObject();
+            JsonObject timeElem = dateTimeElem.get("time").getAsJsonObject();
+            JsonObject offsetElem = jsonObject.get("offset").getAsJsonObject();
+
+            NumberFormat format = NumberFormat.getInstance();
+            format.setMinimumIntegerDigits(2);
+            format.setMaximumIntegerDigits(2);
+            StringBuilder sb = new StringBuilder();
+            sb.append(dateElem.get("year").getAsInt()).append("-")
+                    .append(format.format(dateElem.get("month").getAsInt())).append("-")
+                    .append(format.format(dateElem.get("day").getAsInt())).append("T")
+                    .append(format.format(timeElem.get("hour").getAsInt())).append(":")
+                    .append(format.format(timeElem.get("minute").getAsInt())).append(":")
+                    .append(format.format(timeElem.get("second").getAsInt()));
+            int offsetSecs = offsetElem.get("totalSeconds").getAsInt();
+            int hours = Math.abs(offsetSecs) / 3600;
+            sb.append(offsetSecs < 0 ? "-" : "+");
+            sb.append(format.format(hours)).append(":").append("00");
+            return ZonedDateTime.parse(sb.toString());
+        };
+    }
+
+}